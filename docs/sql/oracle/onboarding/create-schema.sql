@@ -92,6 +92,7 @@ CREATE INDEX IDENTITY_VERIF_STATUS ON ES_IDENTITY_VERIFICATION (STATUS);
 CREATE INDEX IDENTITY_VERIF_PHASE ON ES_IDENTITY_VERIFICATION (PHASE);
 CREATE INDEX IDENTITY_VERIF_TIMESTAMP_1 ON ES_IDENTITY_VERIFICATION (TIMESTAMP_CREATED);
 CREATE INDEX IDENTITY_VERIF_TIMESTAMP_2 ON ES_IDENTITY_VERIFICATION (TIMESTAMP_LAST_UPDATED);
+CREATE INDEX IDENTITY_VERIF_STATE ON ES_IDENTITY_VERIFICATION (PHASE, STATUS, TIMESTAMP_LAST_UPDATED);
 
 CREATE TABLE ES_DOCUMENT_VERIFICATION (
     ID VARCHAR2(36 CHAR) NOT NULL PRIMARY KEY,
@@ -118,6 +119,7 @@ CREATE TABLE ES_DOCUMENT_VERIFICATION (
     TIMESTAMP_VERIFIED TIMESTAMP(6),
     TIMESTAMP_DISPOSED TIMESTAMP(6),
     TIMESTAMP_LAST_UPDATED TIMESTAMP(6),
+    TIMESTAMP_NEXT_CHECK TIMESTAMP(6),
     FOREIGN KEY (IDENTITY_VERIFICATION_ID) REFERENCES ES_IDENTITY_VERIFICATION (ID)
 );
 
@@ -133,7 +135,8 @@ CREATE TABLE ES_DOCUMENT_DATA (
     ACTIVATION_ID VARCHAR2(36 CHAR) NOT NULL,
     IDENTITY_VERIFICATION_ID VARCHAR2(36 CHAR) NOT NULL,
     FILENAME VARCHAR2(256 CHAR) NOT NULL,
-    DATA BLOB NOT NULL,
+    DATA BLOB,
+    DATA_REFERENCE VARCHAR2(256 CHAR),
     TIMESTAMP_CREATED TIMESTAMP(6) NOT NULL,
     FOREIGN KEY (IDENTITY_VERIFICATION_ID) REFERENCES ES_IDENTITY_VERIFICATION (ID)
 );
@@ -177,6 +180,21 @@ CREATE TABLE ES_SCA_RESULT
 CREATE INDEX IDENTITY_VERIFICATION_ID ON ES_SCA_RESULT (IDENTITY_VERIFICATION_ID);
 CREATE INDEX PROCESS_ID ON ES_SCA_RESULT (PROCESS_ID);
 
+CREATE SEQUENCE ES_ONBOARDING_EVENT_SEQ INCREMENT BY 50 START WITH 1;
+
+CREATE TABLE ES_ONBOARDING_EVENT
+(
+    ID                       NUMBER(19)         NOT NULL PRIMARY KEY,
+    IDENTITY_VERIFICATION_ID VARCHAR2(36 CHAR)  NOT NULL,
+    PROCESS_ID               VARCHAR2(36 CHAR)  NOT NULL,
+    ACTIVATION_ID            VARCHAR2(36 CHAR)  NOT NULL,
+    USER_ID                  VARCHAR2(256 CHAR) NOT NULL,
+    EVENT                    VARCHAR2(32 CHAR)  NOT NULL,
+    TIMESTAMP_CREATED        TIMESTAMP(6)       NOT NULL
+);
+
+CREATE INDEX ONBOARDING_EVENT_TIMESTAMP ON ES_ONBOARDING_EVENT (TIMESTAMP_CREATED);
+
 -- Scheduler lock table - https://github.com/lukas-krecan/ShedLock#configure-lockprovider
 BEGIN EXECUTE IMMEDIATE 'CREATE TABLE shedlock (
     name VARCHAR2(64 CHAR) NOT NULL,
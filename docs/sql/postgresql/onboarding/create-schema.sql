@@ -96,6 +96,7 @@ CREATE INDEX identity_verif_status ON es_identity_verification (status);
 CREATE INDEX identity_verif_phase ON es_identity_verification (phase);
 CREATE INDEX identity_verif_timestamp_1 ON es_identity_verification (timestamp_created);
 CREATE INDEX identity_verif_timestamp_2 ON es_identity_verification (timestamp_last_updated);
+CREATE INDEX identity_verif_state ON es_identity_verification (phase, status, timestamp_last_updated);
 
 CREATE TABLE es_document_verification (
     id VARCHAR(36) NOT NULL PRIMARY KEY,
@@ -122,6 +123,7 @@ CREATE TABLE es_document_verification (
     timestamp_verified TIMESTAMP,
     timestamp_disposed TIMESTAMP,
     timestamp_last_updated TIMESTAMP,
+    timestamp_next_check TIMESTAMP,
     FOREIGN KEY (identity_verification_id) REFERENCES es_identity_verification (id)
 );
 
@@ -137,7 +139,8 @@ CREATE TABLE es_document_data (
     activation_id VARCHAR(36) NOT NULL,
     identity_verification_id VARCHAR(36) NOT NULL,
     filename VARCHAR(256) NOT NULL,
-    data BYTEA NOT NULL,
+    data BYTEA,
+    data_reference VARCHAR(256),
     timestamp_created TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (identity_verification_id) REFERENCES es_identity_verification (id)
 );
@@ -181,6 +184,21 @@ CREATE TABLE es_sca_result
 CREATE INDEX identity_verification_id ON es_sca_result (identity_verification_id);
 CREATE INDEX process_id ON es_sca_result (process_id);
 
+CREATE SEQUENCE es_onboarding_event_seq INCREMENT BY 50 START WITH 1;
+
+CREATE TABLE es_onboarding_event
+(
+    id                       BIGINT       NOT NULL PRIMARY KEY,
+    identity_verification_id VARCHAR(36)  NOT NULL,
+    process_id               VARCHAR(36)  NOT NULL,
+    activation_id            VARCHAR(36)  NOT NULL,
+    user_id                  VARCHAR(256) NOT NULL,
+    event                    VARCHAR(32)  NOT NULL,
+    timestamp_created        TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX onboarding_event_timestamp ON es_onboarding_event (timestamp_created);
+
 -- Scheduler lock table - https://github.com/lukas-krecan/ShedLock#configure-lockprovider
 CREATE TABLE IF NOT EXISTS shedlock (
     name VARCHAR(64) NOT NULL,
@@ -25,6 +25,7 @@ import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * Repository for document data records.
@@ -41,4 +42,39 @@ public interface DocumentDataRepository extends CrudRepository<DocumentDataEntit
     @Query("DELETE FROM DocumentDataEntity d WHERE d.timestampCreated < :dateCleanup")
     int cleanupDocumentData(Date dateCleanup);
 
+    /**
+     * Return the references to the data stored outside the database of the given document data record.
+     *
+     * @param id document data ID
+     * @return data references
+     */
+    @Query("SELECT d.dataReference FROM DocumentDataEntity d WHERE d.id = :id AND d.dataReference IS NOT NULL")
+    List<String> findDataReferencesById(String id);
+
+    /**
+     * Return the references to the data stored outside the database of the given activation.
+     *
+     * @param activationId activation ID
+     * @return data references
+     */
+    @Query("SELECT d.dataReference FROM DocumentDataEntity d WHERE d.activationId = :activationId AND d.dataReference IS NOT NULL")
+    List<String> findDataReferencesByActivationId(String activationId);
+
+    /**
+     * Return the references to the data stored outside the database of the records created before the given timestamp.
+     *
+     * @param dateCleanup timestamp created must be before the given value
+     * @return data references
+     */
+    @Query("SELECT d.dataReference FROM DocumentDataEntity d WHERE d.timestampCreated < :dateCleanup AND d.dataReference IS NOT NULL")
+    List<String> findDataReferencesToCleanup(Date dateCleanup);
+
+    /**
+     * Return whether any document data record references the given data.
+     *
+     * @param dataReference data reference
+     * @return {@code true} if the data are referenced
+     */
+    boolean existsByDataReference(String dataReference);
+
 }
@@ -20,10 +20,12 @@ package com.wultra.app.onboardingserver.common.database;
 
 import com.wultra.app.onboardingserver.common.database.entity.DocumentResultEntity;
 import com.wultra.app.enrollmentserver.model.enumeration.DocumentProcessingPhase;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Date;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -36,24 +38,36 @@ import java.util.stream.Stream;
 public interface DocumentResultRepository extends CrudRepository<DocumentResultEntity, Long> {
 
     /**
-     * @return All not finished document uploads (upload is in progress and no extracted data filled)
+     * @param providerName document verification provider name
+     * @param timestampNextCheck only documents with the next check not later than the given timestamp are returned
+     * @return All not finished document uploads due to check (upload is in progress and no extracted data filled)
      */
     @Query("SELECT doc FROM DocumentResultEntity doc WHERE" +
             " doc.documentVerification.status = com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus.UPLOAD_IN_PROGRESS" +
             " AND doc.documentVerification.providerName = :providerName " +
             " AND doc.extractedData IS NULL " +
+            " AND (doc.documentVerification.timestampNextCheck IS NULL OR doc.documentVerification.timestampNextCheck <= :timestampNextCheck)" +
             " ORDER BY doc.timestampCreated ASC")
-    Stream<DocumentResultEntity> streamAllInProgressDocumentSubmits(String providerName);
+    Stream<DocumentResultEntity> streamAllInProgressDocumentSubmits(String providerName, Date timestampNextCheck);
 
     /**
-     * @return All not finished document submit verifications (upload is in progress and verification id exists)
+     * Return a chunk of not finished document submit verifications due to check (upload is in progress and verification id exists).
+     * The chunk follows the given ID of the last row of the previous chunk, the rows are ordered by ID.
+     *
+     * @param providerName document verification provider name
+     * @param timestampNextCheck only documents with the next check not later than the given timestamp are returned
+     * @param lastId ID of the last row of the previous chunk
+     * @param limit maximum count of returned rows
+     * @return document results
      */
     @Query("SELECT doc FROM DocumentResultEntity doc WHERE" +
             " doc.documentVerification.status = com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus.UPLOAD_IN_PROGRESS" +
             " AND doc.documentVerification.providerName = :providerName " +
             " AND doc.documentVerification.verificationId IS NOT NULL" +
-            " ORDER BY doc.timestampCreated ASC")
-    Stream<DocumentResultEntity> streamAllInProgressDocumentSubmitVerifications(String providerName);
+            " AND (doc.documentVerification.timestampNextCheck IS NULL OR doc.documentVerification.timestampNextCheck <= :timestampNextCheck)" +
+            " AND doc.id > :lastId" +
+            " ORDER BY doc.id ASC")
+    List<DocumentResultEntity> findInProgressDocumentSubmitVerifications(String providerName, Date timestampNextCheck, Long lastId, Limit limit);
 
     /**
      * @return All document results for the specified document verification and processing phase
@@ -22,14 +22,19 @@ import com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus;
 import com.wultra.app.enrollmentserver.model.enumeration.ErrorOrigin;
 import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository for document verification records.
@@ -48,10 +53,28 @@ public interface DocumentVerificationRepository extends JpaRepository<DocumentVe
             "AND d.status IN :statuses")
     int failVerifications(String activationId, Date timestamp, List<DocumentStatus> statuses);
 
+    /**
+     * Stream document verification IDs created before the given timestamp in the given statuses following the given ID.
+     * Lock the fetched document verifications using PESSIMISTIC_WRITE lock until the end of the transaction,
+     * document verifications locked by another transaction are skipped.
+     * The query does not limit the count of rows, the caller reads the chunk and closes the stream, see {@link LockHints#CHUNK_FETCH_SIZE}.
+     *
+     * @param cleanupDate timestamp created must be before the given value
+     * @param statuses document statuses
+     * @param lastId ID of the last document verification of the previous chunk
+     * @return stream of document verification IDs
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints({
+            @QueryHint(name = LockHints.LOCK_TIMEOUT, value = LockHints.SKIP_LOCKED),
+            @QueryHint(name = LockHints.FETCH_SIZE, value = LockHints.CHUNK_FETCH_SIZE)
+    })
     @Query("SELECT d.id FROM DocumentVerificationEntity d " +
             "WHERE d.timestampCreated < :cleanupDate " +
-            "AND d.status IN :statuses")
-    List<String> findExpiredVerifications(Date cleanupDate, List<DocumentStatus> statuses);
+            "AND d.status IN :statuses " +
+            "AND d.id > :lastId " +
+            "ORDER BY d.id")
+    Stream<String> streamExpiredVerifications(Date cleanupDate, List<DocumentStatus> statuses, String lastId);
 
     @Modifying
     @Query("UPDATE DocumentVerificationEntity d " +
@@ -116,4 +139,35 @@ public interface DocumentVerificationRepository extends JpaRepository<DocumentVe
             "    d.timestampLastUpdated = :timestamp " +
             "WHERE d.id IN :ids")
     void terminate(Collection<String> ids, Date timestamp, String errorDetail, ErrorOrigin errorOrigin);
+
+    /**
+     * Return the audited fields of the given document verifications including the fields of their identity verifications.
+     *
+     * @param ids Document verification IDs
+     * @return audited fields of the document verifications
+     */
+    @Query("SELECT d.id AS id, d.verificationId AS verificationId, i.id AS identityVerificationId, " +
+            "    i.processId AS processId, i.activationId AS activationId, i.userId AS userId " +
+            "FROM DocumentVerificationEntity d JOIN d.identityVerification i " +
+            "WHERE d.id IN :ids")
+    List<AuditProjection> findAuditProjections(Collection<String> ids);
+
+    /**
+     * Document verification fields written to the audit.
+     */
+    interface AuditProjection {
+
+        String getId();
+
+        String getVerificationId();
+
+        String getIdentityVerificationId();
+
+        String getProcessId();
+
+        String getActivationId();
+
+        String getUserId();
+    }
+
 }
@@ -20,8 +20,13 @@ package com.wultra.app.onboardingserver.common.database;
 
 import com.wultra.app.enrollmentserver.model.enumeration.ErrorOrigin;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -44,20 +49,47 @@ public interface IdentityVerificationRepository extends CrudRepository<IdentityV
     List<IdentityVerificationEntity> findByActivationIdOrderByTimestampCreatedDesc(String activationId);
 
     /**
-     * @return All identity verification entities with in progress verification of uploaded documents
+     * Return a chunk of identity verification entities with in progress verification of uploaded documents.
+     * Identity verifications with a document in progress not due to check yet are skipped.
+     * The chunk follows the given keyset of the last row of the previous chunk, the rows are ordered by the last update timestamp and ID.
+     *
+     * @param timestampNextCheck documents with the next check later than the given timestamp are not due
+     * @param lastTimestampLastUpdated last update timestamp of the last row of the previous chunk
+     * @param lastId ID of the last row of the previous chunk
+     * @param timestampLastUpdatedTo only identity verifications updated not later than the given timestamp are returned
+     * @param limit maximum count of returned rows
+     * @return identity verifications
      */
     @Query("SELECT id FROM IdentityVerificationEntity id WHERE" +
             " id.phase = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.DOCUMENT_VERIFICATION" +
             " AND id.status = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.IN_PROGRESS " +
-            " ORDER BY id.timestampLastUpdated ASC")
-    Stream<IdentityVerificationEntity> streamAllInProgressDocumentsVerifications();
+            " AND NOT EXISTS (SELECT d FROM DocumentVerificationEntity d WHERE d.identityVerification = id" +
+            "   AND d.status = com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus.VERIFICATION_IN_PROGRESS" +
+            "   AND d.timestampNextCheck > :timestampNextCheck)" +
+            " AND id.timestampLastUpdated <= :timestampLastUpdatedTo" +
+            " AND (id.timestampLastUpdated > :lastTimestampLastUpdated" +
+            "   OR (id.timestampLastUpdated = :lastTimestampLastUpdated AND id.id > :lastId))" +
+            " ORDER BY id.timestampLastUpdated ASC, id.id ASC")
+    List<IdentityVerificationEntity> findInProgressDocumentsVerifications(
+            Date timestampNextCheck, Date lastTimestampLastUpdated, String lastId, Date timestampLastUpdatedTo, Limit limit);
 
     /**
-     * Return all identity verifications eligible for change to next state.
+     * Return a page of identity verifications eligible for change to next state, with a document submitted to the given provider.
+     * The page follows the given keyset of the last row of the previous page, the rows are ordered by the last update timestamp and ID.
+     * Eligible identity verifications always have the last update timestamp set by the state change.
+     *
+     * When partitioned, only identity verifications with the process ID ending with one of the given suffixes are returned.
      *
+     * @param providerName document verification provider name
+     * @param partitioned whether to filter the identity verifications by the process ID suffix
+     * @param partitionSuffixes accepted last characters of the process ID, ignored when not partitioned
+     * @param lastTimestampLastUpdated last update timestamp of the last row of the previous page
+     * @param lastId ID of the last row of the previous page
+     * @param timestampLastUpdatedTo only identity verifications updated not later than the given timestamp are returned
+     * @param limit maximum count of returned rows
      * @return identity verifications
      */
-    @Query("SELECT id FROM IdentityVerificationEntity id WHERE" +
+    @Query("SELECT id FROM IdentityVerificationEntity id WHERE (" +
             " (id.phase = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.DOCUMENT_UPLOAD" +
             "   AND id.status = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.IN_PROGRESS)" +
             " OR (id.phase = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.DOCUMENT_UPLOAD" +
@@ -73,9 +105,17 @@ public interface IdentityVerificationRepository extends CrudRepository<IdentityV
             " OR (id.phase = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.CLIENT_EVALUATION" +
             "   AND id.status = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.ACCEPTED)" +
             " OR (id.phase = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.PRESENCE_CHECK" +
-            "   AND id.status = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.VERIFICATION_PENDING)"
+            "   AND id.status = com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.VERIFICATION_PENDING))" +
+            " AND EXISTS (SELECT d FROM DocumentVerificationEntity d WHERE d.identityVerification = id AND d.providerName = :providerName)" +
+            " AND (:partitioned = false OR SUBSTRING(id.processId, LENGTH(id.processId), 1) IN :partitionSuffixes)" +
+            " AND id.timestampLastUpdated <= :timestampLastUpdatedTo" +
+            " AND (id.timestampLastUpdated > :lastTimestampLastUpdated" +
+            "   OR (id.timestampLastUpdated = :lastTimestampLastUpdated AND id.id > :lastId))" +
+            " ORDER BY id.timestampLastUpdated ASC, id.id ASC"
     )
-    Stream<IdentityVerificationEntity> streamAllIdentityVerificationsToChangeState();
+    List<IdentityVerificationEntity> findIdentityVerificationsToChangeState(
+            String providerName, boolean partitioned, Collection<String> partitionSuffixes,
+            Date lastTimestampLastUpdated, String lastId, Date timestampLastUpdatedTo, Limit limit);
 
 
     /**
@@ -90,16 +130,36 @@ public interface IdentityVerificationRepository extends CrudRepository<IdentityV
     List<String> findNotCompletedIdentityVerifications(Collection<String> processIds);
 
     /**
-     * Return identity verification IDs created before the given timestamp.
-     * Include only not yet finished entities.
+     * Find an identity verification. Lock the identity verification using PESSIMISTIC_WRITE lock until the end of the transaction.
+     *
+     * @param id Identity verification ID.
+     * @return identity verification
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM IdentityVerificationEntity i WHERE i.id = :id")
+    Optional<IdentityVerificationEntity> findByIdWithLock(String id);
+
+    /**
+     * Stream identity verification IDs created before the given timestamp following the given ID.
+     * Include only not yet finished entities. Lock the fetched identity verifications using PESSIMISTIC_WRITE lock
+     * until the end of the transaction, identity verifications locked by another transaction are skipped.
+     * The query does not limit the count of rows, the caller reads the chunk and closes the stream, see {@link LockHints#CHUNK_FETCH_SIZE}.
      *
      * @param timestamp created timestamp must be older than the given timestamp
-     * @return identity verification IDs
+     * @param lastId ID of the last identity verification of the previous chunk
+     * @return stream of identity verification IDs
      */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints({
+            @QueryHint(name = LockHints.LOCK_TIMEOUT, value = LockHints.SKIP_LOCKED),
+            @QueryHint(name = LockHints.FETCH_SIZE, value = LockHints.CHUNK_FETCH_SIZE)
+    })
     @Query("SELECT i.id FROM IdentityVerificationEntity i " +
             "WHERE i.timestampCreated < :timestamp " +
-            "AND i.phase <> com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.COMPLETED")
-    List<String> findNotCompletedIdentityVerifications(Date timestamp);
+            "AND i.phase <> com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.COMPLETED " +
+            "AND i.id > :lastId " +
+            "ORDER BY i.id")
+    Stream<String> streamNotCompletedIdentityVerifications(Date timestamp, String lastId);
 
     /**
      * Mark the given identity verifications as failed.
@@ -119,4 +179,30 @@ public interface IdentityVerificationRepository extends CrudRepository<IdentityV
             "i.errorOrigin = :errorOrigin " +
             "WHERE i.id IN :ids")
     void terminate(Collection<String> ids, Date timestampExpired, String errorDetail, ErrorOrigin errorOrigin);
+
+    /**
+     * Return the audited fields of the given identity verifications.
+     *
+     * @param ids Identity verification IDs
+     * @return audited fields of the identity verifications
+     */
+    @Query("SELECT i.id AS id, i.processId AS processId, i.activationId AS activationId, i.userId AS userId " +
+            "FROM IdentityVerificationEntity i " +
+            "WHERE i.id IN :ids")
+    List<AuditProjection> findAuditProjections(Collection<String> ids);
+
+    /**
+     * Identity verification fields written to the audit.
+     */
+    interface AuditProjection {
+
+        String getId();
+
+        String getProcessId();
+
+        String getActivationId();
+
+        String getUserId();
+    }
+
 }
@@ -0,0 +1,55 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.common.database;
+
+/**
+ * Query hints of pessimistic locks.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+final class LockHints {
+
+    /**
+     * Hint of the lock timeout.
+     */
+    static final String LOCK_TIMEOUT = "jakarta.persistence.lock.timeout";
+
+    /**
+     * Lock timeout value to skip rows locked by another transaction, see {@code org.hibernate.LockOptions#SKIP_LOCKED}.
+     */
+    static final String SKIP_LOCKED = "-2";
+
+    /**
+     * Hint of the JDBC fetch size, see {@code org.hibernate.jpa.HibernateHints#HINT_FETCH_SIZE}.
+     */
+    static final String FETCH_SIZE = "org.hibernate.fetchSize";
+
+    /**
+     * Fetch size of queries locking a chunk of rows with {@link #SKIP_LOCKED}, the maximum size of the chunk.
+     * <p>
+     * Such queries do not limit the count of rows. Oracle does not allow row limiting together with {@code FOR UPDATE}
+     * and Hibernate falls back to follow-on locking then, which does not lock rows of scalar queries at all.
+     * The rows are locked as they are fetched, so the caller reads only the chunk from the result stream and
+     * at most a fetch of rows is locked.
+     */
+    static final String CHUNK_FETCH_SIZE = "1000";
+
+    private LockHints() {
+        throw new IllegalStateException("Utility class");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.common.database;
+
+import com.wultra.app.onboardingserver.common.database.entity.OnboardingEventEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Repository for {@link OnboardingEventEntity}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Repository
+public interface OnboardingEventRepository extends CrudRepository<OnboardingEventEntity, Long> {
+
+    /**
+     * Find the oldest events created before the given timestamp.
+     *
+     * @param timestamp Timestamp.
+     * @param pageable Page to return.
+     * @return events
+     */
+    List<OnboardingEventEntity> findByTimestampCreatedBeforeOrderByTimestampCreatedAsc(Date timestamp, Pageable pageable);
+
+    /**
+     * Delete the event. Only one caller succeeds when more nodes claim the same event concurrently.
+     *
+     * @param id Event ID.
+     * @return count of deleted events, {@code 0} if the event has been already claimed
+     */
+    @Modifying
+    @Query("DELETE FROM OnboardingEventEntity e WHERE e.id = :id")
+    int claim(Long id);
+
+    /**
+     * Delete the events created before the given timestamp.
+     *
+     * @param timestamp Timestamp.
+     * @return count of deleted events
+     */
+    @Modifying
+    @Query("DELETE FROM OnboardingEventEntity e WHERE e.timestampCreated < :timestamp")
+    int deleteCreatedBefore(Date timestamp);
+
+}
@@ -22,8 +22,12 @@ import com.wultra.app.enrollmentserver.model.enumeration.OtpType;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
 import com.wultra.app.onboardingserver.common.database.entity.OnboardingOtpEntity;
 import com.wultra.app.onboardingserver.common.database.entity.OnboardingProcessEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -31,6 +35,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for onboarding OTP codes.
@@ -45,15 +50,25 @@ public interface OnboardingOtpRepository extends CrudRepository<OnboardingOtpEnt
     Optional<OnboardingOtpEntity> findNewestByProcessIdAndType(String processId, OtpType type);
 
     /**
-     * Return OTP IDs by the given timestamp.
+     * Stream OTP IDs by the given timestamp following the given ID. Lock the fetched OTPs using PESSIMISTIC_WRITE lock
+     * until the end of the transaction, OTPs locked by another transaction are skipped.
+     * The query does not limit the count of rows, the caller reads the chunk and closes the stream, see {@link LockHints#CHUNK_FETCH_SIZE}.
      *
      * @param dateCreatedBefore timestamp created must be before the given value
-     * @return OTP IDs
+     * @param lastId ID of the last OTP of the previous chunk
+     * @return stream of OTP IDs
      */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints({
+            @QueryHint(name = LockHints.LOCK_TIMEOUT, value = LockHints.SKIP_LOCKED),
+            @QueryHint(name = LockHints.FETCH_SIZE, value = LockHints.CHUNK_FETCH_SIZE)
+    })
     @Query("SELECT o.id FROM OnboardingOtpEntity o " +
             "WHERE o.status = com.wultra.app.enrollmentserver.model.enumeration.OtpStatus.ACTIVE " +
-            "AND o.timestampCreated < :dateCreatedBefore")
-    List<String> findExpiredIds(Date dateCreatedBefore);
+            "AND o.timestampCreated < :dateCreatedBefore " +
+            "AND o.id > :lastId " +
+            "ORDER BY o.id")
+    Stream<String> streamExpiredIds(Date dateCreatedBefore, String lastId);
 
     /**
      * Mark the given OTPs as failed.
@@ -98,4 +113,29 @@ public interface OnboardingOtpRepository extends CrudRepository<OnboardingOtpEnt
     @Query("SELECT MAX(o.timestampCreated) FROM OnboardingOtpEntity o WHERE o.process.id = :processId AND o.type = :type")
     Date getNewestOtpCreatedTimestamp(String processId, OtpType type);
 
-}
\ No newline at end of file
+    /**
+     * Return the audited fields of the given OTPs including the fields of their processes.
+     *
+     * @param ids OTP IDs
+     * @return audited fields of the OTPs
+     */
+    @Query("SELECT o.id AS id, p.id AS processId, p.activationId AS activationId, p.userId AS userId " +
+            "FROM OnboardingOtpEntity o JOIN o.process p " +
+            "WHERE o.id IN :ids")
+    List<AuditProjection> findAuditProjections(Collection<String> ids);
+
+    /**
+     * OTP fields written to the audit.
+     */
+    interface AuditProjection {
+
+        String getId();
+
+        String getProcessId();
+
+        String getActivationId();
+
+        String getUserId();
+    }
+
+}
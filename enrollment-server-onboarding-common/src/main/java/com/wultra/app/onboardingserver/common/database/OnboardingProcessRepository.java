@@ -22,9 +22,11 @@ import com.wultra.app.enrollmentserver.model.enumeration.ErrorOrigin;
 import com.wultra.app.enrollmentserver.model.enumeration.OnboardingStatus;
 import com.wultra.app.onboardingserver.common.database.entity.OnboardingProcessEntity;
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -114,32 +116,48 @@ public interface OnboardingProcessRepository extends CrudRepository<OnboardingPr
     int countByUserIdAndTimestamp(String userId, Date dateAfter);
 
     /**
-     * Return onboarding process IDs by the given timestamp and status. Lock these processes using PESSIMISTIC_WRITE
-     * lock until the end of the transaction.
+     * Stream onboarding process IDs by the given timestamp and status following the given ID. Lock these processes
+     * using PESSIMISTIC_WRITE lock until the end of the transaction, processes locked by another transaction are skipped.
+     * The query does not limit the count of rows, the caller reads the chunk and closes the stream, see {@link LockHints#CHUNK_FETCH_SIZE}.
      *
      * @param dateCreatedBefore timestamp created must be before the given value
      * @param status onboarding status
-     * @return onboarding process IDs
+     * @param lastId ID of the last process of the previous chunk
+     * @return stream of onboarding process IDs
      */
     @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints({
+            @QueryHint(name = LockHints.LOCK_TIMEOUT, value = LockHints.SKIP_LOCKED),
+            @QueryHint(name = LockHints.FETCH_SIZE, value = LockHints.CHUNK_FETCH_SIZE)
+    })
     @Query("SELECT p.id FROM OnboardingProcessEntity p " +
             "WHERE p.status = :status " +
-            "AND p.timestampCreated < :dateCreatedBefore")
-    List<String> findByTimestampAndStatusWithLock(Date dateCreatedBefore, OnboardingStatus status);
+            "AND p.timestampCreated < :dateCreatedBefore " +
+            "AND p.id > :lastId " +
+            "ORDER BY p.id")
+    Stream<String> streamByTimestampAndStatusWithLock(Date dateCreatedBefore, OnboardingStatus status, String lastId);
 
     /**
-     * Return onboarding process IDs by the given timestamp. Include only not yet finished entities. Lock these
-     * processes using PESSIMISTIC_WRITE lock until the end of the transaction.
+     * Stream onboarding process IDs by the given timestamp following the given ID. Include only not yet finished entities.
+     * Lock the fetched processes using PESSIMISTIC_WRITE lock until the end of the transaction, processes locked by another transaction are skipped.
+     * The query does not limit the count of rows, the caller reads the chunk and closes the stream, see {@link LockHints#CHUNK_FETCH_SIZE}.
      *
      * @param dateCreatedBefore timestamp created must be before the given value
-     * @return onboarding process IDs
+     * @param lastId ID of the last process of the previous chunk
+     * @return stream of onboarding process IDs
      */
     @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints({
+            @QueryHint(name = LockHints.LOCK_TIMEOUT, value = LockHints.SKIP_LOCKED),
+            @QueryHint(name = LockHints.FETCH_SIZE, value = LockHints.CHUNK_FETCH_SIZE)
+    })
     @Query("SELECT p.id FROM OnboardingProcessEntity p " +
             "WHERE p.status <> com.wultra.app.enrollmentserver.model.enumeration.OnboardingStatus.FINISHED " +
             "AND p.status <> com.wultra.app.enrollmentserver.model.enumeration.OnboardingStatus.FAILED " +
-            "AND p.timestampCreated < :dateCreatedBefore")
-    List<String> findActiveByTimestampWithLock(Date dateCreatedBefore);
+            "AND p.timestampCreated < :dateCreatedBefore " +
+            "AND p.id > :lastId " +
+            "ORDER BY p.id")
+    Stream<String> streamActiveByTimestampWithLock(Date dateCreatedBefore, String lastId);
 
     /**
      * Return onboarding processes to remove activation. Lock these processes using PESSIMISTIC_WRITE lock until
@@ -172,4 +190,27 @@ public interface OnboardingProcessRepository extends CrudRepository<OnboardingPr
             "WHERE p.id IN :ids")
     void terminate(Collection<String> ids, Date timestampExpired, String errorDetail, ErrorOrigin errorOrigin);
 
+    /**
+     * Return the audited fields of the given onboarding processes.
+     *
+     * @param ids Onboarding process IDs
+     * @return audited fields of the onboarding processes
+     */
+    @Query("SELECT p.id AS id, p.activationId AS activationId, p.userId AS userId " +
+            "FROM OnboardingProcessEntity p " +
+            "WHERE p.id IN :ids")
+    List<AuditProjection> findAuditProjections(Collection<String> ids);
+
+    /**
+     * Onboarding process fields written to the audit.
+     */
+    interface AuditProjection {
+
+        String getId();
+
+        String getActivationId();
+
+        String getUserId();
+    }
+
 }
@@ -66,9 +66,18 @@ public class DocumentDataEntity implements Serializable {
     @Column(name = "filename", nullable = false)
     private String filename;
 
-    @Column(name = "data", nullable = false)
+    /**
+     * Raw file data, {@code null} if the data are stored outside the database, see {@link #dataReference}
+     */
+    @Column(name = "data")
     private byte[] data;
 
+    /**
+     * Reference to the data stored outside the database, {@code null} if the data are stored in the database
+     */
+    @Column(name = "data_reference")
+    private String dataReference;
+
     @Column(name = "timestamp_created", nullable = false)
     private Date timestampCreated;
 
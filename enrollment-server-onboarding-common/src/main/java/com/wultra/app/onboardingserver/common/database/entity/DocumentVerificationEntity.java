@@ -203,6 +203,12 @@ public class DocumentVerificationEntity implements Serializable {
     @Column(name = "timestamp_last_updated")
     private Date timestampLastUpdated;
 
+    /**
+     * Timestamp of the next check of the document status at the provider, {@code null} to check it at the next run
+     */
+    @Column(name = "timestamp_next_check")
+    private Date timestampNextCheck;
+
     /**
      * Document results from different phases of processing (upload, verification) starting with the latest entity
      */
@@ -0,0 +1,78 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.common.database.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Onboarding event waiting for dispatch to the state machine of the identity verification (transactional outbox).
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "es_onboarding_event")
+@ToString
+@EqualsAndHashCode(of = "id")
+public class OnboardingEventEntity implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Autogenerated identifier
+     */
+    @Id
+    @SequenceGenerator(name = "es_onboarding_event", sequenceName = "es_onboarding_event_seq")
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = "es_onboarding_event")
+    private Long id;
+
+    @Column(name = "identity_verification_id", nullable = false)
+    private String identityVerificationId;
+
+    @Column(name = "process_id", nullable = false)
+    private String processId;
+
+    @Column(name = "activation_id", nullable = false)
+    private String activationId;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * Name of the state machine event.
+     */
+    @Column(name = "event", nullable = false)
+    private String event;
+
+    /**
+     * Timestamp when the entity was created.
+     */
+    @Column(name = "timestamp_created", nullable = false)
+    private Date timestampCreated;
+
+}
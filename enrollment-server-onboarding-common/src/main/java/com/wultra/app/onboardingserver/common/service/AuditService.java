@@ -17,6 +17,10 @@
  */
 package com.wultra.app.onboardingserver.common.service;
 
+import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.OnboardingOtpRepository;
+import com.wultra.app.onboardingserver.common.database.OnboardingProcessRepository;
 import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
 import com.wultra.app.onboardingserver.common.database.entity.OnboardingOtpEntity;
@@ -28,6 +32,9 @@ import org.springframework.stereotype.Service;
 
 /**
  * Service implementing audit functionality.
+ * <p>
+ * Besides the entities, the audited fields may be given by repository projections,
+ * so that bulk operations do not need to load the whole entities just to audit them.
  *
  * @author Lubos Racansky, lubos.racansky@wultra.com
  */
@@ -219,71 +226,120 @@ public class AuditService {
         audit.info(message, auditDetail, args);
     }
 
+    /**
+     * Audit the given process projection at info level.
+     *
+     * @param process process projection to audit
+     * @param message message, arguments may be put to via template {@code {}}
+     * @param args message arguments
+     */
+    public void audit(final OnboardingProcessRepository.AuditProjection process, final String message, final Object... args) {
+        final AuditDetail auditDetail = createAuditDetailBuilder(AuditType.PROCESS, process.getActivationId(), process.getId(), process.getUserId(), null)
+                .build();
+        audit.info(message, auditDetail, args);
+    }
+
+    /**
+     * Audit the given identity verification projection at info level.
+     *
+     * @param identityVerification identity verification projection to audit
+     * @param message message, arguments may be put to via template {@code {}}
+     * @param args message arguments
+     */
+    public void audit(final IdentityVerificationRepository.AuditProjection identityVerification, final String message, final Object... args) {
+        final AuditDetail auditDetail = createAuditDetailBuilder(AuditType.IDENTITY_VERIFICATION,
+                identityVerification.getActivationId(), identityVerification.getProcessId(), identityVerification.getUserId(), identityVerification.getId())
+                .build();
+        audit.info(message, auditDetail, args);
+    }
+
+    /**
+     * Audit the given otp projection at info level.
+     *
+     * @param otp otp projection to audit
+     * @param message message, arguments may be put to via template {@code {}}
+     * @param args message arguments
+     */
+    public void audit(final OnboardingOtpRepository.AuditProjection otp, final String message, final Object... args) {
+        final AuditDetail auditDetail = createAuditDetailBuilder(AuditType.OTP, otp.getActivationId(), otp.getProcessId(), otp.getUserId(), null)
+                .param(OTP_ID, otp.getId())
+                .build();
+        audit.info(message, auditDetail, args);
+    }
+
+    /**
+     * Audit the given document verification projection at info level.
+     *
+     * @param documentVerification document verification projection to audit
+     * @param message message, arguments may be put to via template {@code {}}
+     * @param args message arguments
+     */
+    public void audit(final DocumentVerificationRepository.AuditProjection documentVerification, final String message, final Object... args) {
+        final AuditDetail auditDetail = createAuditDetailBuilder(AuditType.DOCUMENT_VERIFICATION,
+                documentVerification.getActivationId(), documentVerification.getProcessId(), documentVerification.getUserId(), documentVerification.getIdentityVerificationId())
+                .param(DOCUMENT_ID, documentVerification.getId())
+                .param(DOCUMENT_VERIFICATION_ID, documentVerification.getVerificationId())
+                .build();
+        audit.info(message, auditDetail, args);
+    }
+
     private static AuditDetail createAuditDetail(final OnboardingOtpEntity otp, final IdentityVerificationEntity identityVerification) {
-        return AuditDetail.builder()
-                .type(AuditType.OTP.code)
-                .param(IDENTITY_VERIFICATION_ID, identityVerification.getId())
-                .param(PROCESS_ID, identityVerification.getProcessId())
-                .param(ACTIVATION_ID, identityVerification.getActivationId())
-                .param(USER_ID, identityVerification.getUserId())
+        return createAuditDetailBuilder(AuditType.OTP, identityVerification)
                 .param(OTP_ID, otp.getId())
                 .build();
     }
 
     private static AuditDetail createAuditDetail(final OnboardingOtpEntity otp) {
         final OnboardingProcessEntity process = otp.getProcess();
-        return AuditDetail.builder()
-                .type(AuditType.OTP.code)
-                .param(ACTIVATION_ID, process.getActivationId())
-                .param(PROCESS_ID, process.getId())
-                .param(USER_ID, process.getUserId())
+        return createAuditDetailBuilder(AuditType.OTP, process.getActivationId(), process.getId(), process.getUserId(), null)
                 .param(OTP_ID, otp.getId())
                 .build();
     }
 
     private static AuditDetail createAuditDetail(final AuditType type, final IdentityVerificationEntity identityVerification) {
-        return AuditDetail.builder()
-                .type(type.code)
-                .param(IDENTITY_VERIFICATION_ID, identityVerification.getId())
-                .param(PROCESS_ID, identityVerification.getProcessId())
-                .param(ACTIVATION_ID, identityVerification.getActivationId())
-                .param(USER_ID, identityVerification.getUserId())
-                .build();
+        return createAuditDetailBuilder(type, identityVerification).build();
     }
 
     private static AuditDetail createAuditDetail(final DocumentVerificationEntity document) {
-        final IdentityVerificationEntity identityVerification = document.getIdentityVerification();
-        return AuditDetail.builder()
-                .type(AuditType.DOCUMENT_VERIFICATION.code)
-                .param(IDENTITY_VERIFICATION_ID, identityVerification.getId())
-                .param(PROCESS_ID, identityVerification.getProcessId())
-                .param(ACTIVATION_ID, identityVerification.getActivationId())
-                .param(USER_ID, identityVerification.getUserId())
+        return createAuditDetailBuilder(AuditType.DOCUMENT_VERIFICATION, document.getIdentityVerification())
                 .param(DOCUMENT_ID, document.getId())
                 .param(DOCUMENT_VERIFICATION_ID, document.getVerificationId())
                 .build();
     }
 
     private static AuditDetail createAuditDetail(final AuditType type, final OnboardingProcessEntity process, final String identityVerificationId) {
+        return createAuditDetailBuilder(type, process.getActivationId(), process.getId(), process.getUserId(), identityVerificationId)
+                .build();
+    }
+
+    private static AuditDetail.Builder createAuditDetailBuilder(final AuditType type, final IdentityVerificationEntity identityVerification) {
+        return createAuditDetailBuilder(type,
+                identityVerification.getActivationId(), identityVerification.getProcessId(), identityVerification.getUserId(), identityVerification.getId());
+    }
+
+    /**
+     * Create the audit detail builder with the common params shared by the entities and their projections, {@code null} values are omitted.
+     */
+    private static AuditDetail.Builder createAuditDetailBuilder(
+            final AuditType type, final String activationId, final String processId, final String userId, final String identityVerificationId) {
+
         final AuditDetail.Builder builder = AuditDetail.builder()
                 .type(type.code)
-                .param(PROCESS_ID, process.getId());
+                .param(PROCESS_ID, processId);
 
         if (identityVerificationId != null) {
             builder.param(IDENTITY_VERIFICATION_ID, identityVerificationId);
         }
 
-        final String activationId = process.getActivationId();
         if (activationId != null) {
             builder.param(ACTIVATION_ID, activationId);
         }
 
-        final String userId = process.getUserId();
         if (userId != null) {
             builder.param(USER_ID, userId);
         }
 
-        return builder.build();
+        return builder;
     }
 
     private enum AuditType {
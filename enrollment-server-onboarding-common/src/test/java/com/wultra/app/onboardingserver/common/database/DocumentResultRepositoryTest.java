@@ -24,9 +24,13 @@ import jakarta.transaction.Transactional;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 
+import java.time.Instant;
+import java.util.Date;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -45,7 +49,7 @@ class DocumentResultRepositoryTest {
     @Test
     @Sql
     void testStreamAllInProgressDocumentSubmits() {
-        assertThat(tested.streamAllInProgressDocumentSubmits("mock"))
+        assertThat(tested.streamAllInProgressDocumentSubmits("mock", new Date()))
                 .extracting(DocumentResultEntity::getDocumentVerification)
                 .extracting(DocumentVerificationEntity::getProviderName)
                 .containsOnly("mock")
@@ -54,12 +58,24 @@ class DocumentResultRepositoryTest {
 
     @Test
     @Sql
-    void testStreamAllInProgressDocumentSubmitVerifications() {
-        assertThat(tested.streamAllInProgressDocumentSubmitVerifications("mock"))
+    void testFindInProgressDocumentSubmitVerifications() {
+        assertThat(tested.findInProgressDocumentSubmitVerifications("mock", new Date(), 0L, Limit.of(1)))
                 .extracting(DocumentResultEntity::getDocumentVerification)
                 .extracting(DocumentVerificationEntity::getProviderName)
                 .containsOnly("mock")
                 .hasSize(1);
+
+        assertThat(tested.findInProgressDocumentSubmitVerifications("mock", new Date(), 0L, Limit.of(10)))
+                .extracting(DocumentResultEntity::getId)
+                .containsExactly(4L, 5L);
+
+        assertThat(tested.findInProgressDocumentSubmitVerifications("mock", new Date(), 4L, Limit.of(10)))
+                .extracting(DocumentResultEntity::getId)
+                .containsExactly(5L);
+
+        assertThat(tested.findInProgressDocumentSubmitVerifications("mock", Date.from(Instant.parse("2100-01-01T00:00:00Z")), 4L, Limit.of(10)))
+                .extracting(DocumentResultEntity::getId)
+                .containsExactly(5L, 6L);
     }
 
 }
@@ -0,0 +1,98 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.common.database;
+
+import com.wultra.app.onboardingserver.common.database.entity.OnboardingOtpEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Test for {@link OnboardingOtpRepository}.
+ * <p>
+ * Not transactional, the test data must be visible to the concurrent transactions.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OnboardingOtpRepositoryTest {
+
+    @Autowired
+    private OnboardingOtpRepository tested;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @Sql
+    @Sql(statements = {"DELETE FROM es_onboarding_otp", "DELETE FROM es_onboarding_process"}, executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+    void testStreamExpiredIds_skipLocked() {
+        final String id1 = "00000000-0000-0000-0000-000000000001";
+        final String id2 = "00000000-0000-0000-0000-000000000002";
+        final String id4 = "00000000-0000-0000-0000-000000000004";
+        final String id5 = "00000000-0000-0000-0000-000000000005";
+        final Date now = new Date();
+
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final TransactionTemplate concurrentTransactionTemplate = new TransactionTemplate(transactionManager);
+        concurrentTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        final List<String> notLockedIds = concurrentTransactionTemplate.execute(status -> streamExpiredIds(now, ""));
+        assertEquals(List.of(id1, id2, id4, id5), notLockedIds);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertNotNull(entityManager.find(OnboardingOtpEntity.class, id2, LockModeType.PESSIMISTIC_WRITE));
+
+            final List<String> ids = concurrentTransactionTemplate.execute(concurrentStatus -> streamExpiredIds(now, ""));
+            assertEquals(List.of(id1, id4, id5), ids, "Row locked by another transaction must be skipped");
+
+            final List<String> nextIds = concurrentTransactionTemplate.execute(concurrentStatus -> streamExpiredIds(now, id1));
+            assertEquals(List.of(id4, id5), nextIds);
+
+            status.setRollbackOnly();
+        });
+    }
+
+    private List<String> streamExpiredIds(final Date dateCreatedBefore, final String lastId) {
+        try (Stream<String> ids = tested.streamExpiredIds(dateCreatedBefore, lastId)) {
+            return ids.toList();
+        }
+    }
+
+}
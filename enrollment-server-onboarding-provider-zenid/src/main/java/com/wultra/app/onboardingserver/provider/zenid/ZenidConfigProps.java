@@ -76,6 +76,11 @@ class ZenidConfigProps {
      */
     private String serviceUserAgent;
 
+    /**
+     * Maximal number of document pages uploaded concurrently to ZenID by this server instance, {@code 1} uploads pages sequentially
+     */
+    private int uploadConcurrency = 1;
+
     /**
      * REST client configuration
      */
@@ -94,5 +99,6 @@ class ZenidConfigProps {
     void validate() {
         // TODO (racansky, 2022-11-03, #495) DocumentVerificationFinalAction works only in sync mode
         Assert.state(!asyncProcessingEnabled, "ZenId async functionality is not fully supported yet");
+        Assert.state(uploadConcurrency > 0, "ZenId upload concurrency must be positive");
     }
 }
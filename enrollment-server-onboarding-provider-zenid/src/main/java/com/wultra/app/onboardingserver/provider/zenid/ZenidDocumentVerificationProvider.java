@@ -36,15 +36,22 @@ import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.system.JavaVersion;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implementation of the {@link DocumentVerificationProvider} with <a href="https://zenid.trask.cz/">ZenID</a>.
@@ -54,7 +61,7 @@ import java.util.*;
 @ConditionalOnProperty(value = "enrollment-server-onboarding.document-verification.provider", havingValue = "zenid")
 @Component
 @Slf4j
-public class ZenidDocumentVerificationProvider implements DocumentVerificationProvider {
+public class ZenidDocumentVerificationProvider implements DocumentVerificationProvider, DisposableBean {
 
     private static final String SDK_INIT_RESPONSE = "zenid-sdk-init-response";
     private static final String SDK_INIT_TOKEN = "sdk-init-token";
@@ -70,6 +77,12 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
 
     private final ZenidRestApiService zenidApiService;
 
+    /**
+     * Executor for concurrent upload of document pages, {@code null} when pages are uploaded sequentially.
+     */
+    @Nullable
+    private final Executor uploadExecutor;
+
     /**
      * Service constructor.
      *
@@ -77,6 +90,7 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
      * @param objectMapper                   Object mapper.
      * @param documentVerificationRepository Document verification repository.
      * @param zenidApiService                ZenID API service.
+     * @param virtualThreads                 Whether to upload the pages on virtual threads.
      */
     @Autowired
     public ZenidDocumentVerificationProvider(
@@ -84,11 +98,31 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
             @Qualifier("objectMapperZenid")
             ObjectMapper objectMapper,
             DocumentVerificationRepository documentVerificationRepository,
-            ZenidRestApiService zenidApiService) {
+            ZenidRestApiService zenidApiService,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this(zenidConfigProps, objectMapper, documentVerificationRepository, zenidApiService, createUploadExecutor(zenidConfigProps, virtualThreads));
+    }
+
+    /**
+     * Service constructor allowing to specify the executor of concurrent page uploads.
+     *
+     * @param zenidConfigProps               ZenID configuration properties.
+     * @param objectMapper                   Object mapper.
+     * @param documentVerificationRepository Document verification repository.
+     * @param zenidApiService                ZenID API service.
+     * @param uploadExecutor                 Executor of concurrent page uploads, {@code null} for sequential uploads.
+     */
+    ZenidDocumentVerificationProvider(
+            final ZenidConfigProps zenidConfigProps,
+            final ObjectMapper objectMapper,
+            final DocumentVerificationRepository documentVerificationRepository,
+            final ZenidRestApiService zenidApiService,
+            @Nullable final Executor uploadExecutor) {
         this.zenidConfigProps = zenidConfigProps;
         this.objectMapper = objectMapper;
         this.documentVerificationRepository = documentVerificationRepository;
         this.zenidApiService = zenidApiService;
+        this.uploadExecutor = uploadExecutor;
     }
 
     @Override
@@ -139,19 +173,48 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
     public DocumentsSubmitResult submitDocuments(OwnerId id, List<SubmittedDocument> documents) throws RemoteCommunicationException, DocumentVerificationException {
         DocumentsSubmitResult result = new DocumentsSubmitResult();
 
-        for (SubmittedDocument document : documents) {
-            ResponseEntity<ZenidWebUploadSampleResponse> responseEntity;
+        // Pages are uploaded concurrently when enabled, the responses are processed in the order of the documents
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<CompletableFuture<UploadResponse>> uploads = uploadExecutor != null && documents.size() > 1
+                ? documents.stream()
+                        .map(document -> CompletableFuture.supplyAsync(() -> failed.get() ? null : uploadSample(id, document), uploadExecutor))
+                        .toList()
+                : null;
 
-            try {
-                responseEntity = zenidApiService.uploadSample(id, document);
-            } catch (RestClientException e) {
-                throw new RemoteCommunicationException(
-                        String.format("Failed REST call to submit documents to ZenID, statusCode=%s, responseBody='%s', %s",
-                                e.getStatusCode(), e.getResponse(), id),
-                        e);
-            } catch (Exception e) {
-                throw new RemoteCommunicationException(String.format("Unexpected error when submitting documents to ZenID, %s", id), e);
+        try {
+            processUploads(id, documents, uploads, result);
+        } catch (RemoteCommunicationException | DocumentVerificationException | RuntimeException e) {
+            if (uploads != null) {
+                // the uploads not started yet are skipped, the running ones are awaited, so no upload outlives the failed submit
+                failed.set(true);
+                CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).exceptionally(ex -> null).join();
             }
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Process the upload responses in the order of the documents.
+     *
+     * @param id Owner identification.
+     * @param documents Document pages.
+     * @param uploads Concurrent uploads of the pages, {@code null} to upload the pages sequentially.
+     * @param result Result to add the document submit results to.
+     */
+    private void processUploads(
+            final OwnerId id,
+            final List<SubmittedDocument> documents,
+            @Nullable final List<CompletableFuture<UploadResponse>> uploads,
+            final DocumentsSubmitResult result) throws RemoteCommunicationException, DocumentVerificationException {
+
+        for (int i = 0; i < documents.size(); i++) {
+            final SubmittedDocument document = documents.get(i);
+            final UploadResponse upload = uploads != null ? uploads.get(i).join() : uploadSample(id, document);
+            if (upload.error() != null) {
+                throw upload.error();
+            }
+            final ResponseEntity<ZenidWebUploadSampleResponse> responseEntity = upload.responseEntity();
 
             final ZenidWebUploadSampleResponse response = responseEntity.getBody();
             if (response == null) {
@@ -175,7 +238,26 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
             }
             result.getResults().add(documentSubmitResult);
         }
-        return result;
+    }
+
+    /**
+     * Upload the given document page to ZenID.
+     *
+     * @param id Owner identification.
+     * @param document Document page to upload.
+     * @return Upload response containing either the response entity or the communication error.
+     */
+    private UploadResponse uploadSample(final OwnerId id, final SubmittedDocument document) {
+        try {
+            return new UploadResponse(zenidApiService.uploadSample(id, document), null);
+        } catch (RestClientException e) {
+            return new UploadResponse(null, new RemoteCommunicationException(
+                    String.format("Failed REST call to submit documents to ZenID, statusCode=%s, responseBody='%s', %s",
+                            e.getStatusCode(), e.getResponse(), id),
+                    e));
+        } catch (Exception e) {
+            return new UploadResponse(null, new RemoteCommunicationException(String.format("Unexpected error when submitting documents to ZenID, %s", id), e));
+        }
     }
 
     @Override
@@ -602,4 +684,37 @@ public class ZenidDocumentVerificationProvider implements DocumentVerificationPr
             throw new RemoteCommunicationException("Out of ZenID licence: " + errorText);
         }
     }
+
+    @Override
+    public void destroy() {
+        if (uploadExecutor instanceof final ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+            threadPoolTaskExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Create the executor of the page uploads. The pool and the queue are bounded and shared by all the submits
+     * of this server instance. When both are full, the page is uploaded by the calling thread.
+     */
+    @Nullable
+    private static Executor createUploadExecutor(final ZenidConfigProps zenidConfigProps, final boolean virtualThreads) {
+        final int concurrency = zenidConfigProps.getUploadConcurrency();
+        logger.info("ZenID document upload concurrency: {}", concurrency);
+        if (concurrency <= 1) {
+            return null;
+        }
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(concurrency);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler((runnable, threadPoolExecutor) -> runnable.run());
+        executor.setThreadNamePrefix("zenid-upload-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.initialize();
+        return executor;
+    }
+
+    private record UploadResponse(ResponseEntity<ZenidWebUploadSampleResponse> responseEntity, RemoteCommunicationException error) {
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.provider.zenid;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wultra.app.enrollmentserver.model.integration.DocumentSubmitResult;
+import com.wultra.app.enrollmentserver.model.integration.DocumentsSubmitResult;
+import com.wultra.app.enrollmentserver.model.integration.OwnerId;
+import com.wultra.app.enrollmentserver.model.integration.SubmittedDocument;
+import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
+import com.wultra.app.onboardingserver.common.errorhandling.RemoteCommunicationException;
+import com.wultra.app.onboardingserver.provider.zenid.model.api.ZenidWebUploadSampleResponse;
+import com.wultra.core.rest.client.base.RestClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for concurrent page upload of {@link ZenidDocumentVerificationProvider}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class ZenidDocumentVerificationProviderUploadTest {
+
+    private final ZenidRestApiService zenidApiService = mock(ZenidRestApiService.class);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final OwnerId ownerId = new OwnerId();
+
+    private final SubmittedDocument front = createDocument("front");
+
+    private final SubmittedDocument back = createDocument("back");
+
+    private ZenidDocumentVerificationProvider tested;
+
+    @BeforeEach
+    void setUp() {
+        tested = new ZenidDocumentVerificationProvider(
+                new ZenidConfigProps(), new ObjectMapper(), mock(DocumentVerificationRepository.class), zenidApiService, executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testSubmitDocuments_concurrentUpload() throws Exception {
+        final CountDownLatch backUploaded = new CountDownLatch(1);
+        when(zenidApiService.uploadSample(any(), eq(front)))
+                .thenAnswer(invocation -> {
+                    // front page upload completes only after the back page, both must be in flight at the same time
+                    assertTrue(backUploaded.await(5, TimeUnit.SECONDS), "Pages are not uploaded concurrently");
+                    return createResponse("sample-front");
+                });
+        when(zenidApiService.uploadSample(any(), eq(back)))
+                .thenAnswer(invocation -> {
+                    backUploaded.countDown();
+                    return createResponse("sample-back");
+                });
+
+        final DocumentsSubmitResult result = tested.submitDocuments(ownerId, List.of(front, back));
+
+        assertEquals(List.of("front", "back"), result.getResults().stream().map(DocumentSubmitResult::getDocumentId).toList());
+        assertEquals(List.of("sample-front", "sample-back"), result.getResults().stream().map(DocumentSubmitResult::getUploadId).toList());
+    }
+
+    @Test
+    void testSubmitDocuments_concurrentUploadFailure() throws Exception {
+        when(zenidApiService.uploadSample(any(), eq(front)))
+                .thenReturn(createResponse("sample-front"));
+        when(zenidApiService.uploadSample(any(), eq(back)))
+                .thenThrow(RestClientException.class);
+
+        final RemoteCommunicationException exception = assertThrows(RemoteCommunicationException.class, () ->
+                tested.submitDocuments(ownerId, List.of(front, back)));
+        assertInstanceOf(RestClientException.class, exception.getCause());
+    }
+
+    @Test
+    void testSubmitDocuments_concurrentUploadFailureAwaitsRunningAndSkipsPending() throws Exception {
+        final SubmittedDocument selfie = createDocument("selfie");
+        final AtomicBoolean backFinished = new AtomicBoolean();
+        when(zenidApiService.uploadSample(any(), eq(front)))
+                .thenThrow(RestClientException.class);
+        when(zenidApiService.uploadSample(any(), eq(back)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(200);
+                    backFinished.set(true);
+                    return createResponse("sample-back");
+                });
+
+        // the last page starts long after the failure of the first one
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
+        final AtomicInteger submitted = new AtomicInteger();
+        final Executor delayingExecutor = runnable ->
+                scheduler.schedule(runnable, submitted.getAndIncrement() < 2 ? 0 : 1_000, TimeUnit.MILLISECONDS);
+        final ZenidDocumentVerificationProvider provider = new ZenidDocumentVerificationProvider(
+                new ZenidConfigProps(), new ObjectMapper(), mock(DocumentVerificationRepository.class), zenidApiService, delayingExecutor);
+
+        try {
+            assertThrows(RemoteCommunicationException.class, () ->
+                    provider.submitDocuments(ownerId, List.of(front, back, selfie)));
+
+            assertTrue(backFinished.get(), "Running upload must be awaited");
+            verify(zenidApiService, never()).uploadSample(any(), eq(selfie));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static SubmittedDocument createDocument(final String documentId) {
+        final SubmittedDocument document = new SubmittedDocument();
+        document.setDocumentId(documentId);
+        return document;
+    }
+
+    private static ResponseEntity<ZenidWebUploadSampleResponse> createResponse(final String sampleId) {
+        final ZenidWebUploadSampleResponse response = new ZenidWebUploadSampleResponse();
+        response.setSampleID(sampleId);
+        response.setState(ZenidWebUploadSampleResponse.StateEnum.NOTDONE);
+        return ResponseEntity.ok(response);
+    }
+}
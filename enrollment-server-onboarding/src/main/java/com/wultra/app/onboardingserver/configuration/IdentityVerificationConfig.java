@@ -21,6 +21,7 @@ import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.Assert;
+import org.springframework.util.unit.DataSize;
 
 import jakarta.annotation.PostConstruct;
 import java.time.Duration;
@@ -40,6 +41,72 @@ public class IdentityVerificationConfig {
     @Value("${enrollment-server-onboarding.document-verification.cleanupEnabled:false}")
     private boolean documentVerificationCleanupEnabled;
 
+    /**
+     * Count of rows processed and committed at once by the document verification sync tasks.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.batch.chunk-size:50}")
+    private int verificationBatchChunkSize;
+
+    /**
+     * Maximum duration of a single run of the document verification sync tasks, remaining rows are left for the next run.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.batch.time-budget:4m}")
+    private Duration verificationBatchTimeBudget;
+
+    /**
+     * Maximum count of concurrent calls to the document verification provider by the document verification sync tasks.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.batch.provider-concurrency:4}")
+    private int verificationBatchProviderConcurrency;
+
+    /**
+     * Maximum count of concurrent calls to the document verification provider submitting documents of different types.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.submit.provider-concurrency:4}")
+    private int documentSubmitProviderConcurrency;
+
+    /**
+     * Minimal delay of the next check of a document in progress at the provider.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.backoff.min-delay:5s}")
+    private Duration verificationBackoffMinDelay;
+
+    /**
+     * Maximal delay of the next check of a document in progress at the provider.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.backoff.max-delay:5m}")
+    private Duration verificationBackoffMaxDelay;
+
+    /**
+     * Delay of the next check as a fraction of the age of the document.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.backoff.multiplier:0.5}")
+    private double verificationBackoffMultiplier;
+
+    /**
+     * Maximum uncompressed size of a single document extracted from the uploaded archive.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.extraction.max-entry-size:10MB}")
+    private DataSize documentExtractionMaxEntrySize;
+
+    /**
+     * Maximum total uncompressed size of all the documents extracted from the uploaded archive.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.extraction.max-total-size:50MB}")
+    private DataSize documentExtractionMaxTotalSize;
+
+    /**
+     * Maximum count of entries in the uploaded archive.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.extraction.max-entries:20}")
+    private int documentExtractionMaxEntries;
+
+    /**
+     * Maximum ratio of the uncompressed to the compressed size of an entry in the uploaded archive.
+     */
+    @Value("${enrollment-server-onboarding.document-verification.extraction.max-compression-ratio:100}")
+    private int documentExtractionMaxCompressionRatio;
+
     @Value("${enrollment-server-onboarding.presence-check.enabled:true}")
     private boolean presenceCheckEnabled;
 
@@ -79,6 +146,27 @@ public class IdentityVerificationConfig {
     @Value("${enrollment-server-onboarding.client-evaluation.max-failed-attempts:5}")
     private int clientEvaluationMaxFailedAttempts;
 
+    /**
+     * Whether the state changes are dispatched to the state machine immediately by the event queue.
+     */
+    @Value("${enrollment-server-onboarding.state-machine.event-queue.enabled:false}")
+    private boolean eventQueueEnabled;
+
+    @Value("${enrollment-server-onboarding.state-machine.event-queue.worker-threads:2}")
+    private int eventQueueWorkerThreads;
+
+    /**
+     * Age of an event not dispatched yet to be picked up by the sweep.
+     */
+    @Value("${enrollment-server-onboarding.state-machine.event-queue.sweep-delay:10s}")
+    private Duration eventQueueSweepDelay;
+
+    /**
+     * Age of an event after which the event is discarded, the state change is left to the polling then.
+     */
+    @Value("${enrollment-server-onboarding.state-machine.event-queue.max-age:1h}")
+    private Duration eventQueueMaxAge;
+
     @Value("${enrollment-server-onboarding.client-evaluation.include-extracted-data:false}")
     private boolean sendingExtractedDataEnabled;
 
@@ -139,6 +139,18 @@ public class DefaultExceptionHandler {
         return new ErrorResponse("DOCUMENT_SUBMIT_FAILED", "Document submit failed.");
     }
 
+    /**
+     * Handling of document extraction limit exceptions.
+     * @param ex Exception.
+     * @return Response with error details.
+     */
+    @ExceptionHandler(DocumentExtractionLimitException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public @ResponseBody ErrorResponse handleDocumentExtractionLimitException(DocumentExtractionLimitException ex) {
+        logger.warn("Document extraction limit exceeded: {}", ex.getMessage());
+        return new ErrorResponse("DOCUMENT_EXTRACTION_LIMIT_EXCEEDED", "Uploaded documents exceed the allowed limits.");
+    }
+
     /**
      * Handling of document verification exceptions.
      * @param ex Exception.
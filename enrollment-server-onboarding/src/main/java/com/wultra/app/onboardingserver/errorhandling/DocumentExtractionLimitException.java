@@ -0,0 +1,38 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.errorhandling;
+
+import com.wultra.app.onboardingserver.api.errorhandling.DocumentVerificationException;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown in case the uploaded archive with documents exceeds the extraction limits.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+public class DocumentExtractionLimitException extends DocumentVerificationException {
+
+    @Serial
+    private static final long serialVersionUID = 4310557052183410927L;
+
+    public DocumentExtractionLimitException(String message) {
+        super(message);
+    }
+
+}
@@ -19,20 +19,33 @@ package com.wultra.app.onboardingserver.impl.service;
 
 import com.wultra.app.onboardingserver.api.errorhandling.DocumentVerificationException;
 import com.wultra.app.enrollmentserver.model.Document;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.errorhandling.DocumentExtractionLimitException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
 /**
  * Service implementing extraction and basic verification of uploaded documents.
+ * <p>
+ * The archive is inflated entry by entry. The count of entries, the uncompressed size of each entry and of all the entries together,
+ * and the compression ratio of each entry are limited and checked while inflating, see {@code enrollment-server-onboarding.document-verification.extraction.*}.
  *
  * @author Roman Strobl, roman.strobl@wultra.com
  */
@@ -41,6 +54,81 @@ public class DataExtractionService {
 
     private static final Logger logger = LoggerFactory.getLogger(DataExtractionService.class);
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Uncompressed size of an entry from which the compression ratio is checked, small entries may be compressed well legitimately.
+     */
+    private static final long COMPRESSION_RATIO_GRACE_SIZE = 100 * 1024;
+
+    private static final String METRIC_PREFIX = "enrollment.onboarding.document.extraction";
+
+    private final IdentityVerificationConfig identityVerificationConfig;
+
+    private final DistributionSummary archiveSizeSummary;
+    private final DistributionSummary uncompressedSizeSummary;
+    private final DistributionSummary entriesSummary;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final Map<Limit, Counter> rejectedCounters = new EnumMap<>(Limit.class);
+
+    /**
+     * Service constructor.
+     * @param identityVerificationConfig Identity verification configuration.
+     * @param meterRegistry Meter registry.
+     */
+    @Autowired
+    public DataExtractionService(final IdentityVerificationConfig identityVerificationConfig, final MeterRegistry meterRegistry) {
+        this.identityVerificationConfig = identityVerificationConfig;
+        this.archiveSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".archive.size")
+                .description("Compressed size of uploaded document archives")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.uncompressedSizeSummary = DistributionSummary.builder(METRIC_PREFIX + ".uncompressed.size")
+                .description("Uncompressed size of documents extracted from an uploaded archive")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.entriesSummary = DistributionSummary.builder(METRIC_PREFIX + ".entries")
+                .description("Count of entries in an uploaded document archive")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.successTimer = Timer.builder(METRIC_PREFIX + ".duration")
+                .description("Duration of the extraction of an uploaded document archive")
+                .tag("result", "success")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failureTimer = Timer.builder(METRIC_PREFIX + ".duration")
+                .description("Duration of the extraction of an uploaded document archive")
+                .tag("result", "failure")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        for (Limit limit : Limit.values()) {
+            rejectedCounters.put(limit, Counter.builder(METRIC_PREFIX + ".rejected")
+                    .description("Uploaded document archives rejected for exceeding an extraction limit")
+                    .tag("limit", limit.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Consumer of a document extracted from an archive.
+     */
+    @FunctionalInterface
+    public interface DocumentConsumer {
+
+        /**
+         * Consume the extracted document.
+         * @param filename Filename of the document.
+         * @param size Uncompressed size declared by the archive, {@code -1} if unknown.
+         * @param data Data of the document, valid only during the call. Closing the stream has no effect.
+         * @throws IOException Thrown in case the data cannot be read or consumed.
+         * @throws DocumentVerificationException Thrown in case the document is rejected.
+         */
+        void accept(String filename, long size, InputStream data) throws IOException, DocumentVerificationException;
+    }
+
     /**
      * Extract request data and return a singled document.
      * @param requestData ZIP archive with a single zipped file.
@@ -48,17 +136,12 @@ public class DataExtractionService {
      * @throws DocumentVerificationException Thrown in case input data is invalid.
      */
     public Document extractDocument(byte[] requestData) throws DocumentVerificationException {
-        if (requestData == null) {
-            logger.warn("Missing request data");
-            throw new DocumentVerificationException("Invalid data received");
-        }
-        final List<Document> extractedDocuments = decompress(requestData);
+        final List<Document> extractedDocuments = extractDocuments(requestData);
         if (extractedDocuments.size() != 1) {
             // Exactly 1 document is expected to be present in the archive
             logger.warn("Input data does not contain a single document");
             throw new DocumentVerificationException("Invalid data received");
         }
-        logger.info("Extracted document {} from request data", extractedDocuments);
         return extractedDocuments.get(0);
     }
 
@@ -69,49 +152,205 @@ public class DataExtractionService {
      * @throws DocumentVerificationException Thrown in case input data is invalid.
      */
     public List<Document> extractDocuments(byte[] requestData) throws DocumentVerificationException {
-        if (requestData == null) {
-            logger.warn("Missing request data");
-            throw new DocumentVerificationException("Invalid data received");
-        }
-        final List<Document> extractedDocuments = decompress(requestData);
+        final List<Document> extractedDocuments = new ArrayList<>();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        extractDocuments(requestData, (filename, size, data) -> {
+            final Document document = new Document();
+            document.setFilename(filename);
+            document.setData(readData(data, size, buffer));
+            extractedDocuments.add(document);
+        });
         logger.info("Extracted documents {} from request data", extractedDocuments);
         return extractedDocuments;
     }
 
     /**
-     * Decompress an archive with documents.
-     * @param inputData Compressed input data.
-     * @return Extracted documents.
-     * @throws DocumentVerificationException Thrown in case input data is invalid.
+     * Extract request data and hand the documents one by one to the given consumer, only a single document is inflated at a time.
+     * @param requestData ZIP archive with one or more documents.
+     * @param consumer Consumer of the extracted documents.
+     * @return Count of extracted documents.
+     * @throws DocumentExtractionLimitException Thrown in case input data exceed the extraction limits.
+     * @throws DocumentVerificationException Thrown in case input data is invalid or the consumer rejects a document.
      */
-    private List<Document> decompress(byte[] inputData) throws DocumentVerificationException {
-        final List<Document> extractedDocuments = new ArrayList<>();
-        try {
-            final ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(inputData));
+    public int extractDocuments(final byte[] requestData, final DocumentConsumer consumer) throws DocumentVerificationException {
+        if (requestData == null) {
+            logger.warn("Missing request data");
+            throw new DocumentVerificationException("Invalid data received");
+        }
+        archiveSizeSummary.record(requestData.length);
+        final long start = System.nanoTime();
+        final ByteArrayInputStream compressedStream = new ByteArrayInputStream(requestData);
+        int entries = 0;
+        int count = 0;
+        boolean success = false;
+        try (ZipInputStream zis = new ZipInputStream(compressedStream)) {
+            final BoundedInputStream entryStream = new BoundedInputStream(zis, () -> requestData.length - compressedStream.available(),
+                    identityVerificationConfig.getDocumentExtractionMaxEntrySize().toBytes(),
+                    identityVerificationConfig.getDocumentExtractionMaxTotalSize().toBytes(),
+                    identityVerificationConfig.getDocumentExtractionMaxCompressionRatio());
+            final int maxEntries = identityVerificationConfig.getDocumentExtractionMaxEntries();
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
+                if (++entries > maxEntries) {
+                    throw new ExtractionLimitException(Limit.ENTRIES, "Count of entries exceeds the limit " + maxEntries);
+                }
                 if (entry.isDirectory()) {
                     // Directories are skipped, data is extracted from regular files
                     continue;
                 }
-                final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                final byte[] buffer = new byte[1024];
-                int read;
-                while ((read = zis.read(buffer)) != -1) {
-                    baos.write(buffer, 0, read);
-                }
-                final Document document = new Document();
-                document.setFilename(entry.getName());
-                document.setData(baos.toByteArray());
-                extractedDocuments.add(document);
+                entryStream.nextEntry(entry);
+                consumer.accept(entry.getName(), entry.getSize(), entryStream);
+                count++;
             }
-            zis.closeEntry();
-            zis.close();
+            entriesSummary.record(entries);
+            uncompressedSizeSummary.record(entryStream.totalSize);
+            success = true;
+        } catch (ExtractionLimitException ex) {
+            rejectedCounters.get(ex.limit).increment();
+            logger.warn("Rejected request data: {}", ex.getMessage());
+            throw new DocumentExtractionLimitException(ex.getMessage());
         } catch (IOException ex) {
             logger.warn(ex.getMessage(), ex);
             throw new DocumentVerificationException("Invalid data received");
+        } finally {
+            (success ? successTimer : failureTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return count;
+    }
+
+    /**
+     * Read the whole document data. The array is allocated at once for the declared size,
+     * otherwise the data are buffered and copied once.
+     * @param data Document data.
+     * @param size Declared size of the document, {@code -1} if unknown.
+     * @param buffer Reusable read buffer.
+     * @return Document data.
+     * @throws IOException Thrown in case the data cannot be read or do not match the declared size.
+     */
+    private static byte[] readData(final InputStream data, final long size, final byte[] buffer) throws IOException {
+        if (size >= 0) {
+            final byte[] result = new byte[Math.toIntExact(size)];
+            if (data.readNBytes(result, 0, result.length) != result.length || data.read() != -1) {
+                throw new ZipException("Document size does not match the declared size " + size);
+            }
+            return result;
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(buffer.length);
+        int read;
+        while ((read = data.read(buffer)) != -1) {
+            baos.write(buffer, 0, read);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Extraction limits.
+     */
+    private enum Limit {
+        ENTRIES,
+        ENTRY_SIZE,
+        TOTAL_SIZE,
+        COMPRESSION_RATIO
+    }
+
+    /**
+     * Stream of the current archive entry checking the uncompressed size and the compression ratio while inflating.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private final LongSupplier compressedPosition;
+
+        private final long maxEntrySize;
+
+        private final long maxTotalSize;
+
+        private final long maxCompressionRatio;
+
+        private String entryName;
+
+        private long entryCompressedStart;
+
+        private long entrySize;
+
+        private long totalSize;
+
+        BoundedInputStream(final InputStream in, final LongSupplier compressedPosition, final long maxEntrySize, final long maxTotalSize, final long maxCompressionRatio) {
+            super(in);
+            this.compressedPosition = compressedPosition;
+            this.maxEntrySize = maxEntrySize;
+            this.maxTotalSize = maxTotalSize;
+            this.maxCompressionRatio = maxCompressionRatio;
+        }
+
+        void nextEntry(final ZipEntry entry) throws ExtractionLimitException {
+            if (entry.getSize() > maxEntrySize) {
+                throw new ExtractionLimitException(Limit.ENTRY_SIZE, "Document " + entry.getName() + " declares size " + entry.getSize() + " exceeding the limit " + maxEntrySize);
+            }
+            entryName = entry.getName();
+            entryCompressedStart = compressedPosition.getAsLong();
+            entrySize = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = in.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the archive stream is closed by the extraction
+        }
+
+        private void count(final int read) throws ExtractionLimitException {
+            entrySize += read;
+            totalSize += read;
+            if (entrySize > maxEntrySize) {
+                throw new ExtractionLimitException(Limit.ENTRY_SIZE, "Size of document " + entryName + " exceeds the limit " + maxEntrySize);
+            }
+            if (totalSize > maxTotalSize) {
+                throw new ExtractionLimitException(Limit.TOTAL_SIZE, "Total size of documents exceeds the limit " + maxTotalSize);
+            }
+            if (entrySize > COMPRESSION_RATIO_GRACE_SIZE) {
+                // the compressed input is read ahead in chunks, so the ratio is rather underestimated
+                final long compressedSize = Math.max(compressedPosition.getAsLong() - entryCompressedStart, 1);
+                if (entrySize > compressedSize * maxCompressionRatio) {
+                    throw new ExtractionLimitException(Limit.COMPRESSION_RATIO, "Compression ratio of document " + entryName + " exceeds the limit " + maxCompressionRatio);
+                }
+            }
+        }
+    }
+
+    /**
+     * Thrown when the archive exceeds the extraction limits.
+     */
+    private static final class ExtractionLimitException extends IOException {
+
+        private static final long serialVersionUID = -3315906416520930713L;
+
+        private final Limit limit;
+
+        ExtractionLimitException(final Limit limit, final String message) {
+            super(message);
+            this.limit = limit;
         }
-        return extractedDocuments;
     }
 
 }
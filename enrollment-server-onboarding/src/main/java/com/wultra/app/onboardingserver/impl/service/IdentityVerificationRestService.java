@@ -38,7 +38,6 @@ import com.wultra.app.onboardingserver.impl.service.validation.OnboardingConsent
 import com.wultra.app.onboardingserver.impl.util.PowerAuthUtil;
 import com.wultra.app.onboardingserver.statemachine.consts.ExtendedStateVariable;
 import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
-import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
 import com.wultra.app.onboardingserver.statemachine.service.StateMachineService;
 import io.getlime.core.rest.model.base.request.ObjectRequest;
 import io.getlime.core.rest.model.base.response.ObjectResponse;
@@ -54,7 +53,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.ExtendedState;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -156,10 +155,10 @@ public class IdentityVerificationRestService {
         logger.debug("Onboarding process will be locked using PESSIMISTIC_WRITE lock, {}", processId);
         onboardingService.verifyProcessIdAndLock(ownerId, processId, OnboardingStatus.VERIFICATION_IN_PROGRESS);
 
-        StateMachine<OnboardingState, OnboardingEvent> stateMachine =
+        final ExtendedState extendedState =
                 stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.IDENTITY_VERIFICATION_INIT);
 
-        return createResponseEntity(stateMachine);
+        return createResponseEntity(extendedState);
     }
 
     /**
@@ -358,11 +357,11 @@ public class IdentityVerificationRestService {
         logger.debug("Onboarding process will be locked using PESSIMISTIC_WRITE lock, {}", processId);
         onboardingService.verifyProcessIdAndLock(ownerId, processId, OnboardingStatus.VERIFICATION_IN_PROGRESS);
 
-        StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.PRESENCE_CHECK_INIT);
+        final ExtendedState extendedState = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.PRESENCE_CHECK_INIT);
 
         @SuppressWarnings("unchecked")
         final Class<ObjectResponse<PresenceCheckInitResponse>> presenceCheckInitResponseClass = (Class<ObjectResponse<PresenceCheckInitResponse>>) new ObjectResponse<PresenceCheckInitResponse>().getClass();
-        return createResponseEntity(stateMachine, presenceCheckInitResponseClass);
+        return createResponseEntity(extendedState, presenceCheckInitResponseClass);
     }
 
     /**
@@ -391,8 +390,8 @@ public class IdentityVerificationRestService {
         logger.debug("Onboarding process will be locked using PESSIMISTIC_WRITE lock, {}", processId);
         onboardingService.verifyProcessIdAndLock(ownerId, processId, OnboardingStatus.VERIFICATION_IN_PROGRESS);
 
-        StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.PRESENCE_CHECK_SUBMITTED);
-        return createResponseEntity(stateMachine);
+        final ExtendedState extendedState = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.PRESENCE_CHECK_SUBMITTED);
+        return createResponseEntity(extendedState);
     }
 
     /**
@@ -418,8 +417,8 @@ public class IdentityVerificationRestService {
         logger.debug("Onboarding process will be locked using PESSIMISTIC_WRITE lock, {}", processId);
         onboardingService.verifyProcessIdAndLock(ownerId, processId, OnboardingStatus.VERIFICATION_IN_PROGRESS);
 
-        StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.OTP_VERIFICATION_RESEND);
-        return createResponseEntity(stateMachine);
+        final ExtendedState extendedState = stateMachineService.processStateMachineEvent(ownerId, processId, OnboardingEvent.OTP_VERIFICATION_RESEND);
+        return createResponseEntity(extendedState);
     }
 
     /**
@@ -625,13 +624,13 @@ public class IdentityVerificationRestService {
         return ownerId;
     }
 
-    private ResponseEntity<Response> createResponseEntity(final StateMachine<OnboardingState, OnboardingEvent> stateMachine) {
-        return createResponseEntity(stateMachine, Response.class);
+    private ResponseEntity<Response> createResponseEntity(final ExtendedState extendedState) {
+        return createResponseEntity(extendedState, Response.class);
     }
 
-    private <T> ResponseEntity<T> createResponseEntity(final StateMachine<OnboardingState, OnboardingEvent> stateMachine, Class<T> responseClass) {
-        final T response = stateMachine.getExtendedState().get(ExtendedStateVariable.RESPONSE_OBJECT, responseClass);
-        final HttpStatus status = stateMachine.getExtendedState().get(ExtendedStateVariable.RESPONSE_STATUS, HttpStatus.class);
+    private <T> ResponseEntity<T> createResponseEntity(final ExtendedState extendedState, Class<T> responseClass) {
+        final T response = extendedState.get(ExtendedStateVariable.RESPONSE_OBJECT, responseClass);
+        final HttpStatus status = extendedState.get(ExtendedStateVariable.RESPONSE_STATUS, HttpStatus.class);
         Assert.state(response != null && status != null, "Missing one of important values to generate response entity, response=%s, status=%s".formatted(response, status));
         return new ResponseEntity<>(response, status);
     }
@@ -26,7 +26,6 @@ import com.wultra.app.enrollmentserver.model.integration.DocumentsVerificationRe
 import com.wultra.app.enrollmentserver.model.integration.Image;
 import com.wultra.app.enrollmentserver.model.integration.OwnerId;
 import com.wultra.app.enrollmentserver.model.integration.VerificationSdkInfo;
-import com.wultra.app.onboardingserver.common.database.DocumentDataRepository;
 import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.entity.*;
@@ -40,20 +39,23 @@ import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
 import com.wultra.app.onboardingserver.errorhandling.DocumentSubmitException;
 import com.wultra.app.onboardingserver.api.errorhandling.DocumentVerificationException;
 import com.wultra.app.onboardingserver.errorhandling.IdentityVerificationNotFoundException;
+import com.wultra.app.onboardingserver.impl.service.document.DocumentDataService;
 import com.wultra.app.onboardingserver.impl.service.document.DocumentProcessingService;
 import com.wultra.app.onboardingserver.impl.service.verification.VerificationProcessingService;
 import com.wultra.app.onboardingserver.api.provider.DocumentVerificationProvider;
 import com.wultra.app.onboardingserver.statemachine.guard.document.RequiredDocumentTypesCheck;
+import com.wultra.app.onboardingserver.statemachine.service.OnboardingEventQueue;
+import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.util.Streamable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 import static com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase.DOCUMENT_UPLOAD;
 import static com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus.*;
@@ -69,7 +71,7 @@ import static com.wultra.app.enrollmentserver.model.enumeration.IdentityVerifica
 public class IdentityVerificationService {
 
     private final IdentityVerificationConfig identityVerificationConfig;
-    private final DocumentDataRepository documentDataRepository;
+    private final DocumentDataService documentDataService;
     private final DocumentVerificationRepository documentVerificationRepository;
     private final IdentityVerificationRepository identityVerificationRepository;
     private final DocumentProcessingService documentProcessingService;
@@ -84,10 +86,12 @@ public class IdentityVerificationService {
 
     private final AuditService auditService;
 
+    private final OnboardingEventQueue onboardingEventQueue;
+
     /**
      * Service constructor.
      * @param identityVerificationConfig Identity verification config.
-     * @param documentDataRepository Document data repository.
+     * @param documentDataService Document data service.
      * @param documentVerificationRepository Document verification repository.
      * @param identityVerificationRepository Identity verification repository.
      * @param documentProcessingService Document processing service.
@@ -97,11 +101,12 @@ public class IdentityVerificationService {
      * @param processService Common onboarding process service.
      * @param processLimitService Onboarding process limit service.
      * @param auditService Audit service.
+     * @param onboardingEventQueue Onboarding event queue.
      */
     @Autowired
     IdentityVerificationService(
             final IdentityVerificationConfig identityVerificationConfig,
-            final DocumentDataRepository documentDataRepository,
+            final DocumentDataService documentDataService,
             final DocumentVerificationRepository documentVerificationRepository,
             final IdentityVerificationRepository identityVerificationRepository,
             final DocumentProcessingService documentProcessingService,
@@ -112,10 +117,11 @@ public class IdentityVerificationService {
             final OnboardingProcessLimitService processLimitService,
             final RequiredDocumentTypesCheck requiredDocumentTypesCheck,
             final IdentityVerificationPrecompleteCheck identityVerificationPrecompleteCheck,
-            final AuditService auditService) {
+            final AuditService auditService,
+            final OnboardingEventQueue onboardingEventQueue) {
 
         this.identityVerificationConfig = identityVerificationConfig;
-        this.documentDataRepository = documentDataRepository;
+        this.documentDataService = documentDataService;
         this.documentVerificationRepository = documentVerificationRepository;
         this.identityVerificationRepository = identityVerificationRepository;
         this.documentProcessingService = documentProcessingService;
@@ -127,6 +133,7 @@ public class IdentityVerificationService {
         this.requiredDocumentTypesCheck = requiredDocumentTypesCheck;
         this.identityVerificationPrecompleteCheck = identityVerificationPrecompleteCheck;
         this.auditService = auditService;
+        this.onboardingEventQueue = onboardingEventQueue;
     }
 
     /**
@@ -173,12 +180,16 @@ public class IdentityVerificationService {
                                                            final IdentityVerificationStatus status,
                                                            final OwnerId ownerId) {
 
+        final boolean changed = identityVerification.getPhase() != phase || identityVerification.getStatus() != status;
         identityVerification.setPhase(phase);
         identityVerification.setStatus(status);
         identityVerification.setTimestampLastUpdated(ownerId.getTimestamp());
         final IdentityVerificationEntity savedIdentityVerification = identityVerificationRepository.save(identityVerification);
         logger.info("Switched to {}/{}; {}", phase, status, ownerId);
         auditService.audit(identityVerification, "Switched to {}/{}; user ID: {}", phase, status, ownerId.getUserId());
+        if (changed) {
+            onboardingEventQueue.enqueueNextState(savedIdentityVerification);
+        }
         return savedIdentityVerification;
     }
 
@@ -217,6 +228,9 @@ public class IdentityVerificationService {
         documentProcessingService.pairTwoSidedDocuments(docsVerifications);
 
         identityVerificationRepository.save(idVerification);
+        if (docsVerifications.stream().anyMatch(it -> it.getStatus() == DocumentStatus.VERIFICATION_PENDING)) {
+            onboardingEventQueue.enqueueDocumentsSubmitted(idVerification);
+        }
     }
 
     /**
@@ -270,17 +284,41 @@ public class IdentityVerificationService {
     }
 
     /**
-     * Checks verification result and evaluates the final state of the identity verification process
+     * Fetch verification results of documents in progress from the provider. Nothing is written, so the results may be fetched
+     * outside a transaction and applied by {@link #processVerificationResults(OwnerId, IdentityVerificationEntity, Map)} later.
      *
      * @param ownerId Owner identification.
      * @param idVerification Verification identity
+     * @return Verification results by verification ID.
      * @throws DocumentVerificationException Thrown when an error during verification check occurred.
-     * @throws OnboardingProcessException Thrown when onboarding process is invalid.
      * @throws RemoteCommunicationException In case of remote communication error.
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void checkVerificationResult(final OwnerId ownerId, final IdentityVerificationEntity idVerification)
-            throws DocumentVerificationException, OnboardingProcessException, RemoteCommunicationException {
+    public Map<String, DocumentsVerificationResult> fetchVerificationResults(final OwnerId ownerId, final IdentityVerificationEntity idVerification)
+            throws DocumentVerificationException, RemoteCommunicationException {
+        final Set<String> verificationIds = documentVerificationRepository.findAllDocumentVerifications(idVerification,
+                        Collections.singletonList(DocumentStatus.VERIFICATION_IN_PROGRESS)).stream()
+                .map(DocumentVerificationEntity::getVerificationId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        final Map<String, DocumentsVerificationResult> results = new HashMap<>();
+        for (String verificationId : verificationIds) {
+            results.put(verificationId, documentVerificationProvider.getVerificationResult(ownerId, verificationId));
+        }
+        return results;
+    }
+
+    /**
+     * Process verification results fetched from the provider and evaluate the final state of the identity verification process.
+     *
+     * @param ownerId Owner identification.
+     * @param idVerification Verification identity
+     * @param verificationResults Verification results by verification ID, see {@link #fetchVerificationResults(OwnerId, IdentityVerificationEntity)}.
+     * @throws OnboardingProcessException Thrown when onboarding process is invalid.
+     */
+    @Transactional
+    public void processVerificationResults(final OwnerId ownerId, final IdentityVerificationEntity idVerification,
+                                           final Map<String, DocumentsVerificationResult> verificationResults)
+            throws OnboardingProcessException {
         List<DocumentVerificationEntity> allDocVerifications =
                 documentVerificationRepository.findAllDocumentVerifications(idVerification,
                         Collections.singletonList(DocumentStatus.VERIFICATION_IN_PROGRESS));
@@ -292,7 +330,11 @@ public class IdentityVerificationService {
         }
 
         for (Map.Entry<String, List<DocumentVerificationEntity>> entry : verificationsById.entrySet()) {
-            DocumentsVerificationResult docVerificationResult = documentVerificationProvider.getVerificationResult(ownerId, entry.getKey());
+            final DocumentsVerificationResult docVerificationResult = verificationResults.get(entry.getKey());
+            if (docVerificationResult == null) {
+                logger.debug("No result fetched for verification ID: {}, {}", entry.getKey(), ownerId);
+                continue;
+            }
             auditService.auditDocumentVerificationProvider(idVerification, "Got verification result: {} for user: {}", docVerificationResult.getStatus(), ownerId.getUserId());
 
             processService.findProcessWithLock(idVerification.getProcessId());
@@ -506,7 +548,7 @@ public class IdentityVerificationService {
         }
 
         // Delete all large documents by activation ID
-        documentDataRepository.deleteAllByActivationId(ownerId.getActivationId());
+        documentDataService.deleteAllByActivationId(ownerId.getActivationId());
         // Set status of all not finished document verifications to failed
         documentVerificationRepository.failVerifications(ownerId.getActivationId(), ownerId.getTimestamp(), DocumentStatus.ALL_NOT_FINISHED);
         // Reset identity verification, the client is expected to call /api/identity/init for the next round of verification
@@ -554,12 +596,22 @@ public class IdentityVerificationService {
     }
 
     /**
-     * Return all identity verifications eligible for change to next state.
+     * Return a page of identity verifications eligible for change to next state, with a document submitted to the configured provider.
      *
+     * @param partitionSuffixes accepted last characters of the process ID, {@code null} to return identity verifications of all processes
+     * @param lastTimestampLastUpdated last update timestamp of the last row of the previous page
+     * @param lastId ID of the last row of the previous page
+     * @param timestampLastUpdatedTo only identity verifications updated not later than the given timestamp are returned
+     * @param limit maximum count of returned rows
      * @return identity verifications
+     * @see IdentityVerificationRepository#findIdentityVerificationsToChangeState(String, boolean, Collection, Date, String, Date, Limit)
      */
-    public Stream<IdentityVerificationEntity> streamAllIdentityVerificationsToChangeState() {
-        return identityVerificationRepository.streamAllIdentityVerificationsToChangeState();
+    public List<IdentityVerificationEntity> findIdentityVerificationsToChangeState(
+            @Nullable final Collection<String> partitionSuffixes, final Date lastTimestampLastUpdated, final String lastId, final Date timestampLastUpdatedTo, final int limit) {
+        final boolean partitioned = partitionSuffixes != null;
+        return identityVerificationRepository.findIdentityVerificationsToChangeState(
+                identityVerificationConfig.getDocumentVerificationProvider(), partitioned, partitioned ? partitionSuffixes : List.of(""),
+                lastTimestampLastUpdated, lastId, timestampLastUpdatedTo, Limit.of(limit));
     }
 
     private void moveToDocumentUpload(final OwnerId ownerId, final IdentityVerificationEntity idVerification, final IdentityVerificationStatus status) {
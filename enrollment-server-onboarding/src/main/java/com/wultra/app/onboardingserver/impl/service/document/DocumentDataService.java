@@ -0,0 +1,228 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import com.wultra.app.onboardingserver.common.database.DocumentDataRepository;
+import com.wultra.app.onboardingserver.common.database.entity.DocumentDataEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Service managing document data records and their payload.
+ * <p>
+ * The payload is kept in the database unless a {@link DocumentDataStore} is configured,
+ * see {@code enrollment-server-onboarding.document-data.store}.
+ * Records written before the store has been configured keep their payload in the database and remain readable.
+ * <p>
+ * A payload may be shared by several records and a record referencing it may not be committed yet,
+ * so only the payload written before the grace period and not referenced by any record is deleted,
+ * see {@code enrollment-server-onboarding.document-data.delete-grace-period}.
+ * The payload of rolled back uploads is left to {@link #deleteUnreferencedData()}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Service
+@Slf4j
+public class DocumentDataService {
+
+    private final DocumentDataRepository documentDataRepository;
+
+    /**
+     * Store of the payload outside the database, {@code null} to keep the payload in the database.
+     */
+    private final DocumentDataStore documentDataStore;
+
+    /**
+     * Period to keep the payload written recently, it must be longer than any transaction saving a record.
+     */
+    private final Duration deleteGracePeriod;
+
+    @Autowired
+    public DocumentDataService(
+            final DocumentDataRepository documentDataRepository,
+            final ObjectProvider<DocumentDataStore> documentDataStore,
+            @Value("${enrollment-server-onboarding.document-data.delete-grace-period:PT1H}") final Duration deleteGracePeriod) {
+        this(documentDataRepository, documentDataStore.getIfAvailable(), deleteGracePeriod);
+    }
+
+    DocumentDataService(final DocumentDataRepository documentDataRepository, final DocumentDataStore documentDataStore, final Duration deleteGracePeriod) {
+        this.documentDataRepository = documentDataRepository;
+        this.documentDataStore = documentDataStore;
+        this.deleteGracePeriod = deleteGracePeriod;
+    }
+
+    /**
+     * Save the given document data record with its payload.
+     * <p>
+     * The payload is streamed to the store if configured, otherwise it is read into memory.
+     * The stored payload is not deleted when the transaction is rolled back, a concurrent upload of the same data may reference it.
+     *
+     * @param documentData Document data record without the payload.
+     * @param data Payload, the stream is read to the end but not closed.
+     * @return Saved document data record.
+     * @throws IOException In case of an error reading or writing the payload.
+     */
+    public DocumentDataEntity save(final DocumentDataEntity documentData, final InputStream data) throws IOException {
+        if (documentDataStore == null) {
+            documentData.setData(data.readAllBytes());
+        } else {
+            documentData.setDataReference(documentDataStore.write(data));
+        }
+        return documentDataRepository.save(documentData);
+    }
+
+    /**
+     * Find the document data record, the payload is not read.
+     *
+     * @param id Document data ID.
+     * @return Document data record.
+     */
+    public Optional<DocumentDataEntity> findById(final String id) {
+        return documentDataRepository.findById(id);
+    }
+
+    /**
+     * Read the payload of the given document data record.
+     *
+     * @param documentData Document data record.
+     * @return Payload.
+     * @throws IOException In case of an error reading the payload.
+     */
+    public byte[] readData(final DocumentDataEntity documentData) throws IOException {
+        final String dataReference = documentData.getDataReference();
+        if (dataReference == null) {
+            return documentData.getData();
+        } else if (documentDataStore == null) {
+            throw new IOException("No document data store configured to read the data reference: " + dataReference);
+        }
+        return documentDataStore.read(dataReference);
+    }
+
+    /**
+     * Delete the given document data record and its payload.
+     *
+     * @param id Document data ID.
+     */
+    public void deleteById(final String id) {
+        final Instant releasedAt = Instant.now();
+        final List<String> dataReferences = documentDataRepository.findDataReferencesById(id);
+        documentDataRepository.deleteById(id);
+        release(dataReferences, releasedAt);
+    }
+
+    /**
+     * Delete all document data records of the given activation and their payload.
+     *
+     * @param activationId Activation ID.
+     */
+    public void deleteAllByActivationId(final String activationId) {
+        final Instant releasedAt = Instant.now();
+        final List<String> dataReferences = documentDataRepository.findDataReferencesByActivationId(activationId);
+        documentDataRepository.deleteAllByActivationId(activationId);
+        release(dataReferences, releasedAt);
+    }
+
+    /**
+     * Delete the document data records created before the given timestamp and their payload.
+     *
+     * @param dateCleanup Timestamp created must be before the given value.
+     * @return Count of deleted records.
+     */
+    public int cleanup(final Date dateCleanup) {
+        final Instant releasedAt = Instant.now();
+        final List<String> dataReferences = documentDataRepository.findDataReferencesToCleanup(dateCleanup);
+        final int count = documentDataRepository.cleanupDocumentData(dateCleanup);
+        release(dataReferences, releasedAt);
+        return count;
+    }
+
+    /**
+     * Delete the payload written before the grace period and not referenced by any record.
+     *
+     * @return Count of deleted payloads.
+     */
+    public int deleteUnreferencedData() {
+        if (documentDataStore == null) {
+            return 0;
+        }
+        final Instant writtenBefore = Instant.now().minus(deleteGracePeriod);
+        final List<String> dataReferences;
+        try (Stream<String> stream = documentDataStore.findWrittenBefore(writtenBefore)) {
+            dataReferences = stream.toList();
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Unable to list document data written before: {}", writtenBefore, e);
+            return 0;
+        }
+        return deleteUnreferenced(dataReferences, writtenBefore);
+    }
+
+    /**
+     * Delete the payload no longer referenced by any record once the deletion of the records is committed.
+     * The payload written again during the grace period is kept, it is left to {@link #deleteUnreferencedData()}.
+     */
+    private void release(final List<String> dataReferences, final Instant releasedAt) {
+        if (dataReferences.isEmpty() || documentDataStore == null) {
+            return;
+        }
+        final List<String> distinctReferences = dataReferences.stream().distinct().toList();
+        final Instant writtenBefore = releasedAt.minus(deleteGracePeriod);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteUnreferenced(distinctReferences, writtenBefore);
+                }
+            });
+        } else {
+            deleteUnreferenced(distinctReferences, writtenBefore);
+        }
+    }
+
+    private int deleteUnreferenced(final List<String> dataReferences, final Instant writtenBefore) {
+        int count = 0;
+        for (String dataReference : dataReferences) {
+            if (documentDataRepository.existsByDataReference(dataReference)) {
+                logger.debug("Document data: {} still referenced", dataReference);
+                continue;
+            }
+            try {
+                if (documentDataStore.delete(dataReference, writtenBefore)) {
+                    count++;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to delete document data: {}", dataReference, e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+/**
+ * Store of the document data kept outside the database. The database keeps only the reference to the stored data.
+ * <p>
+ * The data are content-addressed, the same data written twice share the reference.
+ * A record referencing the data may not be committed yet when they are deleted, so the data written recently must be kept,
+ * see {@link #delete(String, Instant)}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+public interface DocumentDataStore {
+
+    /**
+     * Write the given data.
+     *
+     * @param data Data to write, the stream is read to the end but not closed.
+     * @return Reference to the written data.
+     * @throws IOException In case of an error writing the data.
+     */
+    String write(InputStream data) throws IOException;
+
+    /**
+     * Read the data of the given reference.
+     *
+     * @param dataReference Data reference.
+     * @return Data.
+     * @throws IOException In case of an error reading the data, or if the data do not exist.
+     */
+    byte[] read(String dataReference) throws IOException;
+
+    /**
+     * Delete the data of the given reference unless they have been written again since the given instant.
+     *
+     * @param dataReference Data reference.
+     * @param writtenBefore Data written at or after the instant are kept, they may be referenced by a new record.
+     * @return {@code true} if the data have been deleted.
+     * @throws IOException In case of an error deleting the data.
+     */
+    boolean delete(String dataReference, Instant writtenBefore) throws IOException;
+
+    /**
+     * Return the references of the data last written before the given instant.
+     *
+     * @param writtenBefore Only data written before the instant are returned.
+     * @return Data references, the stream must be closed.
+     * @throws IOException In case of an error listing the data.
+     */
+    Stream<String> findWrittenBefore(Instant writtenBefore) throws IOException;
+}
@@ -23,6 +23,8 @@ import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificati
 import com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus;
 import com.wultra.app.enrollmentserver.model.integration.OwnerId;
 import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.impl.service.verification.VerificationCheckBackoff;
+import com.wultra.app.onboardingserver.statemachine.service.OnboardingEventQueue;
 import lombok.AllArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +52,19 @@ public class DocumentProcessingBatchService {
 
     private final IdentityVerificationConfig identityVerificationConfig;
 
+    private final OnboardingEventQueue onboardingEventQueue;
+
+    private final VerificationCheckBackoff verificationCheckBackoff;
+
     /**
-     * Checks in progress document submits on current provider status and data result
+     * Checks in progress document submits due to check on current provider status and data result.
+     * Documents still in progress are scheduled for the next check.
      */
     @Transactional
     public void checkInProgressDocumentSubmits() {
         AtomicInteger countFinished = new AtomicInteger(0);
-        try (Stream<DocumentResultEntity> stream = documentResultRepository.streamAllInProgressDocumentSubmits(identityVerificationConfig.getDocumentVerificationProvider())) {
+        try (Stream<DocumentResultEntity> stream = documentResultRepository.streamAllInProgressDocumentSubmits(
+                identityVerificationConfig.getDocumentVerificationProvider(), verificationCheckBackoff.now())) {
             stream.forEach(docResult -> {
                 DocumentVerificationEntity docVerification = docResult.getDocumentVerification();
                 final OwnerId ownerId = new OwnerId();
@@ -69,10 +77,15 @@ public class DocumentProcessingBatchService {
                     logger.error("Unable to check submit status of {} at provider, {}", docResult, ownerId, e);
                 }
 
-                if (!DocumentStatus.UPLOAD_IN_PROGRESS.equals(docVerification.getStatus())) {
+                if (DocumentStatus.UPLOAD_IN_PROGRESS.equals(docVerification.getStatus())) {
+                    verificationCheckBackoff.scheduleNextCheck(docVerification);
+                } else {
                     logger.debug("Synced {} status to {} with the provider, {}", docVerification, docVerification.getStatus(), ownerId);
                     countFinished.incrementAndGet();
                 }
+                if (DocumentStatus.VERIFICATION_PENDING.equals(docVerification.getStatus())) {
+                    onboardingEventQueue.enqueueDocumentsSubmitted(docVerification.getIdentityVerification());
+                }
             });
         }
         if (countFinished.get() > 0) {
@@ -18,11 +18,9 @@
 package com.wultra.app.onboardingserver.impl.service.document;
 
 import com.wultra.app.enrollmentserver.api.model.onboarding.request.DocumentSubmitRequest;
-import com.wultra.app.enrollmentserver.model.Document;
 import com.wultra.app.enrollmentserver.model.DocumentMetadata;
 import com.wultra.app.enrollmentserver.model.enumeration.*;
 import com.wultra.app.enrollmentserver.model.integration.*;
-import com.wultra.app.onboardingserver.common.database.DocumentDataRepository;
 import com.wultra.app.onboardingserver.common.database.DocumentResultRepository;
 import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.entity.*;
@@ -38,12 +36,21 @@ import com.wultra.app.onboardingserver.api.provider.DocumentVerificationProvider
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static java.util.stream.Collectors.groupingBy;
 
@@ -53,13 +60,13 @@ import static java.util.stream.Collectors.groupingBy;
  * @author Lukas Lukovsky, lukas.lukovsky@wultra.com
  */
 @Service
-public class DocumentProcessingService {
+public class DocumentProcessingService implements DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentProcessingService.class);
 
     private final IdentityVerificationConfig identityVerificationConfig;
 
-    private final DocumentDataRepository documentDataRepository;
+    private final DocumentDataService documentDataService;
 
     private final DocumentVerificationRepository documentVerificationRepository;
 
@@ -73,40 +80,69 @@ public class DocumentProcessingService {
 
     private final CommonOnboardingService commonOnboardingService;
 
+    /**
+     * Executor submitting documents of different types to the provider, its thread count limits the concurrency of the provider calls.
+     */
+    private final Executor providerExecutor;
+
     /**
      * Service constructor.
      * @param identityVerificationConfig Identity verification configuration.
-     * @param documentDataRepository Document data repository.
+     * @param documentDataService Document data service.
      * @param documentVerificationRepository Document verification repository.
      * @param documentResultRepository Document verification result repository.
      * @param dataExtractionService Data extraction service.
      * @param documentVerificationProvider Document verification provider.
      * @param auditService Audit service.
      * @param commonOnboardingService Onboarding process service (common).
+     * @param virtualThreads Whether to call the provider on virtual threads.
      */
     @Autowired
     public DocumentProcessingService(
             final IdentityVerificationConfig identityVerificationConfig,
-            final DocumentDataRepository documentDataRepository,
+            final DocumentDataService documentDataService,
             final DocumentVerificationRepository documentVerificationRepository,
             final DocumentResultRepository documentResultRepository,
             final DataExtractionService dataExtractionService,
             final DocumentVerificationProvider documentVerificationProvider,
             final AuditService auditService,
-            final CommonOnboardingService commonOnboardingService) {
+            final CommonOnboardingService commonOnboardingService,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
+
+        this(identityVerificationConfig, documentDataService, documentVerificationRepository, documentResultRepository, dataExtractionService,
+                documentVerificationProvider, auditService, commonOnboardingService, createProviderExecutor(identityVerificationConfig, virtualThreads));
+    }
+
+    DocumentProcessingService(
+            final IdentityVerificationConfig identityVerificationConfig,
+            final DocumentDataService documentDataService,
+            final DocumentVerificationRepository documentVerificationRepository,
+            final DocumentResultRepository documentResultRepository,
+            final DataExtractionService dataExtractionService,
+            final DocumentVerificationProvider documentVerificationProvider,
+            final AuditService auditService,
+            final CommonOnboardingService commonOnboardingService,
+            final Executor providerExecutor) {
 
         this.identityVerificationConfig = identityVerificationConfig;
-        this.documentDataRepository = documentDataRepository;
+        this.documentDataService = documentDataService;
         this.documentVerificationRepository = documentVerificationRepository;
         this.documentResultRepository = documentResultRepository;
         this.dataExtractionService = dataExtractionService;
         this.documentVerificationProvider = documentVerificationProvider;
         this.auditService = auditService;
         this.commonOnboardingService = commonOnboardingService;
+        this.providerExecutor = providerExecutor;
     }
 
     /**
      * Submit identity-related documents for verification.
+     * <p>
+     * Documents of different types are independent, they are submitted to the provider concurrently.
+     * The results are processed in the original order once all the provider calls finish.
+     * <p>
+     * The documents are extracted from the request data one by one into temporary files, the pages of a document
+     * are read into memory only for the provider call submitting them.
      * @param idVerification Identity verification entity.
      * @param request Document submit request.
      * @param ownerId Owner identification.
@@ -119,29 +155,58 @@ public class DocumentProcessingService {
             OwnerId ownerId) throws DocumentSubmitException {
 
         checkDocumentResubmit(ownerId, request);
-        final List<Document> documents = getDocuments(ownerId, request);
-        final var documentsByType = request.getDocuments().stream()
-                .collect(groupingBy(DocumentSubmitRequest.DocumentMetadata::getType));
+        try (ExtractedDocuments documents = extractDocuments(ownerId, request)) {
+            final var documentsByType = request.getDocuments().stream()
+                    .collect(groupingBy(DocumentSubmitRequest.DocumentMetadata::getType));
 
-        final List<DocumentVerificationEntity> docVerifications = new ArrayList<>();
-        for (var docMetadataList : documentsByType.values()) {
-            docVerifications.addAll(submitDocument(docMetadataList, documents, idVerification, ownerId));
+            final List<DocumentSubmit> documentSubmits = new ArrayList<>();
+            for (var docMetadataList : documentsByType.values()) {
+                documentSubmits.add(prepareDocumentSubmit(docMetadataList, documents, idVerification, ownerId));
+            }
+
+            // the last pending document type is submitted by the calling thread, the other ones by the executor if it has a free thread
+            final List<CompletableFuture<ProviderResponse>> responses = new ArrayList<>();
+            int lastPending = -1;
+            for (int i = 0; i < documentSubmits.size(); i++) {
+                if (documentSubmits.get(i).isPending()) {
+                    lastPending = i;
+                }
+            }
+            for (int i = 0; i < documentSubmits.size(); i++) {
+                final DocumentSubmit documentSubmit = documentSubmits.get(i);
+                if (!documentSubmit.isPending()) {
+                    responses.add(CompletableFuture.completedFuture(null));
+                } else if (i == lastPending) {
+                    responses.add(CompletableFuture.completedFuture(callProvider(documentSubmit.submittedDocuments(), documents, ownerId)));
+                } else {
+                    responses.add(CompletableFuture.supplyAsync(() -> callProvider(documentSubmit.submittedDocuments(), documents, ownerId), providerExecutor));
+                }
+            }
+
+            final List<DocumentVerificationEntity> docVerifications = new ArrayList<>();
+            for (int i = 0; i < documentSubmits.size(); i++) {
+                final DocumentSubmit documentSubmit = documentSubmits.get(i);
+                if (documentSubmit.isPending()) {
+                    completeDocumentSubmit(documentSubmit, join(responses.get(i)), idVerification, ownerId);
+                }
+                docVerifications.addAll(documentSubmit.docVerifications().values());
+            }
+            return docVerifications;
         }
-        return docVerifications;
     }
 
     /**
-     * Submit pages of a document to document verify provider.
+     * Prepare pages of a document to be submitted to document verify provider.
      * @param pagesMetadata Pages metadata from request.
-     * @param pagesData Pages data.
+     * @param pagesData Pages data extracted from the request.
      * @param idVerification Identity verification entity.
      * @param ownerId Owner identification.
-     * @return
+     * @return Prepared document submit, not pending if the document failed already.
      */
-    private List<DocumentVerificationEntity> submitDocument(final List<DocumentSubmitRequest.DocumentMetadata> pagesMetadata,
-                                                            final List<Document> pagesData,
-                                                            final IdentityVerificationEntity idVerification,
-                                                            final OwnerId ownerId) {
+    private DocumentSubmit prepareDocumentSubmit(final List<DocumentSubmitRequest.DocumentMetadata> pagesMetadata,
+                                                 final ExtractedDocuments pagesData,
+                                                 final IdentityVerificationEntity idVerification,
+                                                 final OwnerId ownerId) {
 
         // Maps are used to associate DocumentsSubmitResult - DocumentVerificationEntities - DocumentMetadata
         final Map<String, DocumentVerificationEntity> docVerifications = new HashMap<>();
@@ -163,12 +228,28 @@ public class DocumentProcessingService {
                 docVerification.setErrorDetail(ErrorDetail.DOCUMENT_VERIFICATION_FAILED);
                 docVerification.setErrorOrigin(ErrorOrigin.DOCUMENT_VERIFICATION);
                 auditService.audit(docVerification, "Document verification failed for user: {}", ownerId.getUserId());
-                return docVerifications.values().stream().toList();
+                return new DocumentSubmit(docVerifications, docMetadataMap, null);
             }
         }
+        return new DocumentSubmit(docVerifications, docMetadataMap, submittedDocuments);
+    }
 
+    /**
+     * Process the provider response of the submitted pages of a document.
+     * @param documentSubmit Document submit.
+     * @param response Response of the provider.
+     * @param idVerification Identity verification entity.
+     * @param ownerId Owner identification.
+     */
+    private void completeDocumentSubmit(final DocumentSubmit documentSubmit,
+                                        final ProviderResponse response,
+                                        final IdentityVerificationEntity idVerification,
+                                        final OwnerId ownerId) {
+
+        final Map<String, DocumentVerificationEntity> docVerifications = documentSubmit.docVerifications();
+        final Map<String, DocumentSubmitRequest.DocumentMetadata> docMetadataMap = documentSubmit.docMetadataMap();
         final List<DocumentVerificationEntity> docVerificationsList = docVerifications.values().stream().toList();
-        final DocumentsSubmitResult results = submitDocumentToProvider(submittedDocuments, docVerificationsList, idVerification, ownerId);
+        final DocumentsSubmitResult results = processProviderResponse(documentSubmit.submittedDocuments(), docVerificationsList, idVerification, ownerId, response);
         processSubmitResults(results, docVerifications, ownerId);
 
         docVerificationsList.stream()
@@ -176,11 +257,9 @@ public class DocumentProcessingService {
                 .map(doc -> docMetadataMap.get(doc.getId()).getUploadId())
                 .filter(StringUtils::isNotBlank)
                 .forEach(fileUploadId -> {
-                    documentDataRepository.deleteById(fileUploadId);
+                    documentDataService.deleteById(fileUploadId);
                     logger.info("Deleted stored document data with id={}, {}", fileUploadId, ownerId);
                 });
-
-        return docVerificationsList;
     }
 
     /**
@@ -304,25 +383,52 @@ public class DocumentProcessingService {
 
     /**
      * Pass all pages of a document to document verification provider at a single call.
+     * No entities are touched, the call may run outside the calling thread.
+     * The pages extracted from the request are read right before the call and released after it.
      * @param submittedDocs Document pages to submit.
-     * @param docVerifications Entities associated with the document pages to submit.
+     * @param extractedDocuments Documents extracted from the request.
+     * @param ownerId Owner identification.
+     * @return Response of the provider.
+     */
+    private ProviderResponse callProvider(final List<SubmittedDocument> submittedDocs, final ExtractedDocuments extractedDocuments, final OwnerId ownerId) {
+        try {
+            for (SubmittedDocument submittedDoc : submittedDocs) {
+                final Image photo = submittedDoc.getPhoto();
+                if (photo.getData() == null) {
+                    photo.setData(extractedDocuments.read(photo.getFilename()));
+                }
+            }
+            return new ProviderResponse(documentVerificationProvider.submitDocuments(ownerId, submittedDocs), null);
+        } catch (DocumentVerificationException | RemoteCommunicationException | IOException e) {
+            return new ProviderResponse(null, e);
+        } finally {
+            submittedDocs.forEach(submittedDoc -> submittedDoc.getPhoto().setData(null));
+        }
+    }
+
+    /**
+     * Convert the response of document verification provider to the document submit result.
+     * @param submittedDocs Submitted document pages.
+     * @param docVerifications Entities associated with the submitted document pages.
      * @param identityVerification Identity verification entity.
      * @param ownerId Owner identification.
+     * @param response Response of the provider.
      * @return document submit result
      */
-    private DocumentsSubmitResult submitDocumentToProvider(final List<SubmittedDocument> submittedDocs,
-                                                           final List<DocumentVerificationEntity> docVerifications,
-                                                           final IdentityVerificationEntity identityVerification,
-                                                           final OwnerId ownerId) {
+    private DocumentsSubmitResult processProviderResponse(final List<SubmittedDocument> submittedDocs,
+                                                          final List<DocumentVerificationEntity> docVerifications,
+                                                          final IdentityVerificationEntity identityVerification,
+                                                          final OwnerId ownerId,
+                                                          final ProviderResponse response) {
 
         final List<String> docVerificationIds = docVerifications.stream().map(DocumentVerificationEntity::getId).toList();
 
-        try {
-            final DocumentsSubmitResult results = documentVerificationProvider.submitDocuments(ownerId, submittedDocs);
+        if (response.error() == null) {
             logger.debug("Documents {} submitted to provider, {}", docVerifications, ownerId);
             auditService.auditDocumentVerificationProvider(identityVerification, "Submit documents for user: {}, document IDs: {}", ownerId.getUserId(), docVerificationIds);
-            return results;
-        } catch (DocumentVerificationException | RemoteCommunicationException e) {
+            return response.results();
+        } else {
+            final Exception e = response.error();
             logger.warn("Document verification ID: {}, failed: {}", docVerificationIds, e.getMessage());
             logger.debug("Document verification ID: {}, failed", docVerificationIds, e);
             final DocumentsSubmitResult results = new DocumentsSubmitResult();
@@ -369,11 +475,24 @@ public class DocumentProcessingService {
      * @return Persisted document metadata of the uploaded document.
      * @throws DocumentVerificationException Thrown when document is invalid.
      */
-    @Transactional
+    @Transactional(rollbackFor = DocumentVerificationException.class)
     public DocumentMetadata uploadDocument(IdentityVerificationEntity idVerification, byte[] requestData, OwnerId ownerId) throws DocumentVerificationException {
         // TODO consider limiting the amount (count, space) of currently uploaded documents per ownerId
-        Document document = dataExtractionService.extractDocument(requestData);
-        return persistDocumentData(idVerification, ownerId, document);
+        final List<DocumentMetadata> uploadedDocuments = new ArrayList<>(1);
+        dataExtractionService.extractDocuments(requestData, (filename, size, data) -> {
+            if (!uploadedDocuments.isEmpty()) {
+                // Exactly 1 document is expected to be present in the archive, the transaction is rolled back
+                logger.warn("Input data does not contain a single document, {}", ownerId);
+                throw new DocumentVerificationException("Invalid data received");
+            }
+            uploadedDocuments.add(persistDocumentData(idVerification, ownerId, filename, data));
+        });
+        if (uploadedDocuments.size() != 1) {
+            logger.warn("Input data does not contain a single document, {}", ownerId);
+            throw new DocumentVerificationException("Invalid data received");
+        }
+        logger.info("Uploaded document {}, {}", uploadedDocuments.get(0), ownerId);
+        return uploadedDocuments.get(0);
     }
 
     /**
@@ -401,19 +520,18 @@ public class DocumentProcessingService {
      * Persist a document into database.
      * @param idVerification Identity verification entity.
      * @param ownerId Owner identification
-     * @param document Document to be persisted.
+     * @param filename Filename of the document.
+     * @param data Data of the document.
      * @return Persisted document metadata.
+     * @throws IOException Thrown when document data cannot be read or stored.
      */
-    private DocumentMetadata persistDocumentData(IdentityVerificationEntity idVerification, OwnerId ownerId, Document document) {
+    private DocumentMetadata persistDocumentData(IdentityVerificationEntity idVerification, OwnerId ownerId, String filename, InputStream data) throws IOException {
         DocumentDataEntity entity = new DocumentDataEntity();
         entity.setActivationId(ownerId.getActivationId());
         entity.setIdentityVerification(idVerification);
-        entity.setFilename(document.getFilename());
-        entity.setData(document.getData());
+        entity.setFilename(filename);
         entity.setTimestampCreated(ownerId.getTimestamp());
-        entity = documentDataRepository.save(entity);
-
-        document.setId(entity.getId());
+        entity = documentDataService.save(entity, data);
 
         // Return document metadata only
         DocumentMetadata persistedDocument = new DocumentMetadata();
@@ -455,7 +573,7 @@ public class DocumentProcessingService {
     private SubmittedDocument createSubmittedDocument(
             OwnerId ownerId,
             DocumentSubmitRequest.DocumentMetadata docMetadata,
-            List<Document> docs,
+            ExtractedDocuments docs,
             DocumentVerificationEntity docVerification) throws DocumentSubmitException {
         final Image photo = Image.builder()
                 .filename(docMetadata.getFilename())
@@ -468,38 +586,41 @@ public class DocumentProcessingService {
         submittedDoc.setType(docMetadata.getType());
 
         if (docMetadata.getUploadId() == null) {
-            final Document document = docs.stream()
-                    .filter(doc -> doc.getFilename().equals(docMetadata.getFilename()))
-                    .findFirst()
-                    .orElseThrow(() ->
-                            new DocumentSubmitException(String.format("Missing %s in data, %s", docMetadata, ownerId)));
-            photo.setData(document.getData());
+            // the data are read right before the provider call
+            if (!docs.contains(docMetadata.getFilename())) {
+                throw new DocumentSubmitException(String.format("Missing %s in data, %s", docMetadata, ownerId));
+            }
         } else {
-            final DocumentDataEntity documentData = documentDataRepository.findById(docMetadata.getUploadId())
+            final DocumentDataEntity documentData = documentDataService.findById(docMetadata.getUploadId())
                     .orElseThrow(() ->
                             new DocumentSubmitException(String.format("Missing %s in data, %s", docMetadata, ownerId)));
             if (!ownerId.getActivationId().equals(documentData.getActivationId())) {
                 throw new DocumentSubmitException(
                         String.format("The referenced document data uploadId=%s are from different activation, %s", docMetadata, ownerId));
             }
-            photo.setData(documentData.getData());
+            try {
+                photo.setData(documentDataService.readData(documentData));
+            } catch (IOException e) {
+                logger.warn("Unable to read document data uploadId={}, {}", docMetadata.getUploadId(), ownerId, e);
+                throw new DocumentSubmitException(String.format("Unable to read %s data, %s", docMetadata, ownerId));
+            }
         }
         return submittedDoc;
     }
 
-    private List<Document> getDocuments(OwnerId ownerId, DocumentSubmitRequest request) {
-        List<Document> documents;
+    private ExtractedDocuments extractDocuments(OwnerId ownerId, DocumentSubmitRequest request) {
+        final ExtractedDocuments documents = new ExtractedDocuments();
         if (request.getData() == null) {
-            documents = Collections.emptyList();
-        } else {
-            try {
-                documents = dataExtractionService.extractDocuments(request.getData());
-            } catch (DocumentVerificationException e) {
-                logger.error("Unable to extract documents from {}, {}", request, ownerId);
-                documents = Collections.emptyList();
-            }
+            return documents;
+        }
+        try {
+            dataExtractionService.extractDocuments(request.getData(), (filename, size, data) -> documents.add(filename, data));
+            return documents;
+        } catch (DocumentVerificationException e) {
+            logger.error("Unable to extract documents from {}, {}", request, ownerId);
+            documents.close();
+            return new ExtractedDocuments();
         }
-        return documents;
     }
 
     private void processDocsSubmitResults(OwnerId ownerId, DocumentVerificationEntity docVerification,
@@ -543,4 +664,63 @@ public class DocumentProcessingService {
         }
     }
 
+    private static ProviderResponse join(final CompletableFuture<ProviderResponse> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof final RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Create the executor of the provider calls. The executor has no queue, when all its threads are busy, the provider
+     * is called by the calling thread. So a submit never waits behind submits of other users while holding its transaction.
+     */
+    private static Executor createProviderExecutor(final IdentityVerificationConfig config, final boolean virtualThreads) {
+        final int concurrency = config.getDocumentSubmitProviderConcurrency();
+        logger.info("Document submit provider concurrency: {}", concurrency);
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(0);
+        executor.setAllowCoreThreadTimeOut(true);
+        // unlike CallerRunsPolicy, the task is run also after shutdown, so the submit never waits for a discarded task
+        executor.setRejectedExecutionHandler((runnable, threadPoolExecutor) -> runnable.run());
+        executor.setThreadNamePrefix("document-submit-provider-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (providerExecutor instanceof final ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+            threadPoolTaskExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Pages of a document prepared to be submitted to the provider.
+     * @param docVerifications Document verifications by ID.
+     * @param docMetadataMap Document metadata by document verification ID.
+     * @param submittedDocuments Pages to submit, {@code null} if the document failed already.
+     */
+    private record DocumentSubmit(Map<String, DocumentVerificationEntity> docVerifications,
+                                  Map<String, DocumentSubmitRequest.DocumentMetadata> docMetadataMap,
+                                  List<SubmittedDocument> submittedDocuments) {
+
+        boolean isPending() {
+            return submittedDocuments != null;
+        }
+    }
+
+    /**
+     * Response of the provider, either the results or the error.
+     */
+    private record ProviderResponse(DocumentsSubmitResult results, Exception error) {
+    }
+
 }
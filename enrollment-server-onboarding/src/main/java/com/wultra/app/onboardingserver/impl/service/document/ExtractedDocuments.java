@@ -0,0 +1,99 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Documents extracted from a submit request, staged in temporary files.
+ * <p>
+ * The archive entries are written to the files one by one while inflating, the data of a document are read into memory
+ * only right before the document is passed to the provider. The files are deleted when closed.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Slf4j
+final class ExtractedDocuments implements Closeable {
+
+    private final Map<String, Path> files = new ConcurrentHashMap<>();
+
+    /**
+     * Stage the given document. Only the first document of the given filename is kept, the same as the lookup of the list of documents did.
+     *
+     * @param filename Filename of the document.
+     * @param data Data of the document, the stream is read to the end but not closed.
+     * @throws IOException In case of an error reading or writing the data.
+     */
+    void add(final String filename, final InputStream data) throws IOException {
+        if (files.containsKey(filename)) {
+            logger.debug("Duplicate document: {}, skipping", filename);
+            data.transferTo(OutputStream.nullOutputStream());
+            return;
+        }
+        final Path file = Files.createTempFile("document-submit-", ".tmp");
+        files.put(filename, file);
+        Files.copy(data, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Return whether the document of the given filename has been extracted.
+     *
+     * @param filename Filename of the document.
+     * @return {@code true} if the document has been extracted.
+     */
+    boolean contains(final String filename) {
+        return files.containsKey(filename);
+    }
+
+    /**
+     * Read the data of the given document.
+     *
+     * @param filename Filename of the document.
+     * @return Data of the document.
+     * @throws IOException In case of an error reading the data, or if the document has not been extracted.
+     */
+    byte[] read(final String filename) throws IOException {
+        final Path file = files.get(filename);
+        if (file == null) {
+            throw new IOException("Missing extracted document: " + filename);
+        }
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public void close() {
+        files.values().forEach(file -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Unable to delete extracted document: {}", file, e);
+            }
+        });
+        files.clear();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Document data store in the local filesystem.
+ * <p>
+ * The data are written to files named by their SHA-256 digest, spread to subdirectories by the digest prefix.
+ * A file is written to a temporary file first and moved to its final name once complete,
+ * so a reader never sees a partially written file.
+ * Writing the same data again replaces the file, which marks it as written recently.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@ConditionalOnProperty(value = "enrollment-server-onboarding.document-data.store", havingValue = "filesystem")
+@Slf4j
+public class FilesystemDocumentDataStore implements DocumentDataStore {
+
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+
+    @Autowired
+    public FilesystemDocumentDataStore(@Value("${enrollment-server-onboarding.document-data.filesystem.path}") final Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+        logger.info("Document data stored in filesystem: {}", root.toAbsolutePath());
+    }
+
+    @Override
+    public String write(final InputStream data) throws IOException {
+        final Path tempFile = Files.createTempFile(root, "write-", ".tmp");
+        try {
+            final MessageDigest digest = createDigest();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                data.transferTo(out);
+            }
+
+            final String dataReference = HexFormat.of().formatHex(digest.digest());
+            final Path file = resolve(dataReference);
+            Files.createDirectories(file.getParent());
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // the same data already stored, mark them as written again not to be deleted by a concurrent release
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            }
+            logger.debug("Written document data: {}", dataReference);
+            return dataReference;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public byte[] read(final String dataReference) throws IOException {
+        return Files.readAllBytes(resolve(dataReference));
+    }
+
+    @Override
+    public boolean delete(final String dataReference, final Instant writtenBefore) throws IOException {
+        final Path file = resolve(dataReference);
+        final Path deletedFile = root.resolve("delete-" + UUID.randomUUID() + ".tmp");
+        try {
+            // move the file aside first, a concurrent write then stores the data anew instead of reusing the file being deleted
+            Files.move(file, deletedFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            logger.debug("Document data: {} already deleted", dataReference);
+            return false;
+        }
+        if (!Files.getLastModifiedTime(deletedFile).toInstant().isBefore(writtenBefore)) {
+            logger.debug("Document data: {} written again, keeping them", dataReference);
+            try {
+                Files.move(deletedFile, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // the same data stored anew meanwhile
+                Files.delete(deletedFile);
+            }
+            return false;
+        }
+        Files.delete(deletedFile);
+        return true;
+    }
+
+    @Override
+    public Stream<String> findWrittenBefore(final Instant writtenBefore) throws IOException {
+        return Files.find(root, 3, (file, attributes) -> attributes.isRegularFile()
+                        && attributes.lastModifiedTime().toInstant().isBefore(writtenBefore)
+                        && REFERENCE_PATTERN.matcher(file.getFileName().toString()).matches())
+                .map(file -> file.getFileName().toString());
+    }
+
+    private Path resolve(final String dataReference) {
+        if (dataReference == null || !REFERENCE_PATTERN.matcher(dataReference).matches()) {
+            throw new IllegalArgumentException("Invalid document data reference: " + dataReference);
+        }
+        return root.resolve(dataReference.substring(0, 2))
+                .resolve(dataReference.substring(2, 4))
+                .resolve(dataReference);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
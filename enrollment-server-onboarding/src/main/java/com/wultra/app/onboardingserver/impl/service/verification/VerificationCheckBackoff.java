@@ -0,0 +1,101 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.verification;
+
+import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * Backoff of the checks of documents in progress at the provider.
+ * <p>
+ * The delay of the next check is proportional to the age of the document, bounded by the configured minimum and maximum.
+ * The checks of a document are therefore spread exponentially, a fresh document is checked often, a stuck one rarely.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+public class VerificationCheckBackoff {
+
+    private final Duration minDelay;
+
+    private final Duration maxDelay;
+
+    private final double multiplier;
+
+    private final Clock clock;
+
+    @Autowired
+    public VerificationCheckBackoff(final IdentityVerificationConfig identityVerificationConfig) {
+        this(identityVerificationConfig, Clock.systemUTC());
+    }
+
+    VerificationCheckBackoff(final IdentityVerificationConfig identityVerificationConfig, final Clock clock) {
+        this.minDelay = identityVerificationConfig.getVerificationBackoffMinDelay();
+        this.maxDelay = identityVerificationConfig.getVerificationBackoffMaxDelay();
+        this.multiplier = identityVerificationConfig.getVerificationBackoffMultiplier();
+        this.clock = clock;
+    }
+
+    /**
+     * Return the current timestamp, documents with the next check not later than the timestamp are due.
+     *
+     * @return Current timestamp.
+     */
+    public Date now() {
+        return Date.from(clock.instant());
+    }
+
+    /**
+     * Schedule the next check of the document still in progress at the provider.
+     *
+     * @param docVerification Document verification.
+     */
+    public void scheduleNextCheck(final DocumentVerificationEntity docVerification) {
+        final Instant now = clock.instant();
+        final Date timestampCreated = docVerification.getTimestampCreated();
+        final Duration age = timestampCreated == null ? Duration.ZERO : Duration.between(timestampCreated.toInstant(), now);
+        final Duration delay = computeDelay(age);
+        logger.debug("Next check of document ID: {} in {}", docVerification.getId(), delay);
+        docVerification.setTimestampNextCheck(Date.from(now.plus(delay)));
+    }
+
+    /**
+     * Compute the delay of the next check.
+     *
+     * @param age Age of the document.
+     * @return Delay of the next check.
+     */
+    Duration computeDelay(final Duration age) {
+        final Duration delay = Duration.ofMillis((long) (Math.max(age.toMillis(), 0) * multiplier));
+        if (delay.compareTo(minDelay) < 0) {
+            return minDelay;
+        } else if (delay.compareTo(maxDelay) > 0) {
+            return maxDelay;
+        }
+        return delay;
+    }
+}
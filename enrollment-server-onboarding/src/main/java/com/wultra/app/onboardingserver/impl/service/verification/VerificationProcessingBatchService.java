@@ -18,10 +18,12 @@
 package com.wultra.app.onboardingserver.impl.service.verification;
 
 import com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
 import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
 import com.wultra.app.enrollmentserver.model.integration.DocumentsVerificationResult;
 import com.wultra.app.enrollmentserver.model.integration.OwnerId;
 import com.wultra.app.onboardingserver.common.database.DocumentResultRepository;
+import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.entity.DocumentResultEntity;
 import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
@@ -34,30 +36,51 @@ import com.wultra.app.onboardingserver.api.errorhandling.DocumentVerificationExc
 import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
 import com.wultra.app.onboardingserver.impl.service.IdentityVerificationService;
 import com.wultra.app.onboardingserver.api.provider.DocumentVerificationProvider;
-import lombok.AllArgsConstructor;
+import jakarta.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
+import java.util.Date;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * Service implementing verification processing features.
+ * <p>
+ * The verifications are processed in chunks fetched by keyset. Results of a chunk are fetched from the provider in parallel,
+ * limited by the configured provider concurrency, outside any transaction. Each result is then applied in its own short transaction,
+ * so a slow provider does not keep a long transaction and its process locks open.
+ * Only documents due to check are selected, documents still in progress are scheduled by {@link VerificationCheckBackoff}.
  *
  * @author Lukas Lukovsky, lukas.lukovsky@wultra.com
  */
 @Service
-@AllArgsConstructor
-public class VerificationProcessingBatchService {
+public class VerificationProcessingBatchService implements DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(VerificationProcessingBatchService.class);
 
     private final DocumentResultRepository documentResultRepository;
 
+    private final DocumentVerificationRepository documentVerificationRepository;
+
     private final IdentityVerificationRepository identityVerificationRepository;
 
     private final DocumentVerificationProvider documentVerificationProvider;
@@ -72,76 +95,284 @@ public class VerificationProcessingBatchService {
 
     private final IdentityVerificationConfig identityVerificationConfig;
 
+    private final VerificationCheckBackoff verificationCheckBackoff;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
     /**
-     * Checks document submit verifications
+     * Executor fetching the results from the provider, its thread count limits the concurrency of the provider calls.
      */
-    @Transactional
-    public void checkDocumentSubmitVerifications() {
-        AtomicInteger countFinished = new AtomicInteger(0);
-        try (Stream<DocumentResultEntity> stream = documentResultRepository.streamAllInProgressDocumentSubmitVerifications(identityVerificationConfig.getDocumentVerificationProvider())) {
-            stream.forEach(docResult -> {
-                DocumentVerificationEntity docVerification = docResult.getDocumentVerification();
-
-                final OwnerId ownerId = new OwnerId();
-                ownerId.setActivationId(docVerification.getActivationId());
-                ownerId.setUserId(docVerification.getIdentityVerification().getUserId());
-
-                DocumentsVerificationResult docVerificationResult;
-                try {
-                    docVerificationResult = documentVerificationProvider.getVerificationResult(ownerId, docVerification.getVerificationId());
-                    final IdentityVerificationEntity identityVerification = docVerification.getIdentityVerification();
-                    auditService.auditDocumentVerificationProvider(identityVerification, "Result verified: {} for user: {}", docVerificationResult.getStatus(), ownerId.getUserId());
-                } catch (DocumentVerificationException | RemoteCommunicationException e) {
-                    logger.error("Checking document submit verification failed, {}", ownerId, e);
-                    return;
-                }
+    private final Executor providerExecutor;
 
-                final String processId = docVerification.getIdentityVerification().getProcessId();
-                try {
-                    commonOnboardingService.findProcessWithLock(processId);
-                } catch (OnboardingProcessException ex) {
-                    logger.error(ex.getMessage(), ex);
-                    return;
-                }
+    @Autowired
+    public VerificationProcessingBatchService(
+            final DocumentResultRepository documentResultRepository,
+            final DocumentVerificationRepository documentVerificationRepository,
+            final IdentityVerificationRepository identityVerificationRepository,
+            final DocumentVerificationProvider documentVerificationProvider,
+            final IdentityVerificationService identityVerificationService,
+            final VerificationProcessingService verificationProcessingService,
+            final AuditService auditService,
+            final CommonOnboardingService commonOnboardingService,
+            final IdentityVerificationConfig identityVerificationConfig,
+            final VerificationCheckBackoff verificationCheckBackoff,
+            final PlatformTransactionManager transactionManager,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
 
-                verificationProcessingService.processVerificationResult(ownerId, List.of(docVerification), docVerificationResult);
+        this(documentResultRepository, documentVerificationRepository, identityVerificationRepository, documentVerificationProvider,
+                identityVerificationService, verificationProcessingService, auditService, commonOnboardingService,
+                identityVerificationConfig, verificationCheckBackoff, transactionManager, createProviderExecutor(identityVerificationConfig, virtualThreads));
+    }
 
-                if (!DocumentStatus.UPLOAD_IN_PROGRESS.equals(docVerification.getStatus())) {
-                    logger.debug("Finished verification of {} during submit at the provider, {}", docVerification, ownerId);
-                    countFinished.incrementAndGet();
-                }
-            });
-        }
-        if (countFinished.get() > 0) {
-            logger.debug("Finished {} documents verifications during submit", countFinished.get());
+    VerificationProcessingBatchService(
+            final DocumentResultRepository documentResultRepository,
+            final DocumentVerificationRepository documentVerificationRepository,
+            final IdentityVerificationRepository identityVerificationRepository,
+            final DocumentVerificationProvider documentVerificationProvider,
+            final IdentityVerificationService identityVerificationService,
+            final VerificationProcessingService verificationProcessingService,
+            final AuditService auditService,
+            final CommonOnboardingService commonOnboardingService,
+            final IdentityVerificationConfig identityVerificationConfig,
+            final VerificationCheckBackoff verificationCheckBackoff,
+            final PlatformTransactionManager transactionManager,
+            final Executor providerExecutor) {
+
+        this.documentResultRepository = documentResultRepository;
+        this.documentVerificationRepository = documentVerificationRepository;
+        this.identityVerificationRepository = identityVerificationRepository;
+        this.documentVerificationProvider = documentVerificationProvider;
+        this.identityVerificationService = identityVerificationService;
+        this.verificationProcessingService = verificationProcessingService;
+        this.auditService = auditService;
+        this.commonOnboardingService = commonOnboardingService;
+        this.identityVerificationConfig = identityVerificationConfig;
+        this.verificationCheckBackoff = verificationCheckBackoff;
+        this.providerExecutor = providerExecutor;
+
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Checks document submit verifications
+     */
+    public void checkDocumentSubmitVerifications() {
+        final String providerName = identityVerificationConfig.getDocumentVerificationProvider();
+        final Date timestampNextCheck = verificationCheckBackoff.now();
+        final int countFinished = processInChunks(
+                0L,
+                (lastId, limit) -> documentResultRepository.findInProgressDocumentSubmitVerifications(providerName, timestampNextCheck, lastId, limit),
+                DocumentResultEntity::getId,
+                this::fetchDocumentSubmitVerificationResult,
+                this::processDocumentSubmitVerificationResult);
+        if (countFinished > 0) {
+            logger.debug("Finished {} documents verifications during submit", countFinished);
         }
     }
 
     /**
      * Checks pending documents verifications
      */
-    @Transactional
     public void checkDocumentsVerifications() {
-        AtomicInteger countFinished = new AtomicInteger(0);
-        try (Stream<IdentityVerificationEntity> stream = identityVerificationRepository.streamAllInProgressDocumentsVerifications()) {
-            stream.forEach(idVerification -> {
-                final OwnerId ownerId = new OwnerId();
-                ownerId.setActivationId(idVerification.getActivationId());
-                ownerId.setUserId(idVerification.getUserId());
-
-                try {
-                    identityVerificationService.checkVerificationResult(ownerId, idVerification);
-                    if (!IdentityVerificationStatus.IN_PROGRESS.equals(idVerification.getStatus())) {
-                        countFinished.incrementAndGet();
-                    }
-                } catch (DocumentVerificationException | OnboardingProcessException | RemoteCommunicationException e) {
-                    logger.error("Checking identity verification result failed, {}", ownerId, e);
+        // verifications updated during the run are left for the next run, the keyset moves on by the last update timestamp
+        final Date timestampLastUpdatedTo = verificationCheckBackoff.now();
+        final int countFinished = processInChunks(
+                new IdentityVerificationKey(new Date(0), ""),
+                (key, limit) -> identityVerificationRepository.findInProgressDocumentsVerifications(
+                        timestampLastUpdatedTo, key.timestampLastUpdated(), key.id(), timestampLastUpdatedTo, limit),
+                idVerification -> new IdentityVerificationKey(idVerification.getTimestampLastUpdated(), idVerification.getId()),
+                this::fetchDocumentsVerificationResults,
+                this::processDocumentsVerificationResults);
+        if (countFinished > 0) {
+            logger.debug("Finished {} documents verifications", countFinished);
+        }
+    }
+
+    /**
+     * Process the rows in chunks fetched by keyset. No new chunk is started once the time budget of the run is exhausted.
+     * Results of the chunk rows are fetched in parallel and each one is processed in its own transaction.
+     *
+     * @param initialKey Key preceding the first row.
+     * @param fetcher Fetcher of a chunk following the given key.
+     * @param keyExtractor Extractor of the keyset of a row.
+     * @param resultFetcher Fetcher of the provider result of a row, returning {@code null} if the result is not available.
+     * @param resultProcessor Processor of a row and its result returning whether the row has been finished.
+     * @return Count of finished rows.
+     * @param <T> Type of the row.
+     * @param <K> Type of the keyset.
+     * @param <R> Type of the result.
+     */
+    private <T, K, R> int processInChunks(
+            final K initialKey,
+            final BiFunction<K, Limit, List<T>> fetcher,
+            final Function<T, K> keyExtractor,
+            final Function<T, R> resultFetcher,
+            final BiPredicate<T, R> resultProcessor) {
+
+        final int chunkSize = identityVerificationConfig.getVerificationBatchChunkSize();
+        final Instant deadline = Instant.now().plus(identityVerificationConfig.getVerificationBatchTimeBudget());
+        K key = initialKey;
+        int countFinished = 0;
+        while (true) {
+            final K lastKey = key;
+            final List<T> rows = readOnlyTransactionTemplate.execute(status -> fetcher.apply(lastKey, Limit.of(chunkSize)));
+            if (rows == null || rows.isEmpty()) {
+                break;
+            }
+
+            final List<CompletableFuture<R>> results = rows.stream()
+                    .map(row -> CompletableFuture.supplyAsync(() -> resultFetcher.apply(row), providerExecutor))
+                    .toList();
+            for (int i = 0; i < rows.size(); i++) {
+                final T row = rows.get(i);
+                final K rowKey = keyExtractor.apply(row);
+                final R result = joinResult(results.get(i), rowKey);
+                if (result != null && processInTransaction(row, rowKey, result, resultProcessor)) {
+                    countFinished++;
                 }
-            });
+            }
+
+            if (rows.size() < chunkSize) {
+                break;
+            }
+            if (!Instant.now().isBefore(deadline)) {
+                logger.info("Time budget of the run exhausted, remaining verifications are left for the next run");
+                break;
+            }
+            key = keyExtractor.apply(rows.get(rows.size() - 1));
         }
-        if (countFinished.get() > 0) {
-            logger.debug("Finished {} documents verifications", countFinished.get());
+        return countFinished;
+    }
+
+    @Nullable
+    private static <K, R> R joinResult(final CompletableFuture<R> result, final K key) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            logger.error("Fetching of verification result failed, {}", key, e);
+            return null;
         }
     }
 
+    private <T, K, R> boolean processInTransaction(final T row, final K key, final R result, final BiPredicate<T, R> resultProcessor) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> resultProcessor.test(row, result)));
+        } catch (RuntimeException e) {
+            logger.error("Processing of verification result failed, {}", key, e);
+            return false;
+        }
+    }
+
+    private DocumentsVerificationResult fetchDocumentSubmitVerificationResult(final DocumentResultEntity docResult) {
+        final DocumentVerificationEntity docVerification = docResult.getDocumentVerification();
+        final OwnerId ownerId = createOwnerId(docVerification.getIdentityVerification());
+        try {
+            return documentVerificationProvider.getVerificationResult(ownerId, docVerification.getVerificationId());
+        } catch (DocumentVerificationException | RemoteCommunicationException e) {
+            logger.error("Checking document submit verification failed, {}", ownerId, e);
+            return null;
+        }
+    }
+
+    private boolean processDocumentSubmitVerificationResult(final DocumentResultEntity docResult, final DocumentsVerificationResult docVerificationResult) {
+        final Optional<DocumentVerificationEntity> docVerificationOptional = documentVerificationRepository.findById(docResult.getDocumentVerification().getId())
+                .filter(it -> it.getStatus() == DocumentStatus.UPLOAD_IN_PROGRESS);
+        if (docVerificationOptional.isEmpty()) {
+            logger.debug("Document verification ID: {} already processed", docResult.getDocumentVerification().getId());
+            return false;
+        }
+
+        final DocumentVerificationEntity docVerification = docVerificationOptional.get();
+        final IdentityVerificationEntity identityVerification = docVerification.getIdentityVerification();
+        final OwnerId ownerId = createOwnerId(identityVerification);
+        auditService.auditDocumentVerificationProvider(identityVerification, "Result verified: {} for user: {}", docVerificationResult.getStatus(), ownerId.getUserId());
+
+        try {
+            commonOnboardingService.findProcessWithLock(identityVerification.getProcessId());
+        } catch (OnboardingProcessException ex) {
+            logger.error(ex.getMessage(), ex);
+            return false;
+        }
+
+        verificationProcessingService.processVerificationResult(ownerId, List.of(docVerification), docVerificationResult);
+
+        if (!DocumentStatus.UPLOAD_IN_PROGRESS.equals(docVerification.getStatus())) {
+            logger.debug("Finished verification of {} during submit at the provider, {}", docVerification, ownerId);
+            return true;
+        }
+        verificationCheckBackoff.scheduleNextCheck(docVerification);
+        documentVerificationRepository.save(docVerification);
+        return false;
+    }
+
+    private Map<String, DocumentsVerificationResult> fetchDocumentsVerificationResults(final IdentityVerificationEntity idVerification) {
+        final OwnerId ownerId = createOwnerId(idVerification);
+        try {
+            return identityVerificationService.fetchVerificationResults(ownerId, idVerification);
+        } catch (DocumentVerificationException | RemoteCommunicationException e) {
+            logger.error("Checking identity verification result failed, {}", ownerId, e);
+            return null;
+        }
+    }
+
+    private boolean processDocumentsVerificationResults(final IdentityVerificationEntity row, final Map<String, DocumentsVerificationResult> verificationResults) {
+        final Optional<IdentityVerificationEntity> idVerificationOptional = identityVerificationRepository.findById(row.getId())
+                .filter(it -> it.getPhase() == IdentityVerificationPhase.DOCUMENT_VERIFICATION && it.getStatus() == IdentityVerificationStatus.IN_PROGRESS);
+        if (idVerificationOptional.isEmpty()) {
+            logger.debug("Identity verification ID: {} already processed", row.getId());
+            return false;
+        }
+
+        final IdentityVerificationEntity idVerification = idVerificationOptional.get();
+        final OwnerId ownerId = createOwnerId(idVerification);
+        try {
+            identityVerificationService.processVerificationResults(ownerId, idVerification, verificationResults);
+            if (!IdentityVerificationStatus.IN_PROGRESS.equals(idVerification.getStatus())) {
+                return true;
+            }
+            final List<DocumentVerificationEntity> docVerifications = documentVerificationRepository.findAllDocumentVerifications(
+                    idVerification, List.of(DocumentStatus.VERIFICATION_IN_PROGRESS));
+            docVerifications.forEach(verificationCheckBackoff::scheduleNextCheck);
+            documentVerificationRepository.saveAll(docVerifications);
+            return false;
+        } catch (OnboardingProcessException e) {
+            logger.error("Checking identity verification result failed, {}", ownerId, e);
+            return false;
+        }
+    }
+
+    private static OwnerId createOwnerId(final IdentityVerificationEntity idVerification) {
+        final OwnerId ownerId = new OwnerId();
+        ownerId.setActivationId(idVerification.getActivationId());
+        ownerId.setUserId(idVerification.getUserId());
+        return ownerId;
+    }
+
+    private static Executor createProviderExecutor(final IdentityVerificationConfig config, final boolean virtualThreads) {
+        final int concurrency = config.getVerificationBatchProviderConcurrency();
+        logger.info("Document verification provider concurrency: {}", concurrency);
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("verification-provider-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (providerExecutor instanceof final ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+            threadPoolTaskExecutor.shutdown();
+        }
+    }
+
+    private record IdentityVerificationKey(Date timestampLastUpdated, String id) {
+    }
+
 }
@@ -19,36 +19,59 @@ package com.wultra.app.onboardingserver.statemachine;
 import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
 import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
 import com.wultra.app.onboardingserver.common.errorhandling.IdentityVerificationException;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
 import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Enrollment state service
+ * <p>
+ * States are looked up by phase and status in a table indexed by the enum ordinals.
+ * The provider also carries the {@link OnboardingTransitionGraph} derived from {@link StateMachineConfig},
+ * so the transitions may be queried without starting a state machine.
  *
  * @author Lukas Lukovsky, lukas.lukovsky@wultra.com
  */
 @Component
-public class EnrollmentStateProvider {
+public class EnrollmentStateProvider implements SmartInitializingSingleton {
 
     private static final Logger logger = LoggerFactory.getLogger(EnrollmentStateProvider.class);
 
-    private final Map<IdentityVerificationPhase, Map<IdentityVerificationStatus, OnboardingState>> stateByPhaseStatus;
+    /**
+     * States indexed by the phase ordinal shifted by one (the first row is for {@code null} phase) and by the status ordinal.
+     */
+    private final OnboardingState[][] stateByPhaseStatus;
 
-    public EnrollmentStateProvider() {
-        this.stateByPhaseStatus = new HashMap<>();
-        initAllStates();
+    private final ObjectProvider<StateMachineFactory<OnboardingState, OnboardingEvent>> stateMachineFactory;
+
+    private volatile OnboardingTransitionGraph transitionGraph = OnboardingTransitionGraph.empty();
+
+    @Autowired
+    public EnrollmentStateProvider(final ObjectProvider<StateMachineFactory<OnboardingState, OnboardingEvent>> stateMachineFactory) {
+        this.stateByPhaseStatus = initAllStates();
+        this.stateMachineFactory = stateMachineFactory;
+    }
+
+    /**
+     * Build the transition graph once all the beans exist, the state machine actions depend on services using this provider.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        transitionGraph = initTransitionGraph(stateMachineFactory.getIfAvailable());
     }
 
     public OnboardingState findByPhaseAndStatus(IdentityVerificationPhase phase, IdentityVerificationStatus status)
             throws IdentityVerificationException {
-        OnboardingState state = stateByPhaseStatus.getOrDefault(phase, Collections.emptyMap()).get(status);
+        final OnboardingState state = status == null ? null : stateByPhaseStatus[phaseIndex(phase)][status.ordinal()];
         if (state == null) {
             throw new IdentityVerificationException(
                     String.format("Unknown state for phase=%s, status=%s", phase, status)
@@ -57,17 +80,67 @@ public class EnrollmentStateProvider {
         return state;
     }
 
-    private void initAllStates() {
-        Arrays.stream(OnboardingState.values())
-                .filter(state -> !state.isChoiceState())
-                .forEach(value -> {
-                    Map<IdentityVerificationStatus, OnboardingState> stateByStatus =
-                            stateByPhaseStatus.computeIfAbsent(value.getPhase(), k -> new HashMap<>());
-                    if (stateByStatus.containsKey(value.getStatus())) {
-                        throw new IllegalStateException("Already mapped phase and status: " + value);
-                    }
-                    stateByStatus.put(value.getStatus(), value);
-                });
+    /**
+     * Return whether the event triggers a transition from the given state.
+     * The transition may still be declined by a guard of the state machine.
+     *
+     * @param state Current state.
+     * @param event Event.
+     * @return {@code true} if there is a transition for the event.
+     */
+    public boolean isEventAccepted(OnboardingState state, OnboardingEvent event) {
+        return transitionGraph.isEventAccepted(state, event);
+    }
+
+    /**
+     * Return events triggering a transition from the given state.
+     *
+     * @param state Current state.
+     * @return Unmodifiable set of events.
+     */
+    public Set<OnboardingEvent> findAcceptedEvents(OnboardingState state) {
+        return transitionGraph.getAcceptedEvents(state);
+    }
+
+    /**
+     * Return the transition graph of the state machine.
+     *
+     * @return Transition graph, empty if the state machine is not configured or the application context is not initialized yet.
+     */
+    public OnboardingTransitionGraph getTransitionGraph() {
+        return transitionGraph;
+    }
+
+    private static OnboardingState[][] initAllStates() {
+        final OnboardingState[][] states = new OnboardingState[IdentityVerificationPhase.values().length + 1][IdentityVerificationStatus.values().length];
+        for (OnboardingState value : OnboardingState.values()) {
+            if (value.isChoiceState()) {
+                continue;
+            }
+            final OnboardingState[] stateByStatus = states[phaseIndex(value.getPhase())];
+            if (stateByStatus[value.getStatus().ordinal()] != null) {
+                throw new IllegalStateException("Already mapped phase and status: " + value);
+            }
+            stateByStatus[value.getStatus().ordinal()] = value;
+        }
+        return states;
+    }
+
+    private static int phaseIndex(final IdentityVerificationPhase phase) {
+        return phase == null ? 0 : phase.ordinal() + 1;
+    }
+
+    private static OnboardingTransitionGraph initTransitionGraph(final StateMachineFactory<OnboardingState, OnboardingEvent> stateMachineFactory) {
+        if (stateMachineFactory == null) {
+            logger.debug("State machine not configured, using empty transition graph");
+            return OnboardingTransitionGraph.empty();
+        }
+        final StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachineFactory.getStateMachine();
+        try {
+            return OnboardingTransitionGraph.of(stateMachine.getTransitions());
+        } finally {
+            stateMachine.stopReactively().block();
+        }
     }
 
 }
@@ -0,0 +1,154 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine;
+
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import org.springframework.statemachine.transition.Transition;
+import org.springframework.statemachine.trigger.Trigger;
+
+import java.util.*;
+
+/**
+ * Immutable graph of the event driven transitions of the onboarding state machine.
+ * <p>
+ * The graph is derived from {@link StateMachineConfig} once and may be queried without starting a state machine.
+ * Targets of the transitions may be choice states, the choices are resolved by guards of the state machine.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+public final class OnboardingTransitionGraph {
+
+    private static final OnboardingEvent[] EVENTS = OnboardingEvent.values();
+
+    private static final OnboardingTransitionGraph EMPTY = new OnboardingTransitionGraph(
+            new OnboardingState[OnboardingState.values().length][EVENTS.length]);
+
+    /**
+     * Target states indexed by ordinals of the source state and the event.
+     */
+    private final OnboardingState[][] targets;
+
+    /**
+     * Accepted events indexed by ordinal of the source state.
+     */
+    private final List<Set<OnboardingEvent>> acceptedEvents;
+
+    private OnboardingTransitionGraph(final OnboardingState[][] targets) {
+        this.targets = targets;
+
+        final List<Set<OnboardingEvent>> accepted = new ArrayList<>(targets.length);
+        for (final OnboardingState[] targetsByEvent : targets) {
+            final Set<OnboardingEvent> events = EnumSet.noneOf(OnboardingEvent.class);
+            for (final OnboardingEvent event : EVENTS) {
+                if (targetsByEvent[event.ordinal()] != null) {
+                    events.add(event);
+                }
+            }
+            accepted.add(Collections.unmodifiableSet(events));
+        }
+        this.acceptedEvents = Collections.unmodifiableList(accepted);
+    }
+
+    /**
+     * Return a graph without any transitions.
+     *
+     * @return Empty graph.
+     */
+    public static OnboardingTransitionGraph empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build and validate the graph from the transitions of a state machine.
+     * Transitions without an event trigger are ignored.
+     *
+     * @param transitions Transitions of a state machine.
+     * @return Transition graph.
+     * @throws IllegalStateException In case of a transition from a choice state or an ambiguous transition.
+     */
+    public static OnboardingTransitionGraph of(final Collection<Transition<OnboardingState, OnboardingEvent>> transitions) {
+        final OnboardingState[][] targets = new OnboardingState[OnboardingState.values().length][EVENTS.length];
+        for (final Transition<OnboardingState, OnboardingEvent> transition : transitions) {
+            final Trigger<OnboardingState, OnboardingEvent> trigger = transition.getTrigger();
+            if (trigger == null || trigger.getEvent() == null) {
+                continue;
+            }
+            add(targets, transition.getSource().getId(), trigger.getEvent(), transition.getTarget().getId());
+        }
+        return new OnboardingTransitionGraph(targets);
+    }
+
+    /**
+     * Build and validate the graph from the given transitions.
+     *
+     * @param transitions Target states by source states and events.
+     * @return Transition graph.
+     * @throws IllegalStateException In case of a transition from a choice state.
+     */
+    static OnboardingTransitionGraph of(final Map<OnboardingState, Map<OnboardingEvent, OnboardingState>> transitions) {
+        final OnboardingState[][] targets = new OnboardingState[OnboardingState.values().length][EVENTS.length];
+        transitions.forEach((source, targetsByEvent) ->
+                targetsByEvent.forEach((event, target) -> add(targets, source, event, target)));
+        return new OnboardingTransitionGraph(targets);
+    }
+
+    private static void add(final OnboardingState[][] targets, final OnboardingState source, final OnboardingEvent event, final OnboardingState target) {
+        if (source.isChoiceState()) {
+            throw new IllegalStateException("Event %s triggers transition from choice state %s".formatted(event, source));
+        }
+        final OnboardingState existing = targets[source.ordinal()][event.ordinal()];
+        if (existing != null && existing != target) {
+            throw new IllegalStateException("Ambiguous transition from %s by %s to %s and %s".formatted(source, event, existing, target));
+        }
+        targets[source.ordinal()][event.ordinal()] = target;
+    }
+
+    /**
+     * Find the target of the transition triggered by the event.
+     *
+     * @param source Source state.
+     * @param event Event.
+     * @return Target state, may be a choice state, or empty if the event is not accepted in the source state.
+     */
+    public Optional<OnboardingState> findTarget(final OnboardingState source, final OnboardingEvent event) {
+        return Optional.ofNullable(targets[source.ordinal()][event.ordinal()]);
+    }
+
+    /**
+     * Return whether the event triggers a transition from the source state.
+     * The transition may still be declined by a guard.
+     *
+     * @param source Source state.
+     * @param event Event.
+     * @return {@code true} if there is a transition for the event.
+     */
+    public boolean isEventAccepted(final OnboardingState source, final OnboardingEvent event) {
+        return targets[source.ordinal()][event.ordinal()] != null;
+    }
+
+    /**
+     * Return events triggering a transition from the source state.
+     *
+     * @param source Source state.
+     * @return Unmodifiable set of events.
+     */
+    public Set<OnboardingEvent> getAcceptedEvents(final OnboardingState source) {
+        return acceptedEvents.get(source.ordinal());
+    }
+}
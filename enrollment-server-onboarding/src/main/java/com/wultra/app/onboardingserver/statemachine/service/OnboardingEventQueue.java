@@ -0,0 +1,302 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine.service;
+
+import com.wultra.app.enrollmentserver.model.integration.OwnerId;
+import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.OnboardingEventRepository;
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.common.database.entity.OnboardingEventEntity;
+import com.wultra.app.onboardingserver.common.errorhandling.IdentityVerificationException;
+import com.wultra.app.onboardingserver.common.errorhandling.OnboardingProcessException;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.statemachine.EnrollmentStateProvider;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Queue of onboarding events dispatched to the state machine right after the state change is committed.
+ * <p>
+ * The event is stored in the same transaction as the state change (transactional outbox) and dispatched by an in-process executor
+ * once the transaction is committed. Events not dispatched, e.g. because the node has been stopped, are picked up by
+ * {@link #dispatchStaleEvents()}. The polling by {@link StateMachineService#changeMachineStatesInBatch()} stays as a safety net.
+ * The queue is disabled by default, see {@link IdentityVerificationConfig#isEventQueueEnabled()}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+public class OnboardingEventQueue implements DisposableBean {
+
+    /**
+     * States progressed by {@link OnboardingEvent#EVENT_NEXT_STATE} without user interaction.
+     * Keep in sync with {@link IdentityVerificationRepository#findIdentityVerificationsToChangeState}.
+     * {@link OnboardingState#DOCUMENT_UPLOAD_IN_PROGRESS} is progressed only when documents are submitted, see {@link #enqueueDocumentsSubmitted(IdentityVerificationEntity)}.
+     */
+    private static final Set<OnboardingState> AUTOMATIC_STATES = EnumSet.of(
+            OnboardingState.DOCUMENT_UPLOAD_VERIFICATION_PENDING,
+            OnboardingState.DOCUMENT_VERIFICATION_ACCEPTED,
+            OnboardingState.DOCUMENT_VERIFICATION_FINAL_IN_PROGRESS,
+            OnboardingState.DOCUMENT_VERIFICATION_FINAL_ACCEPTED,
+            OnboardingState.CLIENT_EVALUATION_IN_PROGRESS,
+            OnboardingState.CLIENT_EVALUATION_ACCEPTED,
+            OnboardingState.PRESENCE_CHECK_VERIFICATION_PENDING
+    );
+
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    private final OnboardingEventRepository onboardingEventRepository;
+
+    private final EnrollmentStateProvider enrollmentStateProvider;
+
+    private final ObjectProvider<StateMachineService> stateMachineService;
+
+    private final IdentityVerificationConfig identityVerificationConfig;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Executor executor;
+
+    private final Clock clock;
+
+    @Autowired
+    public OnboardingEventQueue(
+            final OnboardingEventRepository onboardingEventRepository,
+            final EnrollmentStateProvider enrollmentStateProvider,
+            final ObjectProvider<StateMachineService> stateMachineService,
+            final IdentityVerificationConfig identityVerificationConfig,
+            final PlatformTransactionManager transactionManager,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
+
+        this(onboardingEventRepository, enrollmentStateProvider, stateMachineService,
+                identityVerificationConfig, transactionManager, createExecutor(identityVerificationConfig, virtualThreads), Clock.systemUTC());
+    }
+
+    OnboardingEventQueue(
+            final OnboardingEventRepository onboardingEventRepository,
+            final EnrollmentStateProvider enrollmentStateProvider,
+            final ObjectProvider<StateMachineService> stateMachineService,
+            final IdentityVerificationConfig identityVerificationConfig,
+            final PlatformTransactionManager transactionManager,
+            final Executor executor,
+            final Clock clock) {
+
+        this.onboardingEventRepository = onboardingEventRepository;
+        this.enrollmentStateProvider = enrollmentStateProvider;
+        this.stateMachineService = stateMachineService;
+        this.identityVerificationConfig = identityVerificationConfig;
+        this.executor = executor;
+        this.clock = clock;
+
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Enqueue the next state event if the identity verification is in a state progressed without user interaction.
+     * The event is dispatched after the current transaction is committed.
+     *
+     * @param identityVerification Identity verification.
+     */
+    public void enqueueNextState(final IdentityVerificationEntity identityVerification) {
+        if (identityVerificationConfig.isEventQueueEnabled() && AUTOMATIC_STATES.contains(findState(identityVerification))) {
+            enqueue(identityVerification);
+        }
+    }
+
+    /**
+     * Enqueue the next state event for the identity verification with documents submitted and pending verification.
+     * The event is dispatched after the current transaction is committed.
+     *
+     * @param identityVerification Identity verification.
+     */
+    public void enqueueDocumentsSubmitted(final IdentityVerificationEntity identityVerification) {
+        if (identityVerificationConfig.isEventQueueEnabled() && findState(identityVerification) == OnboardingState.DOCUMENT_UPLOAD_IN_PROGRESS) {
+            enqueue(identityVerification);
+        }
+    }
+
+    private void enqueue(final IdentityVerificationEntity identityVerification) {
+        final OnboardingEventEntity event = new OnboardingEventEntity();
+        event.setIdentityVerificationId(identityVerification.getId());
+        event.setProcessId(identityVerification.getProcessId());
+        event.setActivationId(identityVerification.getActivationId());
+        event.setUserId(identityVerification.getUserId());
+        event.setEvent(OnboardingEvent.EVENT_NEXT_STATE.name());
+        event.setTimestampCreated(Date.from(clock.instant()));
+        final Long id = onboardingEventRepository.save(event).getId();
+        logger.debug("Enqueued event ID: {} for process ID: {}", id, identityVerification.getProcessId());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(id);
+                }
+            });
+        } else {
+            submit(id);
+        }
+    }
+
+    /**
+     * Dispatch events which have not been dispatched in time and discard too old ones.
+     *
+     * @return Count of dispatched events.
+     */
+    public int dispatchStaleEvents() {
+        if (!identityVerificationConfig.isEventQueueEnabled()) {
+            return 0;
+        }
+
+        final Date now = Date.from(clock.instant());
+        final Integer discarded = transactionTemplate.execute(status ->
+                onboardingEventRepository.deleteCreatedBefore(Date.from(now.toInstant().minus(identityVerificationConfig.getEventQueueMaxAge()))));
+        if (discarded != null && discarded > 0) {
+            logger.warn("Discarded {} too old onboarding events", discarded);
+        }
+
+        final Date staleBefore = Date.from(now.toInstant().minus(identityVerificationConfig.getEventQueueSweepDelay()));
+        final List<Long> ids = onboardingEventRepository.findByTimestampCreatedBeforeOrderByTimestampCreatedAsc(staleBefore, PageRequest.ofSize(SWEEP_BATCH_SIZE)).stream()
+                .map(OnboardingEventEntity::getId)
+                .toList();
+        int count = 0;
+        for (Long id : ids) {
+            if (dispatch(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void submit(final Long id) {
+        try {
+            executor.execute(() -> dispatch(id));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Event ID: {} rejected by the executor, left to the sweep", id);
+        }
+    }
+
+    /**
+     * Claim the event and process it by the state machine in a new transaction.
+     *
+     * @param id Event ID.
+     * @return {@code true} if the event has been processed by this call.
+     */
+    boolean dispatch(final Long id) {
+        final StateMachineService service = stateMachineService.getIfAvailable();
+        if (service == null) {
+            logger.debug("State machine not available, event ID: {} not dispatched", id);
+            return false;
+        }
+
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                final Optional<OnboardingEventEntity> eventOptional = onboardingEventRepository.findById(id);
+                if (eventOptional.isEmpty() || onboardingEventRepository.claim(id) == 0) {
+                    logger.debug("Event ID: {} already dispatched", id);
+                    return false;
+                }
+                try {
+                    return process(service, eventOptional.get());
+                } catch (IdentityVerificationException | OnboardingProcessException e) {
+                    logger.warn("Unable to dispatch event ID: {}", id, e);
+                    return false;
+                }
+            }));
+        } catch (RuntimeException e) {
+            logger.warn("Dispatch of event ID: {} failed, left to the sweep", id, e);
+            return false;
+        }
+    }
+
+    private boolean process(final StateMachineService service, final OnboardingEventEntity event) throws IdentityVerificationException, OnboardingProcessException {
+        final String processId = event.getProcessId();
+        final OwnerId ownerId = new OwnerId();
+        ownerId.setActivationId(event.getActivationId());
+        ownerId.setUserId(event.getUserId());
+
+        logger.debug("Dispatching event ID: {} for process ID: {}", event.getId(), processId);
+        // the same lock is taken by the polling, the state is checked again under the lock
+        if (service.processNextStateEventWithLock(ownerId, processId, event.getIdentityVerificationId(), OnboardingEventQueue::isDispatchable)) {
+            return true;
+        }
+        logger.debug("Identity verification of process ID: {} already moved, event ID: {} skipped", processId, event.getId());
+        return false;
+    }
+
+    private static boolean isDispatchable(final OnboardingState state) {
+        return state == OnboardingState.DOCUMENT_UPLOAD_IN_PROGRESS || AUTOMATIC_STATES.contains(state);
+    }
+
+    private OnboardingState findState(final IdentityVerificationEntity identityVerification) {
+        try {
+            return enrollmentStateProvider.findByPhaseAndStatus(identityVerification.getPhase(), identityVerification.getStatus());
+        } catch (IdentityVerificationException e) {
+            logger.debug("Unknown state of {}", identityVerification, e);
+            return OnboardingState.UNEXPECTED_STATE;
+        }
+    }
+
+    private static Executor createExecutor(final IdentityVerificationConfig config, final boolean virtualThreads) {
+        if (!config.isEventQueueEnabled()) {
+            return command -> {
+                throw new RejectedExecutionException("Event queue disabled");
+            };
+        }
+        logger.info("Onboarding event queue enabled, worker threads: {}", config.getEventQueueWorkerThreads());
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(config.getEventQueueWorkerThreads());
+        executor.setMaxPoolSize(config.getEventQueueWorkerThreads());
+        executor.setQueueCapacity(1_000);
+        executor.setThreadNamePrefix("onboarding-event-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor instanceof final ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+            threadPoolTaskExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine.service;
+
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.statemachine.consts.ExtendedStateVariable;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import com.wultra.app.onboardingserver.statemachine.interceptor.CustomStateMachineInterceptor;
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.statemachine.ExtendedState;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.access.StateMachineAccess;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of reusable state machines.
+ * <p>
+ * Building a state machine by the factory is expensive, so idle machines are kept and reset to the required state instead.
+ * The idle machines are kept running, a machine is stopped, reset and started again by a single blocking call when acquired.
+ * A machine is used by a single thread at a time between {@link #acquire(OnboardingState, IdentityVerificationEntity)}
+ * and {@link #release(StateMachine)}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@ConditionalOnProperty(value = "enrollment-server-onboarding.identity-verification.enabled", havingValue = "true")
+@Slf4j
+public class StateMachinePool {
+
+    private final StateMachineFactory<OnboardingState, OnboardingEvent> stateMachineFactory;
+
+    private final CustomStateMachineInterceptor stateMachineInterceptor;
+
+    /**
+     * Idle machines or {@code null} if the pooling is disabled.
+     */
+    private final BlockingQueue<StateMachine<OnboardingState, OnboardingEvent>> idleMachines;
+
+    @Autowired
+    public StateMachinePool(
+            final StateMachineFactory<OnboardingState, OnboardingEvent> stateMachineFactory,
+            final CustomStateMachineInterceptor stateMachineInterceptor,
+            @Value("${enrollment-server-onboarding.state-machine.pool.max-idle:32}") final int maxIdle) {
+        this.stateMachineFactory = stateMachineFactory;
+        this.stateMachineInterceptor = stateMachineInterceptor;
+        this.idleMachines = maxIdle > 0 ? new ArrayBlockingQueue<>(maxIdle) : null;
+    }
+
+    /**
+     * Acquire a started state machine in the given state. The machine must be released after use.
+     *
+     * @param onboardingState State to reset the machine to.
+     * @param identityVerification Identity verification to put into the extended state, may be {@code null}.
+     * @return State machine.
+     */
+    public StateMachine<OnboardingState, OnboardingEvent> acquire(final OnboardingState onboardingState, @Nullable final IdentityVerificationEntity identityVerification) {
+        StateMachine<OnboardingState, OnboardingEvent> stateMachine = idleMachines == null ? null : idleMachines.poll();
+        if (stateMachine == null) {
+            logger.debug("No idle state machine available, creating a new one");
+            stateMachine = create(null);
+        }
+        reset(stateMachine, onboardingState, identityVerification);
+        return stateMachine;
+    }
+
+    /**
+     * Release the state machine. The machine is kept for reuse if the pool is not full, it is reset when acquired again.
+     *
+     * @param stateMachine State machine to release.
+     */
+    public void release(final StateMachine<OnboardingState, OnboardingEvent> stateMachine) {
+        // do not hold the identity verification of the finished request
+        stateMachine.getExtendedState().getVariables().clear();
+        if (idleMachines != null && !idleMachines.offer(stateMachine)) {
+            logger.debug("State machine pool is full, discarding the state machine");
+        }
+    }
+
+    /**
+     * Create a new state machine not managed by the pool.
+     *
+     * @param machineId Machine ID, may be {@code null}.
+     * @return State machine.
+     */
+    StateMachine<OnboardingState, OnboardingEvent> create(@Nullable final String machineId) {
+        final StateMachine<OnboardingState, OnboardingEvent> stateMachine = machineId == null ?
+                stateMachineFactory.getStateMachine() :
+                stateMachineFactory.getStateMachine(machineId);
+        stateMachine.getStateMachineAccessor().doWithAllRegions(sma -> sma.addStateMachineInterceptor(stateMachineInterceptor));
+        return stateMachine;
+    }
+
+    /**
+     * Stop the state machine, reset it to the given state with a fresh extended state, and start it again.
+     * The steps are chained, so the calling thread blocks only once.
+     *
+     * @param stateMachine State machine.
+     * @param onboardingState State to reset the machine to.
+     * @param identityVerification Identity verification to put into the extended state, may be {@code null}.
+     */
+    static void reset(
+            final StateMachine<OnboardingState, OnboardingEvent> stateMachine,
+            final OnboardingState onboardingState,
+            @Nullable final IdentityVerificationEntity identityVerification) {
+
+        final ExtendedState extendedState = new DefaultExtendedState();
+        if (identityVerification != null) {
+            extendedState.getVariables().put(ExtendedStateVariable.IDENTITY_VERIFICATION, identityVerification);
+        }
+
+        final StateMachineContext<OnboardingState, OnboardingEvent> context = new DefaultStateMachineContext<>(
+                onboardingState,
+                null,
+                null,
+                extendedState
+        );
+        final List<StateMachineAccess<OnboardingState, OnboardingEvent>> regions = new ArrayList<>();
+        stateMachine.getStateMachineAccessor().doWithAllRegions(regions::add);
+
+        stateMachine.stopReactively()
+                .then(Mono.fromRunnable(() -> stateMachine.setStateMachineError(null)))
+                .thenMany(Flux.fromIterable(regions).concatMap(region -> region.resetStateMachineReactively(context)))
+                .then(Mono.defer(stateMachine::startReactively))
+                .block();
+    }
+}
@@ -17,36 +17,40 @@
 package com.wultra.app.onboardingserver.statemachine.service;
 
 import com.wultra.app.enrollmentserver.model.integration.OwnerId;
+import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
 import com.wultra.app.onboardingserver.common.errorhandling.IdentityVerificationException;
-import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.common.errorhandling.OnboardingProcessException;
+import com.wultra.app.onboardingserver.common.service.CommonOnboardingService;
 import com.wultra.app.onboardingserver.impl.service.IdentityVerificationService;
 import com.wultra.app.onboardingserver.statemachine.EnrollmentStateProvider;
 import com.wultra.app.onboardingserver.statemachine.consts.EventHeaderName;
-import com.wultra.app.onboardingserver.statemachine.consts.ExtendedStateVariable;
 import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
 import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
-import com.wultra.app.onboardingserver.statemachine.interceptor.CustomStateMachineInterceptor;
 import jakarta.annotation.Nullable;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.StateMachineEventResult;
-import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.statemachine.support.DefaultExtendedState;
-import org.springframework.statemachine.support.DefaultStateMachineContext;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 import reactor.core.publisher.Mono;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
 
 /**
  * State machine service
@@ -55,61 +59,95 @@ import java.util.stream.Stream;
  */
 @Service
 @Slf4j
-@AllArgsConstructor
 @ConditionalOnProperty(value = "enrollment-server-onboarding.identity-verification.enabled", havingValue = "true")
 public class StateMachineService {
 
-    private final EnrollmentStateProvider enrollmentStateProvider;
+    /**
+     * Maximum count of partitions, the partition is given by the last hexadecimal digit of the process ID.
+     */
+    public static final int MAX_PARTITIONS = 16;
 
-    private final StateMachineFactory<OnboardingState, OnboardingEvent> stateMachineFactory;
+    private final EnrollmentStateProvider enrollmentStateProvider;
 
-    private final CustomStateMachineInterceptor stateMachineInterceptor;
+    private final StateMachinePool stateMachinePool;
 
     private final IdentityVerificationService identityVerificationService;
 
-    private final TransactionTemplate transactionTemplate;
+    private final IdentityVerificationRepository identityVerificationRepository;
+
+    private final CommonOnboardingService commonOnboardingService;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final TransactionTemplate requiresNewTransactionTemplate;
 
-    private final IdentityVerificationConfig identityVerificationConfig;
+    private final int batchSize;
 
+    @Autowired
+    public StateMachineService(
+            final EnrollmentStateProvider enrollmentStateProvider,
+            final StateMachinePool stateMachinePool,
+            final IdentityVerificationService identityVerificationService,
+            final IdentityVerificationRepository identityVerificationRepository,
+            final CommonOnboardingService commonOnboardingService,
+            final PlatformTransactionManager transactionManager,
+            @Value("${enrollment-server-onboarding.state-machine.changeMachineState.batch-size:100}") final int batchSize) {
+
+        this.enrollmentStateProvider = enrollmentStateProvider;
+        this.stateMachinePool = stateMachinePool;
+        this.identityVerificationService = identityVerificationService;
+        this.identityVerificationRepository = identityVerificationRepository;
+        this.commonOnboardingService = commonOnboardingService;
+        this.batchSize = batchSize;
+
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        readOnlyTransactionTemplate.setReadOnly(true);
+
+        this.requiresNewTransactionTemplate = new TransactionTemplate(transactionManager);
+        requiresNewTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Process the event by a pooled state machine.
+     *
+     * @param ownerId Owner identification.
+     * @param processId Process ID.
+     * @param event Event to process.
+     * @return Extended state of the state machine after the event has been processed.
+     * @throws IdentityVerificationException Thrown when identity verification is not found.
+     */
     @Transactional
-    public StateMachine<OnboardingState, OnboardingEvent> processStateMachineEvent(OwnerId ownerId, String processId, OnboardingEvent event)
+    public ExtendedState processStateMachineEvent(OwnerId ownerId, String processId, OnboardingEvent event)
             throws IdentityVerificationException {
         final StateMachine<OnboardingState, OnboardingEvent> stateMachine =
                 OnboardingEvent.IDENTITY_VERIFICATION_INIT == event ?
-                prepareStateMachine(processId, OnboardingState.INITIAL, null) :
-                fetchStateMachine(ownerId, processId);
-        final Message<OnboardingEvent> message = createMessage(ownerId, processId, event);
-        sendEventMessage(stateMachine, message);
-
-        return stateMachine;
+                stateMachinePool.acquire(OnboardingState.INITIAL, null) :
+                fetchStateMachine(ownerId);
+        try {
+            final Message<OnboardingEvent> message = createMessage(ownerId, processId, event);
+            sendEventMessage(stateMachine, message);
+            // the machine is reused, hand over a copy of its extended state
+            return new DefaultExtendedState(new HashMap<>(stateMachine.getExtendedState().getVariables()));
+        } finally {
+            stateMachinePool.release(stateMachine);
+        }
     }
 
+    /**
+     * Prepare a new state machine not managed by the pool.
+     *
+     * @param processId Process ID used as the machine ID.
+     * @param onboardingState State to reset the machine to.
+     * @param identityVerification Identity verification to put into the extended state, may be {@code null}.
+     * @return Started state machine.
+     */
     public StateMachine<OnboardingState, OnboardingEvent> prepareStateMachine(
             String processId,
             OnboardingState onboardingState,
             @Nullable IdentityVerificationEntity identityVerification
     ) {
-        StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachineFactory.getStateMachine(processId);
-
-        ExtendedState extendedState = new DefaultExtendedState();
-        if (identityVerification != null) {
-            extendedState.getVariables().put(ExtendedStateVariable.IDENTITY_VERIFICATION, identityVerification);
-        }
-
-        stateMachine.stopReactively().block();
-        stateMachine.getStateMachineAccessor().doWithAllRegions(sma -> {
-            sma.addStateMachineInterceptor(stateMachineInterceptor);
-            sma.resetStateMachineReactively(
-                    new DefaultStateMachineContext<>(
-                            onboardingState,
-                            null,
-                            null,
-                            extendedState
-                    )
-            ).block();
-        });
-        stateMachine.startReactively().block();
-
+        final StateMachine<OnboardingState, OnboardingEvent> stateMachine = stateMachinePool.create(processId);
+        StateMachinePool.reset(stateMachine, onboardingState, identityVerification);
         return stateMachine;
     }
 
@@ -120,36 +158,148 @@ public class StateMachineService {
                 .build();
     }
 
+    /**
+     * Process the next state event if the identity verification is still in an expected state.
+     * <p>
+     * The onboarding process and then the identity verification are locked until the end of the transaction and the state
+     * is checked again under the lock. So the event is not processed twice by concurrent callers, and it is not processed
+     * for an identity verification terminated by the cleaning meanwhile.
+     *
+     * @param ownerId Owner identification.
+     * @param processId Process ID.
+     * @param identityVerificationId Identity verification ID.
+     * @param expectedState Predicate of the states in which the event is processed.
+     * @return {@code true} if the event has been processed.
+     * @throws IdentityVerificationException Thrown when the event processing fails.
+     * @throws OnboardingProcessException Thrown when onboarding process is not found.
+     */
+    @Transactional
+    public boolean processNextStateEventWithLock(
+            final OwnerId ownerId, final String processId, final String identityVerificationId, final Predicate<OnboardingState> expectedState)
+            throws IdentityVerificationException, OnboardingProcessException {
+
+        commonOnboardingService.findProcessWithLock(processId);
+        final Optional<IdentityVerificationEntity> identityVerification = identityVerificationRepository.findByIdWithLock(identityVerificationId);
+        if (identityVerification.isEmpty()) {
+            logger.debug("Identity verification ID: {} not found, process ID: {}", identityVerificationId, processId);
+            return false;
+        }
+
+        final OnboardingState state = enrollmentStateProvider.findByPhaseAndStatus(identityVerification.get().getPhase(), identityVerification.get().getStatus());
+        if (!expectedState.test(state)) {
+            logger.debug("Identity verification of process ID: {} already moved to {}", processId, state);
+            return false;
+        }
+
+        processStateMachineEvent(ownerId, processId, OnboardingEvent.EVENT_NEXT_STATE);
+        return true;
+    }
+
     /**
      * Change machine states in batch.
      */
-    @Transactional(readOnly = true)
     public void changeMachineStatesInBatch() {
-        final AtomicInteger countFinished = new AtomicInteger(0);
-        try (Stream<IdentityVerificationEntity> stream = identityVerificationService.streamAllIdentityVerificationsToChangeState().parallel()) {
-              stream.filter(identityVerification -> identityVerification.getDocumentVerifications().stream()
-                            .anyMatch(doc -> identityVerificationConfig.getDocumentVerificationProvider().equals(doc.getProviderName())))
-                    .forEach(identityVerification -> {
-                        final String processId = identityVerification.getProcessId();
-                        final OwnerId ownerId = new OwnerId();
-                        ownerId.setActivationId(identityVerification.getActivationId());
-                        ownerId.setUserId(identityVerification.getUserId());
-                        logger.debug("Changing state of machine for process ID: {}", processId);
-
-                        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
-                        transactionTemplate.executeWithoutResult(status -> {
-                            try {
-                                processStateMachineEvent(ownerId, processId, OnboardingEvent.EVENT_NEXT_STATE);
-                                countFinished.incrementAndGet();
-                            } catch (IdentityVerificationException e) {
-                                logger.warn("Unable to change state for process ID: {}", processId, e);
-                            }
-                        });
-                    });
+        changeMachineStatesInBatch(0, 1);
+    }
+
+    /**
+     * Change machine states of the identity verifications in the given partition.
+     * The partition is selected by the last hexadecimal digit of the process ID in the database query.
+     * Each identity verification is processed in its own transaction, see {@link #processNextStateEventWithLock(OwnerId, String, String, Predicate)}.
+     *
+     * @param partition Partition index, from {@code 0} to {@code partitions - 1}.
+     * @param partitions Count of partitions, at most {@link #MAX_PARTITIONS}.
+     * @return Count of processed identity verifications.
+     */
+    public int changeMachineStatesInBatch(final int partition, final int partitions) {
+        final List<String> partitionSuffixes = partitions > 1 ? partitionSuffixes(partition, partitions) : null;
+
+        // rows updated during the run are left for the next run, the keyset moves on by the last update timestamp
+        final Date timestampLastUpdatedTo = new Date();
+        Date lastTimestampLastUpdated = new Date(0);
+        String lastId = "";
+
+        int countFinished = 0;
+        List<IdentityVerificationEntity> page;
+        do {
+            final Date pageTimestamp = lastTimestampLastUpdated;
+            final String pageId = lastId;
+            page = readOnlyTransactionTemplate.execute(status ->
+                    identityVerificationService.findIdentityVerificationsToChangeState(partitionSuffixes, pageTimestamp, pageId, timestampLastUpdatedTo, batchSize));
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+
+            for (IdentityVerificationEntity identityVerification : page) {
+                if (isNextStateEventAccepted(identityVerification) && changeMachineState(identityVerification)) {
+                    countFinished++;
+                }
+            }
+
+            final IdentityVerificationEntity last = page.get(page.size() - 1);
+            lastTimestampLastUpdated = last.getTimestampLastUpdated();
+            lastId = last.getId();
+        } while (page.size() == batchSize);
+
+        if (countFinished > 0) {
+            logger.debug("Changed state of {} identity verifications in partition {}", countFinished, partition);
+        }
+        return countFinished;
+    }
+
+    private boolean changeMachineState(final IdentityVerificationEntity identityVerification) {
+        final String processId = identityVerification.getProcessId();
+        final OwnerId ownerId = new OwnerId();
+        ownerId.setActivationId(identityVerification.getActivationId());
+        ownerId.setUserId(identityVerification.getUserId());
+        logger.debug("Changing state of machine for process ID: {}", processId);
+
+        final Boolean finished = requiresNewTransactionTemplate.execute(status -> {
+            try {
+                return processNextStateEventWithLock(ownerId, processId, identityVerification.getId(),
+                        state -> enrollmentStateProvider.isEventAccepted(state, OnboardingEvent.EVENT_NEXT_STATE));
+            } catch (IdentityVerificationException | OnboardingProcessException e) {
+                logger.warn("Unable to change state for process ID: {}", processId, e);
+                return false;
+            }
+        });
+        return Boolean.TRUE.equals(finished);
+    }
+
+    /**
+     * Return the last characters of the process IDs in the given partition.
+     * Process IDs are UUIDs, so the last character is a hexadecimal digit in either case.
+     *
+     * @param partition Partition index.
+     * @param partitions Count of partitions.
+     * @return Last characters of the process IDs in the partition.
+     */
+    static List<String> partitionSuffixes(final int partition, final int partitions) {
+        final List<String> suffixes = new ArrayList<>();
+        for (int digit = partition; digit < MAX_PARTITIONS; digit += partitions) {
+            final char suffix = Character.forDigit(digit, MAX_PARTITIONS);
+            suffixes.add(String.valueOf(suffix));
+            if (Character.isLetter(suffix)) {
+                suffixes.add(String.valueOf(Character.toUpperCase(suffix)));
+            }
         }
-        if (countFinished.get() > 0) {
-            logger.debug("Changed state of {} identity verifications", countFinished.get());
+        return suffixes;
+    }
+
+    /**
+     * Check by the transition graph whether the next state event may be applied, without acquiring a state machine.
+     */
+    private boolean isNextStateEventAccepted(final IdentityVerificationEntity identityVerification) {
+        try {
+            final OnboardingState state = enrollmentStateProvider.findByPhaseAndStatus(identityVerification.getPhase(), identityVerification.getStatus());
+            if (enrollmentStateProvider.isEventAccepted(state, OnboardingEvent.EVENT_NEXT_STATE)) {
+                return true;
+            }
+            logger.debug("No next state transition from {} for process ID: {}", state, identityVerification.getProcessId());
+        } catch (IdentityVerificationException e) {
+            logger.warn("Unable to change state for process ID: {}", identityVerification.getProcessId(), e);
         }
+        return false;
     }
 
     private StateMachineEventResult<OnboardingState, OnboardingEvent> sendEventMessage(
@@ -158,14 +308,11 @@ public class StateMachineService {
         return stateMachine.sendEvent(Mono.just(message)).blockLast();
     }
 
-    private StateMachine<OnboardingState, OnboardingEvent> fetchStateMachine(
-            OwnerId ownerId,
-            String processId
-    ) throws IdentityVerificationException {
+    private StateMachine<OnboardingState, OnboardingEvent> fetchStateMachine(OwnerId ownerId) throws IdentityVerificationException {
         IdentityVerificationEntity identityVerification = identityVerificationService.findBy(ownerId);
         OnboardingState onboardingState = enrollmentStateProvider.findByPhaseAndStatus(identityVerification.getPhase(), identityVerification.getStatus());
 
-        return prepareStateMachine(processId, onboardingState, identityVerification);
+        return stateMachinePool.acquire(onboardingState, identityVerification);
     }
 
 }
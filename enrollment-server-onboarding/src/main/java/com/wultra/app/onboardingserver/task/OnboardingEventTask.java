@@ -0,0 +1,59 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.task;
+
+import com.wultra.app.onboardingserver.statemachine.service.OnboardingEventQueue;
+import com.wultra.app.onboardingserver.task.consts.SchedulerLockNames;
+import lombok.extern.slf4j.Slf4j;
+import net.javacrumbs.shedlock.core.LockAssert;
+import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Task to dispatch onboarding events which have not been dispatched immediately after the state change.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+@ConditionalOnExpression("""
+        ${enrollment-server-onboarding.identity-verification.enabled:false} and ${enrollment-server-onboarding.state-machine.event-queue.enabled:false}
+        """)
+public class OnboardingEventTask {
+
+    private final OnboardingEventQueue onboardingEventQueue;
+
+    public OnboardingEventTask(final OnboardingEventQueue onboardingEventQueue) {
+        this.onboardingEventQueue = onboardingEventQueue;
+    }
+
+    /**
+     * Scheduled task to dispatch stale onboarding events.
+     */
+    @Scheduled(cron = "${enrollment-server-onboarding.state-machine.event-queue.sweep.cron:0/10 * * * * *}", zone = "UTC")
+    @SchedulerLock(name = SchedulerLockNames.ONBOARDING_EVENT_LOCK, lockAtMostFor = "5m")
+    public void dispatchStaleEvents() {
+        LockAssert.assertLocked();
+        final int count = onboardingEventQueue.dispatchStaleEvents();
+        if (count > 0) {
+            logger.debug("Dispatched {} stale onboarding events", count);
+        }
+    }
+}
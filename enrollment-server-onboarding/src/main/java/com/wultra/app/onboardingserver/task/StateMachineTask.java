@@ -20,38 +20,138 @@ package com.wultra.app.onboardingserver.task;
 import com.wultra.app.onboardingserver.statemachine.service.StateMachineService;
 import com.wultra.app.onboardingserver.task.consts.SchedulerLockNames;
 import lombok.extern.slf4j.Slf4j;
-import net.javacrumbs.shedlock.core.LockAssert;
-import net.javacrumbs.shedlock.spring.annotation.SchedulerLock;
+import net.javacrumbs.shedlock.core.DefaultLockingTaskExecutor;
+import net.javacrumbs.shedlock.core.LockConfiguration;
+import net.javacrumbs.shedlock.core.LockProvider;
+import net.javacrumbs.shedlock.core.LockingTaskExecutor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.system.JavaVersion;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Task to change machine state.
  * <p>
  * Implemented as polling. Ideally, signaling should be done in the state machine itself.
+ * <p>
+ * Identity verifications are split into partitions by the last hexadecimal digit of the process ID. Each partition is guarded
+ * by its own lock, so the partitions are processed in parallel by the workers of this node and by other nodes of the cluster.
+ * <p>
+ * The partition locks do not exclude the cleaning tasks holding {@link SchedulerLockNames#ONBOARDING_PROCESS_LOCK}.
+ * The exclusion is ensured by row locks instead. The state of each identity verification is changed only with
+ * its onboarding process and the identity verification row locked, and the state is checked again once the locks
+ * are acquired, see {@link StateMachineService#processNextStateEventWithLock}. So a state change waiting for rows locked
+ * by the cleaning does not overwrite the terminated rows. The cleaning skips the rows locked by a state change
+ * and terminates them by its next run.
+ * <p>
+ * The run waits for the partitions at most {@link #LOCK_AT_MOST_FOR}, the partition lock expires then anyway.
  *
  * @author Lubos Racansky, lubos.racansky@wultra.com
  */
 @Component
 @Slf4j
 @ConditionalOnProperty(value = "enrollment-server-onboarding.identity-verification.enabled", havingValue = "true")
-public class StateMachineTask {
+public class StateMachineTask implements DisposableBean {
+
+    private static final Duration LOCK_AT_MOST_FOR = Duration.ofMinutes(5);
+
+    private static final Duration LOCK_AT_LEAST_FOR = Duration.ofMillis(100);
 
     private final StateMachineService stateMachineService;
 
-    public StateMachineTask(final StateMachineService stateMachineService) {
+    private final LockingTaskExecutor lockingTaskExecutor;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    private final int partitions;
+
+    @Autowired
+    public StateMachineTask(
+            final StateMachineService stateMachineService,
+            final LockProvider lockProvider,
+            @Value("${enrollment-server-onboarding.state-machine.changeMachineState.partitions:8}") final int partitions,
+            @Value("${enrollment-server-onboarding.state-machine.changeMachineState.worker-threads:2}") final int workerThreads,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
+
+        if (partitions < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException("Count of partitions and worker threads must be positive");
+        }
+        if (partitions > StateMachineService.MAX_PARTITIONS) {
+            throw new IllegalArgumentException("Count of partitions must not exceed " + StateMachineService.MAX_PARTITIONS);
+        }
+
         this.stateMachineService = stateMachineService;
+        this.lockingTaskExecutor = new DefaultLockingTaskExecutor(lockProvider);
+        this.partitions = partitions;
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(workerThreads);
+        executor.setMaxPoolSize(workerThreads);
+        executor.setQueueCapacity(partitions);
+        executor.setThreadNamePrefix("state-machine-task-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.initialize();
     }
 
     /**
      * Scheduled task to change machine state.
      */
     @Scheduled(cron = "${enrollment-server-onboarding.state-machine.changeMachineState.cron:0/3 * * * * *}", zone = "UTC")
-    @SchedulerLock(name = SchedulerLockNames.ONBOARDING_PROCESS_LOCK, lockAtMostFor = "5m")
     public void changeMachineState() {
-        LockAssert.assertLocked();
-        logger.debug("Changing machine states in batch");
-        stateMachineService.changeMachineStatesInBatch();
+        logger.debug("Changing machine states in batch, partitions: {}", partitions);
+        // start at a random partition, so the nodes do not compete for the same locks
+        final int offset = ThreadLocalRandom.current().nextInt(partitions);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            final int partition = (offset + i) % partitions;
+            try {
+                futures.add(CompletableFuture.runAsync(() -> changeMachineState(partition), executor)
+                        .orTimeout(LOCK_AT_MOST_FOR.toMillis(), TimeUnit.MILLISECONDS)
+                        .exceptionally(t -> {
+                            if (t instanceof TimeoutException) {
+                                logger.error("Changing machine states of partition {} not finished in {}", partition, LOCK_AT_MOST_FOR);
+                            } else {
+                                logger.error("Unable to change machine states of partition {}", partition, t);
+                            }
+                            return null;
+                        }));
+            } catch (RejectedExecutionException e) {
+                logger.error("Unable to schedule changing machine states of partition {}", partition, e);
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void changeMachineState(final int partition) {
+        final LockConfiguration lockConfiguration = new LockConfiguration(
+                Instant.now(), SchedulerLockNames.ONBOARDING_PROCESS_LOCK + "-" + partition, LOCK_AT_MOST_FOR, LOCK_AT_LEAST_FOR);
+        final LockingTaskExecutor.TaskWithResult<Integer> task = () -> stateMachineService.changeMachineStatesInBatch(partition, partitions);
+        try {
+            final LockingTaskExecutor.TaskResult<Integer> result = lockingTaskExecutor.executeWithLock(task, lockConfiguration);
+            if (!result.wasExecuted()) {
+                logger.debug("Partition {} is processed by another node", partition);
+            }
+        } catch (Throwable t) {
+            logger.error("Unable to change machine states of partition {}", partition, t);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
     }
 }
@@ -25,21 +25,28 @@ import com.wultra.app.onboardingserver.common.database.entity.OnboardingProcessE
 import com.wultra.app.onboardingserver.common.service.AuditService;
 import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
 import com.wultra.app.onboardingserver.configuration.OnboardingConfig;
+import com.wultra.app.onboardingserver.impl.service.document.DocumentDataService;
 import com.wultra.app.onboardingserver.impl.util.DateUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Duration;
-import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Service with cleaning functionality.
+ * <p>
+ * Expired rows are terminated in chunks, each in its own transaction. The chunk rows are locked and the rows locked
+ * by another transaction are skipped, they are terminated by a later run.
  *
  * @author Lubos Racansky, lubos.racansky@wultra.com
  */
@@ -50,7 +57,7 @@ class CleaningService {
     /**
      * Maximum number of values in SQL IN operator list.
      */
-    private static final int BATCH_SIZE = 1_000;
+    private static final int MAX_BATCH_SIZE = 1_000;
 
     private static final String ERROR_MESSAGE_DOCUMENT_VERIFICATION_EXPIRED = "expired";
 
@@ -64,12 +71,19 @@ class CleaningService {
 
     private final DocumentVerificationRepository documentVerificationRepository;
 
-    private final DocumentDataRepository documentDataRepository;
+    private final DocumentDataService documentDataService;
 
     private final OnboardingOtpRepository onboardingOtpRepository;
 
     private final AuditService auditService;
 
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Maximum count of rows terminated in a single transaction.
+     */
+    private final int batchSize;
+
     @Autowired
     public CleaningService(
             final OnboardingConfig onboardingConfig,
@@ -77,72 +91,77 @@ class CleaningService {
             final OnboardingProcessRepository onboardingProcessRepository,
             final IdentityVerificationRepository identityVerificationRepository,
             final DocumentVerificationRepository documentVerificationRepository,
-            final DocumentDataRepository documentDataRepository,
+            final DocumentDataService documentDataService,
             final OnboardingOtpRepository onboardingOtpRepository,
-            final AuditService auditService) {
+            final AuditService auditService,
+            final PlatformTransactionManager transactionManager,
+            @Value("${enrollment-server-onboarding.cleaning.batch-size:1000}") final int batchSize) {
+
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Cleaning batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
 
         this.onboardingConfig = onboardingConfig;
         this.identityVerificationConfig = identityVerificationConfig;
         this.onboardingProcessRepository = onboardingProcessRepository;
         this.identityVerificationRepository = identityVerificationRepository;
         this.documentVerificationRepository = documentVerificationRepository;
-        this.documentDataRepository = documentDataRepository;
+        this.documentDataService = documentDataService;
         this.onboardingOtpRepository = onboardingOtpRepository;
         this.auditService = auditService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
     }
 
     /**
      * Terminate processes with expired activation.
      */
-    @Transactional
     public void terminateExpiredProcessActivations() {
         final Duration activationExpiration = onboardingConfig.getActivationExpirationTime();
         final Date createdDateExpiredActivations = DateUtil.convertExpirationToCreatedDate(activationExpiration);
-        final List<String> ids = onboardingProcessRepository.findByTimestampAndStatusWithLock(createdDateExpiredActivations, OnboardingStatus.ACTIVATION_IN_PROGRESS);
-        terminateProcessesAndRelatedEntities(ids, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ACTIVATION);
+        terminateInChunks(
+                lastId -> onboardingProcessRepository.streamByTimestampAndStatusWithLock(createdDateExpiredActivations, OnboardingStatus.ACTIVATION_IN_PROGRESS, lastId),
+                ids -> terminateProcessesAndRelatedEntities(ids, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ACTIVATION));
     }
 
     /**
      * Terminate expired processes with expired verification.
      */
-    @Transactional
     public void terminateExpiredProcessVerifications() {
         final Duration verificationExpiration = identityVerificationConfig.getVerificationExpirationTime();
         final Date createdDateExpiredVerifications = DateUtil.convertExpirationToCreatedDate(verificationExpiration);
-        final List<String> ids = onboardingProcessRepository.findByTimestampAndStatusWithLock(createdDateExpiredVerifications, OnboardingStatus.VERIFICATION_IN_PROGRESS);
-        terminateProcessesAndRelatedEntities(ids, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_IDENTITY_VERIFICATION);
+        terminateInChunks(
+                lastId -> onboardingProcessRepository.streamByTimestampAndStatusWithLock(createdDateExpiredVerifications, OnboardingStatus.VERIFICATION_IN_PROGRESS, lastId),
+                ids -> terminateProcessesAndRelatedEntities(ids, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_IDENTITY_VERIFICATION));
     }
 
     /**
      * Terminate expired OTP codes.
      */
-    @Transactional
     public void terminateExpiredOtpCodes() {
         final Duration otpExpiration = onboardingConfig.getOtpExpirationTime();
         final Date createdDateExpiredOtp = DateUtil.convertExpirationToCreatedDate(otpExpiration);
-        final List<String> otpIds = onboardingOtpRepository.findExpiredIds(createdDateExpiredOtp);
         final Date now = new Date();
-        for (List<String> otpIdChunk : ListUtils.partition(otpIds, BATCH_SIZE)) {
-            terminateAndAuditOtps(otpIdChunk, now);
-        }
+        terminateInChunks(
+                lastId -> onboardingOtpRepository.streamExpiredIds(createdDateExpiredOtp, lastId),
+                ids -> terminateAndAuditOtps(ids, now));
     }
 
     /**
      * Terminate expired processes.
      */
-    @Transactional
     public void terminateExpiredProcesses() {
         final Date now = new Date();
         final Duration processExpiration = onboardingConfig.getProcessExpirationTime();
         final Date createdDateExpiredProcesses = DateUtil.convertExpirationToCreatedDate(processExpiration);
-        final List<String> ids = onboardingProcessRepository.findActiveByTimestampWithLock(createdDateExpiredProcesses);
-        if (ids.isEmpty()) {
+        final int count = terminateInChunks(
+                lastId -> onboardingProcessRepository.streamActiveByTimestampWithLock(createdDateExpiredProcesses, lastId),
+                ids -> {
+                    logger.info("Terminating {} expired processes", ids.size());
+                    terminateAndAuditProcesses(ids, now, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ONBOARDING, ErrorOrigin.PROCESS_LIMIT_CHECK);
+                });
+        if (count == 0) {
             logger.debug("No expired process to terminate");
-            return;
-        }
-        logger.info("Terminating {} expired processes", ids.size());
-        for (List<String> idsChunk : ListUtils.partition(ids, BATCH_SIZE)) {
-            terminateAndAuditProcesses(idsChunk, now, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ONBOARDING, ErrorOrigin.PROCESS_LIMIT_CHECK);
         }
     }
 
@@ -151,44 +170,85 @@ class CleaningService {
      */
     @Transactional
     public void cleanupLargeDocuments() {
-        documentDataRepository.cleanupDocumentData(getDataRetentionTime());
+        documentDataService.cleanup(getDataRetentionTime());
     }
 
     /**
-     * Terminate expired document verifications.
+     * Cleanup of document data left in the store without any record, e.g. of rolled back uploads.
      */
-    @Transactional
-    public void terminateExpiredDocumentVerifications() {
-        final List<String> ids = documentVerificationRepository
-                .findExpiredVerifications(getVerificationExpirationTime(), DocumentStatus.ALL_NOT_FINISHED);
-        if (ids.isEmpty()) {
-            logger.debug("No expired document verification to terminate");
-            return;
+    public void cleanupUnreferencedDocumentData() {
+        final int count = documentDataService.deleteUnreferencedData();
+        if (count > 0) {
+            logger.info("Deleted {} unreferenced document data", count);
         }
+    }
 
+    /**
+     * Terminate expired document verifications.
+     */
+    public void terminateExpiredDocumentVerifications() {
+        final Date verificationExpirationTime = getVerificationExpirationTime();
         final Date now = new Date();
-        for (List<String> idsChunk : ListUtils.partition(ids, BATCH_SIZE)) {
-            logger.info("Terminating {} expired document verifications", idsChunk.size());
-            terminateAndAuditDocuments(idsChunk, now, ERROR_MESSAGE_DOCUMENT_VERIFICATION_EXPIRED, ErrorOrigin.PROCESS_LIMIT_CHECK);
+        final int count = terminateInChunks(
+                lastId -> documentVerificationRepository.streamExpiredVerifications(verificationExpirationTime, DocumentStatus.ALL_NOT_FINISHED, lastId),
+                ids -> {
+                    logger.info("Terminating {} expired document verifications", ids.size());
+                    terminateAndAuditDocuments(ids, now, ERROR_MESSAGE_DOCUMENT_VERIFICATION_EXPIRED, ErrorOrigin.PROCESS_LIMIT_CHECK);
+                });
+        if (count == 0) {
+            logger.debug("No expired document verification to terminate");
         }
     }
 
     /**
      * Terminate expired identity verifications.
      */
-    @Transactional
     public void terminateExpiredIdentityVerifications() {
-        final List<String> ids = identityVerificationRepository.findNotCompletedIdentityVerifications(getVerificationExpirationTime());
-        if (ids.isEmpty()) {
+        final Date verificationExpirationTime = getVerificationExpirationTime();
+        final Date now = new Date();
+        final int count = terminateInChunks(
+                lastId -> identityVerificationRepository.streamNotCompletedIdentityVerifications(verificationExpirationTime, lastId),
+                ids -> {
+                    logger.info("Terminating {} expired identity verifications", ids.size());
+                    terminateAndAuditIdentityVerifications(ids, now, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ONBOARDING, ErrorOrigin.PROCESS_LIMIT_CHECK);
+                });
+        if (count == 0) {
             logger.debug("No expired identity verification to terminate");
-            return;
         }
-        final Date now = new Date();
-        final ErrorOrigin errorOrigin = ErrorOrigin.PROCESS_LIMIT_CHECK;
+    }
 
-        for (List<String> idsChunk : ListUtils.partition(ids, BATCH_SIZE)) {
-            logger.info("Terminating {} expired identity verifications", idsChunk.size());
-            terminateAndAuditIdentityVerifications(idsChunk, now, OnboardingProcessEntity.ERROR_PROCESS_EXPIRED_ONBOARDING, errorOrigin);
+    /**
+     * Terminate the rows in chunks. Each chunk is fetched, locked, terminated and committed in its own transaction,
+     * so the count of the rows held in memory and locked does not depend on the count of the expired rows.
+     * Only the chunk is read from the stream of locked IDs, the rows are locked as they are fetched.
+     *
+     * @param fetcher Fetcher of a stream of locked IDs following the given ID.
+     * @param terminator Terminator of the chunk IDs.
+     * @return Count of terminated rows.
+     */
+    private int terminateInChunks(final Function<String, Stream<String>> fetcher, final Consumer<List<String>> terminator) {
+        String lastId = "";
+        int count = 0;
+        while (true) {
+            final String fromId = lastId;
+            final List<String> ids = transactionTemplate.execute(status -> {
+                final List<String> chunk;
+                try (Stream<String> stream = fetcher.apply(fromId)) {
+                    chunk = stream.limit(batchSize).toList();
+                }
+                if (!chunk.isEmpty()) {
+                    terminator.accept(chunk);
+                }
+                return chunk;
+            });
+            if (ids == null || ids.isEmpty()) {
+                return count;
+            }
+            count += ids.size();
+            if (ids.size() < batchSize) {
+                return count;
+            }
+            lastId = ids.get(ids.size() - 1);
         }
     }
 
@@ -201,70 +261,42 @@ class CleaningService {
     }
 
     private void terminateProcessesAndRelatedEntities(final List<String> processIds, final String errorDetail) {
-        if (processIds.isEmpty()) {
-            logger.debug("No process to terminate");
-            return;
-        }
-
         final Date now = new Date();
         final ErrorOrigin errorOrigin = ErrorOrigin.PROCESS_LIMIT_CHECK;
 
-        for (List<String> processIdChunk : ListUtils.partition(processIds, BATCH_SIZE)) {
-            logger.info("Terminating {} processes", processIdChunk.size());
-            terminateAndAuditProcesses(processIdChunk, now, errorDetail, errorOrigin);
+        logger.info("Terminating {} processes", processIds.size());
+        terminateAndAuditProcesses(processIds, now, errorDetail, errorOrigin);
 
-            final List<String> identityVerificationIds = identityVerificationRepository.findNotCompletedIdentityVerifications(processIdChunk);
-            logger.info("Terminating {} identity verifications", identityVerificationIds.size());
-            terminateAndAuditIdentityVerifications(identityVerificationIds, now, errorDetail, errorOrigin);
+        final List<String> identityVerificationIds = identityVerificationRepository.findNotCompletedIdentityVerifications(processIds);
+        logger.info("Terminating {} identity verifications", identityVerificationIds.size());
+        terminateAndAuditIdentityVerifications(identityVerificationIds, now, errorDetail, errorOrigin);
 
-            final List<String> documentVerificationIds = documentVerificationRepository.findDocumentVerifications(identityVerificationIds, DocumentStatus.ALL_NOT_FINISHED);
-            logger.info("Terminating {} document verifications", documentVerificationIds.size());
-            terminateAndAuditDocuments(documentVerificationIds, now, errorDetail, errorOrigin);
-        }
+        final List<String> documentVerificationIds = documentVerificationRepository.findDocumentVerifications(identityVerificationIds, DocumentStatus.ALL_NOT_FINISHED);
+        logger.info("Terminating {} document verifications", documentVerificationIds.size());
+        terminateAndAuditDocuments(documentVerificationIds, now, errorDetail, errorOrigin);
     }
 
     private void terminateAndAuditProcesses(final List<String> processIds, final Date now, final String errorDetail, final ErrorOrigin errorOrigin) {
         onboardingProcessRepository.terminate(processIds, now, errorDetail, errorOrigin);
-        processIds.forEach(processId ->
-            onboardingProcessRepository.findById(processId).ifPresent(process ->
-                    auditService.audit(process, "Expired process for user: {}, {}", process.getUserId(), errorDetail)));
+        onboardingProcessRepository.findAuditProjections(processIds).forEach(process ->
+                auditService.audit(process, "Expired process for user: {}, {}", process.getUserId(), errorDetail));
     }
 
     private void terminateAndAuditIdentityVerifications(final List<String> identityVerificationIds, final Date now, final String errorDetail, final ErrorOrigin errorOrigin) {
         identityVerificationRepository.terminate(identityVerificationIds, now, errorDetail, errorOrigin);
-        identityVerificationIds.forEach(identityVerificationId ->
-                identityVerificationRepository.findById(identityVerificationId).ifPresent(identityVerification ->
-                        auditService.audit(identityVerification, "Expired identity verification for user: {}, {}", identityVerification.getUserId(), errorDetail)));
+        identityVerificationRepository.findAuditProjections(identityVerificationIds).forEach(identityVerification ->
+                auditService.audit(identityVerification, "Expired identity verification for user: {}, {}", identityVerification.getUserId(), errorDetail));
     }
 
     private void terminateAndAuditOtps(final List<String> otpIds, final Date now) {
         onboardingOtpRepository.terminate(otpIds, now);
-        otpIds.forEach(otpId ->
-                onboardingOtpRepository.findById(otpId).ifPresent(otp ->
-                        auditService.audit(otp, "Expired OTP for user: {}", otp.getProcess().getUserId())));
+        onboardingOtpRepository.findAuditProjections(otpIds).forEach(otp ->
+                auditService.audit(otp, "Expired OTP for user: {}", otp.getUserId()));
     }
 
     private void terminateAndAuditDocuments(final List<String> documentIds, final Date now, final String errorDetail, final ErrorOrigin errorOrigin) {
         documentVerificationRepository.terminate(documentIds, now, errorDetail, errorOrigin);
-        documentIds.forEach(documentId ->
-                documentVerificationRepository.findById(documentId).ifPresent(document ->
-                        auditService.audit(document, "Expired Document verification for user: {}, {}", document.getIdentityVerification().getUserId(), errorDetail)));
-    }
-
-    protected static final class ListUtils {
-
-        private ListUtils() {
-            throw new IllegalStateException("Utility class");
-        }
-
-        public static Collection<List<String>> partition(final List<String> source, final int partitionSize) {
-            if (source.size() <= partitionSize) {
-                return List.of(source);
-            }
-            return IntStream.range(0, source.size())
-                    .boxed()
-                    .collect(Collectors.groupingBy(partition -> (partition / partitionSize), Collectors.mapping(source::get, Collectors.toList())))
-                    .values();
-        }
+        documentVerificationRepository.findAuditProjections(documentIds).forEach(document ->
+                auditService.audit(document, "Expired Document verification for user: {}, {}", document.getUserId(), errorDetail));
     }
 }
@@ -99,6 +99,17 @@ public class CleaningTask {
         cleaningService.cleanupLargeDocuments();
     }
 
+    /**
+     * Cleanup of document data not referenced by any document.
+     */
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT30S")
+    @SchedulerLock(name = SchedulerLockNames.UNREFERENCED_DOCUMENT_DATA_LOCK, lockAtMostFor = "30m")
+    public void cleanupUnreferencedDocumentData() {
+        LockAssert.assertLocked();
+        logger.debug("cleanupUnreferencedDocumentData");
+        cleaningService.cleanupUnreferencedDocumentData();
+    }
+
     @Scheduled(fixedDelayString = "PT10M", initialDelayString = "PT20S")
     @SchedulerLock(name = SchedulerLockNames.EXPIRE_DOCUMENT_VERIFICATION_LOCK, lockAtMostFor = "5m")
     public void terminateExpiredDocumentVerifications() {
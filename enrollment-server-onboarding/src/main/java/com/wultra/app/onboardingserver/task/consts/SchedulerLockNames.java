@@ -32,6 +32,8 @@ public final class SchedulerLockNames {
 
     public static final String ONBOARDING_PROCESS_LOCK = "onboardingProcessLock";
 
+    public static final String ONBOARDING_EVENT_LOCK = "onboardingEventLock";
+
     public static final String ONBOARDING_OTP_LOCK = "onboardingOtpLock";
 
     public static final String DOCUMENT_SUBMIT_SYNC_LOCK = "documentSubmitCheckLock";
@@ -42,6 +44,8 @@ public final class SchedulerLockNames {
 
     public static final String LARGE_DOCUMENT_DATA_LOCK = "largeDocumentDataLock";
 
+    public static final String UNREFERENCED_DOCUMENT_DATA_LOCK = "unreferencedDocumentDataLock";
+
     public static final String EXPIRE_DOCUMENT_VERIFICATION_LOCK = "expireDocumentVerificationLock";
 
     public static final String CLEANUP_ACTIVATIONS_LOCK = "cleanupActivationsLock";
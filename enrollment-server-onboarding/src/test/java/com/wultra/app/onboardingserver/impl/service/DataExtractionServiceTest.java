@@ -0,0 +1,184 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service;
+
+import com.wultra.app.enrollmentserver.model.Document;
+import com.wultra.app.onboardingserver.api.errorhandling.DocumentVerificationException;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.errorhandling.DocumentExtractionLimitException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link DataExtractionService}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class DataExtractionServiceTest {
+
+    private final IdentityVerificationConfig identityVerificationConfig = new IdentityVerificationConfig();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DataExtractionService tested = new DataExtractionService(identityVerificationConfig, meterRegistry);
+
+    @BeforeEach
+    void setUp() {
+        identityVerificationConfig.setDocumentExtractionMaxEntrySize(DataSize.ofBytes(100));
+        identityVerificationConfig.setDocumentExtractionMaxTotalSize(DataSize.ofBytes(150));
+        identityVerificationConfig.setDocumentExtractionMaxEntries(3);
+        identityVerificationConfig.setDocumentExtractionMaxCompressionRatio(100);
+    }
+
+    @Test
+    void testExtractDocuments() throws Exception {
+        final byte[] archive = createArchive(true, "front.jpg", new byte[10], "back.jpg", new byte[20]);
+
+        final List<Document> result = tested.extractDocuments(archive);
+
+        assertEquals(2, result.size());
+        assertEquals("front.jpg", result.get(0).getFilename());
+        assertEquals(10, result.get(0).getData().length);
+        assertEquals("back.jpg", result.get(1).getFilename());
+        assertEquals(20, result.get(1).getData().length);
+
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.entries").summary().count());
+        assertEquals(30, meterRegistry.get("enrollment.onboarding.document.extraction.uncompressed.size").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.duration").tag("result", "success").timer().count());
+    }
+
+    @Test
+    void testExtractDocuments_unknownSize() throws Exception {
+        final byte[] archive = createArchive(false, "front.jpg", new byte[10]);
+
+        final List<Document> result = tested.extractDocuments(archive);
+
+        assertEquals(1, result.size());
+        assertEquals(10, result.get(0).getData().length);
+    }
+
+    @Test
+    void testExtractDocuments_consumer() throws Exception {
+        final byte[] archive = createArchive(false, "front.jpg", new byte[10], "back.jpg", new byte[20]);
+        final List<String> filenames = new ArrayList<>();
+
+        final int count = tested.extractDocuments(archive, (filename, size, data) -> {
+            filenames.add(filename);
+            data.transferTo(OutputStream.nullOutputStream());
+        });
+
+        assertEquals(2, count);
+        assertEquals(List.of("front.jpg", "back.jpg"), filenames);
+    }
+
+    @Test
+    void testExtractDocuments_entryTooLarge() throws Exception {
+        final byte[] archive = createArchive(false, "front.jpg", new byte[101]);
+
+        assertThrows(DocumentExtractionLimitException.class, () -> tested.extractDocuments(archive));
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.rejected").tag("limit", "entry_size").counter().count());
+    }
+
+    @Test
+    void testExtractDocuments_declaredEntryTooLarge() throws Exception {
+        final byte[] archive = createArchive(true, "front.jpg", new byte[101]);
+
+        assertThrows(DocumentExtractionLimitException.class, () -> tested.extractDocuments(archive, (filename, size, data) ->
+                fail("Document exceeding the declared size limit must not be consumed")));
+    }
+
+    @Test
+    void testExtractDocuments_totalTooLarge() throws Exception {
+        final byte[] archive = createArchive(false, "front.jpg", new byte[80], "back.jpg", new byte[80]);
+
+        assertThrows(DocumentExtractionLimitException.class, () -> tested.extractDocuments(archive));
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.rejected").tag("limit", "total_size").counter().count());
+    }
+
+    @Test
+    void testExtractDocuments_tooManyEntries() throws Exception {
+        final byte[] archive = createArchive(false, "1.jpg", new byte[1], "2.jpg", new byte[1], "3.jpg", new byte[1], "4.jpg", new byte[1]);
+
+        assertThrows(DocumentExtractionLimitException.class, () -> tested.extractDocuments(archive));
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.rejected").tag("limit", "entries").counter().count());
+    }
+
+    @Test
+    void testExtractDocuments_compressionRatioExceeded() throws Exception {
+        identityVerificationConfig.setDocumentExtractionMaxEntrySize(DataSize.ofMegabytes(10));
+        identityVerificationConfig.setDocumentExtractionMaxTotalSize(DataSize.ofMegabytes(10));
+        final byte[] archive = createArchive(false, "front.jpg", new byte[5 * 1024 * 1024]);
+
+        assertThrows(DocumentExtractionLimitException.class, () -> tested.extractDocuments(archive));
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.rejected").tag("limit", "compression_ratio").counter().count());
+        assertEquals(1, meterRegistry.get("enrollment.onboarding.document.extraction.duration").tag("result", "failure").timer().count());
+    }
+
+    @Test
+    void testExtractDocument_multipleDocuments() throws Exception {
+        final byte[] archive = createArchive(true, "front.jpg", new byte[10], "back.jpg", new byte[20]);
+
+        assertThrows(DocumentVerificationException.class, () -> tested.extractDocument(archive));
+    }
+
+    @Test
+    void testExtractDocuments_missingData() {
+        assertThrows(DocumentVerificationException.class, () -> tested.extractDocuments(null));
+    }
+
+    /**
+     * Create a ZIP archive of the given filename and data pairs.
+     *
+     * @param declareSize Whether to store the entries with the declared size in the local header.
+     * @param entries Filename and data pairs.
+     * @return ZIP archive.
+     */
+    private static byte[] createArchive(final boolean declareSize, final Object... entries) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                final byte[] data = (byte[]) entries[i + 1];
+                final ZipEntry entry = new ZipEntry((String) entries[i]);
+                if (declareSize) {
+                    final CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zos.putNextEntry(entry);
+                zos.write(data);
+                zos.closeEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+}
@@ -26,6 +26,7 @@ import com.wultra.app.onboardingserver.common.database.entity.DocumentResultEnti
 import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
 import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
 import com.wultra.app.onboardingserver.common.service.AuditService;
+import com.wultra.app.onboardingserver.statemachine.service.OnboardingEventQueue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -66,6 +67,9 @@ class IdentityVerificationServiceTest {
     @Mock
     private DocumentVerificationProvider documentVerificationProvider;
 
+    @Mock
+    private OnboardingEventQueue onboardingEventQueue;
+
     @InjectMocks
     private IdentityVerificationService tested;
 
@@ -0,0 +1,153 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import com.wultra.app.onboardingserver.common.database.DocumentDataRepository;
+import com.wultra.app.onboardingserver.common.database.entity.DocumentDataEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link DocumentDataService} with {@link FilesystemDocumentDataStore}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class DocumentDataServiceTest {
+
+    private static final byte[] DATA = "document data".getBytes(StandardCharsets.UTF_8);
+
+    private static final Duration DELETE_GRACE_PERIOD = Duration.ofHours(1);
+
+    @TempDir
+    private Path root;
+
+    private final DocumentDataRepository documentDataRepository = mock(DocumentDataRepository.class);
+
+    private FilesystemDocumentDataStore documentDataStore;
+
+    private DocumentDataService tested;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        documentDataStore = new FilesystemDocumentDataStore(root);
+        tested = new DocumentDataService(documentDataRepository, documentDataStore, DELETE_GRACE_PERIOD);
+        when(documentDataRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testDeleteUnreferencedData_referenced() throws Exception {
+        final String dataReference = save();
+        makeOlderThanGracePeriod(dataReference);
+        when(documentDataRepository.existsByDataReference(dataReference)).thenReturn(true);
+
+        assertEquals(0, tested.deleteUnreferencedData());
+        assertArrayEquals(DATA, documentDataStore.read(dataReference));
+    }
+
+    @Test
+    void testDeleteUnreferencedData_withinGracePeriod() throws Exception {
+        final String dataReference = save();
+
+        assertEquals(0, tested.deleteUnreferencedData());
+        assertArrayEquals(DATA, documentDataStore.read(dataReference));
+    }
+
+    @Test
+    void testDeleteUnreferencedData_afterGracePeriod() throws Exception {
+        final String dataReference = save();
+        makeOlderThanGracePeriod(dataReference);
+
+        assertEquals(1, tested.deleteUnreferencedData());
+        assertThrows(IOException.class, () -> documentDataStore.read(dataReference));
+    }
+
+    @Test
+    void testSave_rollback() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        final String dataReference = save();
+        // the record has never been committed, so it is not referenced
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // a concurrent upload of the same data may reference the file, it is kept during the grace period
+        assertArrayEquals(DATA, documentDataStore.read(dataReference));
+        assertEquals(0, tested.deleteUnreferencedData());
+
+        makeOlderThanGracePeriod(dataReference);
+        assertEquals(1, tested.deleteUnreferencedData());
+        assertThrows(IOException.class, () -> documentDataStore.read(dataReference));
+    }
+
+    @Test
+    void testDeleteById_afterCommit() throws Exception {
+        final String dataReference = save();
+        makeOlderThanGracePeriod(dataReference);
+        when(documentDataRepository.findDataReferencesById("d1")).thenReturn(List.of(dataReference));
+
+        TransactionSynchronizationManager.initSynchronization();
+        tested.deleteById("d1");
+        assertArrayEquals(DATA, documentDataStore.read(dataReference), "Data must be deleted only after commit");
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.clearSynchronization();
+        assertThrows(IOException.class, () -> documentDataStore.read(dataReference));
+    }
+
+    private String save() throws IOException {
+        final DocumentDataEntity documentData = new DocumentDataEntity();
+        return tested.save(documentData, new ByteArrayInputStream(DATA)).getDataReference();
+    }
+
+    private void makeOlderThanGracePeriod(final String dataReference) throws IOException {
+        final FileTime lastModified = FileTime.from(Instant.now().minus(DELETE_GRACE_PERIOD).minusSeconds(60));
+        try (Stream<Path> files = Files.walk(root)) {
+            final Path file = files.filter(it -> it.getFileName().toString().equals(dataReference))
+                    .findFirst()
+                    .orElseThrow();
+            Files.setLastModifiedTime(file, lastModified);
+        }
+    }
+}
@@ -38,6 +38,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -93,7 +94,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(false);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         tested.submitDocuments(identityVerification, request, ownerId);
 
@@ -118,6 +119,44 @@ class DocumentProcessingServiceTest {
                 .containsOnly(DocumentProcessingPhase.UPLOAD);
     }
 
+    @Test
+    void testSubmitDocuments_multipleTypes() throws Exception {
+        final IdentityVerificationEntity identityVerification = identityVerificationRepository.findById("v1").get();
+        assertNotNull(identityVerification);
+
+        final DocumentSubmitRequest.DocumentMetadata passportMetadata = new DocumentSubmitRequest.DocumentMetadata();
+        passportMetadata.setFilename("passport.png");
+        passportMetadata.setType(DocumentType.PASSPORT);
+        final List<DocumentSubmitRequest.DocumentMetadata> metadata = new ArrayList<>(createIdCardMetadata());
+        metadata.add(passportMetadata);
+
+        final Document passportData = new Document();
+        passportData.setData("img3".getBytes());
+        passportData.setFilename("passport.png");
+        final List<Document> data = new ArrayList<>(createIdCardData());
+        data.add(passportData);
+        final OwnerId ownerId = createOwnerId();
+
+        final DocumentSubmitRequest request = new DocumentSubmitRequest();
+        request.setProcessId("p1");
+        request.setResubmit(false);
+        request.setData("files".getBytes());
+        request.setDocuments(metadata);
+        mockExtractDocuments(request.getData(), data);
+
+        final List<DocumentVerificationEntity> result = tested.submitDocuments(identityVerification, request, ownerId);
+        assertEquals(3, result.size());
+
+        final List<DocumentVerificationEntity> documents = documentVerificationRepository.findAll();
+        assertThat(documents)
+                .extracting(DocumentVerificationEntity::getType)
+                .containsExactlyInAnyOrder(DocumentType.ID_CARD, DocumentType.ID_CARD, DocumentType.PASSPORT);
+        assertThat(documents)
+                .extracting(DocumentVerificationEntity::getStatus)
+                .containsOnly(DocumentStatus.VERIFICATION_PENDING);
+        assertEquals(3, documentResultRepository.count());
+    }
+
     @Test
     void testSubmitDocuments_providerThrows() throws Exception {
         final IdentityVerificationEntity identityVerification = identityVerificationRepository.findById("v1").get();
@@ -134,7 +173,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(false);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         tested.submitDocuments(identityVerification, request, ownerId);
 
@@ -172,7 +211,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(false);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         tested.submitDocuments(identityVerification, request, ownerId);
 
@@ -200,7 +239,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(true);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         tested.submitDocuments(identityVerification, request, ownerId);
         List<DocumentVerificationEntity> documents = documentVerificationRepository.findAll();
@@ -224,7 +263,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(true);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         final DocumentSubmitException exception = assertThrows(DocumentSubmitException.class,
                 () -> tested.submitDocuments(identityVerification, request, ownerId));
@@ -247,7 +286,7 @@ class DocumentProcessingServiceTest {
         request.setResubmit(false);
         request.setData("files".getBytes());
         request.setDocuments(metadata);
-        when(dataExtractionService.extractDocuments(request.getData())).thenReturn(data);
+        mockExtractDocuments(request.getData(), data);
 
         final DocumentSubmitException exception = assertThrows(DocumentSubmitException.class,
                 () -> tested.submitDocuments(identityVerification, request, ownerId));
@@ -280,6 +319,16 @@ class DocumentProcessingServiceTest {
         return List.of(documentPage1, documentPage2);
     }
 
+    private void mockExtractDocuments(final byte[] requestData, final List<Document> documents) throws Exception {
+        when(dataExtractionService.extractDocuments(eq(requestData), any())).thenAnswer(invocation -> {
+            final DataExtractionService.DocumentConsumer consumer = invocation.getArgument(1);
+            for (Document document : documents) {
+                consumer.accept(document.getFilename(), document.getData().length, new ByteArrayInputStream(document.getData()));
+            }
+            return documents.size();
+        });
+    }
+
     private OwnerId createOwnerId() {
         final OwnerId ownerId = new OwnerId();
         ownerId.setActivationId("a1");
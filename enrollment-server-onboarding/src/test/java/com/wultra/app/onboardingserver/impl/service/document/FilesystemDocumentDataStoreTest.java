@@ -0,0 +1,101 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.document;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link FilesystemDocumentDataStore}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class FilesystemDocumentDataStoreTest {
+
+    private static final byte[] DATA = "document data".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    private FilesystemDocumentDataStore tested;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tested = new FilesystemDocumentDataStore(root);
+    }
+
+    @Test
+    void testWriteAndRead() throws Exception {
+        final String dataReference = tested.write(new ByteArrayInputStream(DATA));
+
+        assertArrayEquals(DATA, tested.read(dataReference));
+    }
+
+    @Test
+    void testWrite_sameData() throws Exception {
+        final String dataReference1 = tested.write(new ByteArrayInputStream(DATA));
+        final String dataReference2 = tested.write(new ByteArrayInputStream(DATA));
+
+        assertEquals(dataReference1, dataReference2);
+    }
+
+    @Test
+    void testDelete() throws Exception {
+        final String dataReference = tested.write(new ByteArrayInputStream(DATA));
+
+        assertTrue(tested.delete(dataReference, Instant.now().plusSeconds(1)));
+        assertThrows(IOException.class, () -> tested.read(dataReference));
+        assertFalse(tested.delete(dataReference, Instant.now().plusSeconds(1)));
+    }
+
+    @Test
+    void testDelete_writtenAgain() throws Exception {
+        final String dataReference = tested.write(new ByteArrayInputStream(DATA));
+
+        assertFalse(tested.delete(dataReference, Instant.now().minusSeconds(60)));
+        assertArrayEquals(DATA, tested.read(dataReference));
+    }
+
+    @Test
+    void testFindWrittenBefore() throws Exception {
+        final String dataReference = tested.write(new ByteArrayInputStream(DATA));
+
+        try (Stream<String> dataReferences = tested.findWrittenBefore(Instant.now().plusSeconds(1))) {
+            assertEquals(List.of(dataReference), dataReferences.toList());
+        }
+        try (Stream<String> dataReferences = tested.findWrittenBefore(Instant.now().minusSeconds(60))) {
+            assertEquals(List.of(), dataReferences.toList());
+        }
+    }
+
+    @Test
+    void testRead_invalidReference() {
+        assertThrows(IllegalArgumentException.class, () -> tested.read("../secret"));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.verification;
+
+import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test for {@link VerificationCheckBackoff}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class VerificationCheckBackoffTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:00:00Z");
+
+    private VerificationCheckBackoff tested;
+
+    @BeforeEach
+    void setUp() {
+        final IdentityVerificationConfig config = new IdentityVerificationConfig();
+        config.setVerificationBackoffMinDelay(Duration.ofSeconds(5));
+        config.setVerificationBackoffMaxDelay(Duration.ofMinutes(5));
+        config.setVerificationBackoffMultiplier(0.5);
+        tested = new VerificationCheckBackoff(config, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testScheduleNextCheck_minDelay() {
+        assertEquals(NOW.plusSeconds(5), scheduleNextCheck(Duration.ofSeconds(2)));
+    }
+
+    @Test
+    void testScheduleNextCheck_proportionalDelay() {
+        assertEquals(NOW.plusSeconds(60), scheduleNextCheck(Duration.ofMinutes(2)));
+    }
+
+    @Test
+    void testScheduleNextCheck_maxDelay() {
+        assertEquals(NOW.plus(Duration.ofMinutes(5)), scheduleNextCheck(Duration.ofHours(1)));
+    }
+
+    private Instant scheduleNextCheck(final Duration age) {
+        final DocumentVerificationEntity docVerification = new DocumentVerificationEntity();
+        docVerification.setTimestampCreated(Date.from(NOW.minus(age)));
+        tested.scheduleNextCheck(docVerification);
+        return docVerification.getTimestampNextCheck().toInstant();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.impl.service.verification;
+
+import com.wultra.app.enrollmentserver.model.enumeration.DocumentStatus;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
+import com.wultra.app.onboardingserver.api.provider.DocumentVerificationProvider;
+import com.wultra.app.onboardingserver.common.database.DocumentResultRepository;
+import com.wultra.app.onboardingserver.common.database.DocumentVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.entity.DocumentVerificationEntity;
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.common.errorhandling.RemoteCommunicationException;
+import com.wultra.app.onboardingserver.common.service.AuditService;
+import com.wultra.app.onboardingserver.common.service.CommonOnboardingService;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.impl.service.IdentityVerificationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for {@link VerificationProcessingBatchService}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class VerificationProcessingBatchServiceTest {
+
+    @Mock
+    private DocumentResultRepository documentResultRepository;
+
+    @Mock
+    private DocumentVerificationRepository documentVerificationRepository;
+
+    @Mock
+    private IdentityVerificationRepository identityVerificationRepository;
+
+    @Mock
+    private DocumentVerificationProvider documentVerificationProvider;
+
+    @Mock
+    private IdentityVerificationService identityVerificationService;
+
+    @Mock
+    private VerificationProcessingService verificationProcessingService;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private CommonOnboardingService commonOnboardingService;
+
+    @Mock
+    private IdentityVerificationConfig identityVerificationConfig;
+
+    @Mock
+    private VerificationCheckBackoff verificationCheckBackoff;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private VerificationProcessingBatchService tested;
+
+    @BeforeEach
+    void setUp() {
+        tested = new VerificationProcessingBatchService(documentResultRepository, documentVerificationRepository, identityVerificationRepository,
+                documentVerificationProvider, identityVerificationService, verificationProcessingService, auditService, commonOnboardingService,
+                identityVerificationConfig, verificationCheckBackoff, transactionManager, Runnable::run);
+    }
+
+    @Test
+    void testCheckDocumentsVerifications_chunks() throws Exception {
+        when(identityVerificationConfig.getVerificationBatchChunkSize()).thenReturn(2);
+        when(identityVerificationConfig.getVerificationBatchTimeBudget()).thenReturn(Duration.ofMinutes(1));
+
+        final Date timestamp1 = new Date(1_000);
+        final Date timestamp2 = new Date(2_000);
+        final IdentityVerificationEntity iv1 = createIdentityVerification("v1", timestamp1);
+        final IdentityVerificationEntity iv2 = createIdentityVerification("v2", timestamp2);
+        final IdentityVerificationEntity iv3 = createIdentityVerification("v3", timestamp2);
+
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), eq(new Date(0)), eq(""), any(), eq(Limit.of(2))))
+                .thenReturn(List.of(iv1, iv2));
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), eq(timestamp2), eq("v2"), any(), eq(Limit.of(2))))
+                .thenReturn(List.of(iv3));
+        for (IdentityVerificationEntity iv : List.of(iv1, iv2, iv3)) {
+            when(identityVerificationRepository.findById(iv.getId())).thenReturn(Optional.of(iv));
+        }
+        when(identityVerificationService.fetchVerificationResults(any(), any())).thenReturn(Map.of());
+
+        tested.checkDocumentsVerifications();
+
+        verify(identityVerificationService, times(3)).processVerificationResults(any(), any(), eq(Map.of()));
+        // two chunks and three results
+        verify(transactionManager, times(5)).commit(any());
+    }
+
+    @Test
+    void testCheckDocumentsVerifications_providerFailure() throws Exception {
+        when(identityVerificationConfig.getVerificationBatchChunkSize()).thenReturn(2);
+        when(identityVerificationConfig.getVerificationBatchTimeBudget()).thenReturn(Duration.ofMinutes(1));
+
+        final IdentityVerificationEntity iv1 = createIdentityVerification("v1", new Date(1_000));
+        final IdentityVerificationEntity iv2 = createIdentityVerification("v2", new Date(2_000));
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(iv1, iv2));
+        when(identityVerificationRepository.findById("v2")).thenReturn(Optional.of(iv2));
+        when(identityVerificationService.fetchVerificationResults(any(), eq(iv1))).thenThrow(new RemoteCommunicationException("test"));
+        when(identityVerificationService.fetchVerificationResults(any(), eq(iv2))).thenReturn(Map.of());
+
+        tested.checkDocumentsVerifications();
+
+        verify(identityVerificationService, never()).processVerificationResults(any(), eq(iv1), any());
+        verify(identityVerificationService).processVerificationResults(any(), eq(iv2), any());
+    }
+
+    @Test
+    void testCheckDocumentsVerifications_providerUnexpectedFailure() throws Exception {
+        when(identityVerificationConfig.getVerificationBatchChunkSize()).thenReturn(2);
+        when(identityVerificationConfig.getVerificationBatchTimeBudget()).thenReturn(Duration.ofMinutes(1));
+
+        final IdentityVerificationEntity iv1 = createIdentityVerification("v1", new Date(1_000));
+        final IdentityVerificationEntity iv2 = createIdentityVerification("v2", new Date(2_000));
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(iv1, iv2));
+        when(identityVerificationRepository.findById("v2")).thenReturn(Optional.of(iv2));
+        when(identityVerificationService.fetchVerificationResults(any(), eq(iv1))).thenThrow(new IllegalStateException("test"));
+        when(identityVerificationService.fetchVerificationResults(any(), eq(iv2))).thenReturn(Map.of());
+
+        tested.checkDocumentsVerifications();
+
+        verify(identityVerificationService, never()).processVerificationResults(any(), eq(iv1), any());
+        verify(identityVerificationService).processVerificationResults(any(), eq(iv2), any());
+    }
+
+    @Test
+    void testCheckDocumentsVerifications_timeBudgetExhausted() throws Exception {
+        when(identityVerificationConfig.getVerificationBatchChunkSize()).thenReturn(1);
+        when(identityVerificationConfig.getVerificationBatchTimeBudget()).thenReturn(Duration.ZERO);
+
+        final IdentityVerificationEntity iv1 = createIdentityVerification("v1", new Date(1_000));
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(iv1));
+        when(identityVerificationRepository.findById("v1")).thenReturn(Optional.of(iv1));
+        when(identityVerificationService.fetchVerificationResults(any(), any())).thenReturn(Map.of());
+
+        tested.checkDocumentsVerifications();
+
+        verify(identityVerificationRepository, times(1)).findInProgressDocumentsVerifications(any(), any(), any(), any(), any());
+        verify(identityVerificationService).processVerificationResults(any(), eq(iv1), any());
+    }
+
+    @Test
+    void testCheckDocumentsVerifications_scheduleNextCheck() throws Exception {
+        when(identityVerificationConfig.getVerificationBatchChunkSize()).thenReturn(2);
+        when(identityVerificationConfig.getVerificationBatchTimeBudget()).thenReturn(Duration.ofMinutes(1));
+
+        final IdentityVerificationEntity iv1 = createIdentityVerification("v1", new Date(1_000));
+        when(identityVerificationRepository.findInProgressDocumentsVerifications(any(), any(), any(), any(), any()))
+                .thenReturn(List.of(iv1));
+        when(identityVerificationRepository.findById("v1")).thenReturn(Optional.of(iv1));
+        when(identityVerificationService.fetchVerificationResults(any(), any())).thenReturn(Map.of());
+        final DocumentVerificationEntity docVerification = new DocumentVerificationEntity();
+        docVerification.setId("d1");
+        when(documentVerificationRepository.findAllDocumentVerifications(iv1, List.of(DocumentStatus.VERIFICATION_IN_PROGRESS)))
+                .thenReturn(List.of(docVerification));
+
+        tested.checkDocumentsVerifications();
+
+        verify(verificationCheckBackoff).scheduleNextCheck(docVerification);
+        verify(documentVerificationRepository).saveAll(List.of(docVerification));
+    }
+
+    private static IdentityVerificationEntity createIdentityVerification(final String id, final Date timestampLastUpdated) {
+        final IdentityVerificationEntity identityVerification = new IdentityVerificationEntity();
+        identityVerification.setId(id);
+        identityVerification.setActivationId("a-" + id);
+        identityVerification.setUserId("u-" + id);
+        identityVerification.setPhase(IdentityVerificationPhase.DOCUMENT_VERIFICATION);
+        identityVerification.setStatus(IdentityVerificationStatus.IN_PROGRESS);
+        identityVerification.setTimestampCreated(new Date(0));
+        identityVerification.setTimestampLastUpdated(timestampLastUpdated);
+        return identityVerification;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine;
+
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
+import com.wultra.app.onboardingserver.EnrollmentServerTestApplication;
+import com.wultra.app.onboardingserver.common.errorhandling.IdentityVerificationException;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link EnrollmentStateProvider}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@SpringBootTest(classes = EnrollmentServerTestApplication.class)
+@ActiveProfiles("test")
+class EnrollmentStateProviderTest {
+
+    @Autowired
+    private EnrollmentStateProvider tested;
+
+    @Test
+    void testFindByPhaseAndStatus() throws Exception {
+        for (OnboardingState state : OnboardingState.values()) {
+            if (!state.isChoiceState()) {
+                assertEquals(state, tested.findByPhaseAndStatus(state.getPhase(), state.getStatus()));
+            }
+        }
+    }
+
+    @Test
+    void testFindByPhaseAndStatus_unknown() {
+        final IdentityVerificationException exception = assertThrows(IdentityVerificationException.class, () ->
+                tested.findByPhaseAndStatus(IdentityVerificationPhase.OTP_VERIFICATION, IdentityVerificationStatus.ACCEPTED));
+        assertEquals("Unknown state for phase=OTP_VERIFICATION, status=ACCEPTED", exception.getMessage());
+    }
+
+    @Test
+    void testTransitionGraph() {
+        assertEquals(Set.of(OnboardingEvent.IDENTITY_VERIFICATION_INIT), tested.findAcceptedEvents(OnboardingState.INITIAL));
+        assertEquals(Set.of(OnboardingEvent.OTP_VERIFICATION_RESEND, OnboardingEvent.EVENT_NEXT_STATE),
+                tested.findAcceptedEvents(OnboardingState.OTP_VERIFICATION_PENDING));
+        assertTrue(tested.isEventAccepted(OnboardingState.DOCUMENT_VERIFICATION_ACCEPTED, OnboardingEvent.EVENT_NEXT_STATE));
+        assertFalse(tested.isEventAccepted(OnboardingState.PRESENCE_CHECK_NOT_INITIALIZED, OnboardingEvent.EVENT_NEXT_STATE));
+        assertTrue(tested.findAcceptedEvents(OnboardingState.COMPLETED_ACCEPTED).isEmpty());
+        assertEquals(Optional.of(OnboardingState.CHOICE_DOCUMENT_VERIFICATION_PROCESSING),
+                tested.getTransitionGraph().findTarget(OnboardingState.DOCUMENT_UPLOAD_VERIFICATION_PENDING, OnboardingEvent.EVENT_NEXT_STATE));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine;
+
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link OnboardingTransitionGraph}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class OnboardingTransitionGraphTest {
+
+    @Test
+    void testQuery() {
+        final OnboardingTransitionGraph tested = OnboardingTransitionGraph.of(Map.of(
+                OnboardingState.PRESENCE_CHECK_IN_PROGRESS, Map.of(
+                        OnboardingEvent.PRESENCE_CHECK_INIT, OnboardingState.PRESENCE_CHECK_IN_PROGRESS,
+                        OnboardingEvent.PRESENCE_CHECK_SUBMITTED, OnboardingState.PRESENCE_CHECK_VERIFICATION_PENDING)));
+
+        assertEquals(Optional.of(OnboardingState.PRESENCE_CHECK_VERIFICATION_PENDING),
+                tested.findTarget(OnboardingState.PRESENCE_CHECK_IN_PROGRESS, OnboardingEvent.PRESENCE_CHECK_SUBMITTED));
+        assertTrue(tested.isEventAccepted(OnboardingState.PRESENCE_CHECK_IN_PROGRESS, OnboardingEvent.PRESENCE_CHECK_INIT));
+        assertFalse(tested.isEventAccepted(OnboardingState.PRESENCE_CHECK_IN_PROGRESS, OnboardingEvent.EVENT_NEXT_STATE));
+        assertEquals(Set.of(OnboardingEvent.PRESENCE_CHECK_INIT, OnboardingEvent.PRESENCE_CHECK_SUBMITTED),
+                tested.getAcceptedEvents(OnboardingState.PRESENCE_CHECK_IN_PROGRESS));
+        assertTrue(tested.getAcceptedEvents(OnboardingState.COMPLETED_ACCEPTED).isEmpty());
+    }
+
+    @Test
+    void testTransitionFromChoiceState() {
+        final Map<OnboardingState, Map<OnboardingEvent, OnboardingState>> transitions = Map.of(
+                OnboardingState.CHOICE_OTP_VERIFICATION, Map.of(OnboardingEvent.EVENT_NEXT_STATE, OnboardingState.OTP_VERIFICATION_PENDING));
+
+        final IllegalStateException exception = assertThrows(IllegalStateException.class, () -> OnboardingTransitionGraph.of(transitions));
+        assertEquals("Event EVENT_NEXT_STATE triggers transition from choice state CHOICE_OTP_VERIFICATION", exception.getMessage());
+    }
+
+    @Test
+    void testEmpty() {
+        assertFalse(OnboardingTransitionGraph.empty().isEventAccepted(OnboardingState.INITIAL, OnboardingEvent.IDENTITY_VERIFICATION_INIT));
+    }
+}
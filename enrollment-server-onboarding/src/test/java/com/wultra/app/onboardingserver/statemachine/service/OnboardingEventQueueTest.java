@@ -0,0 +1,180 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine.service;
+
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
+import com.wultra.app.onboardingserver.common.database.OnboardingEventRepository;
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.common.database.entity.OnboardingEventEntity;
+import com.wultra.app.onboardingserver.configuration.IdentityVerificationConfig;
+import com.wultra.app.onboardingserver.statemachine.EnrollmentStateProvider;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for {@link OnboardingEventQueue}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class OnboardingEventQueueTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-01-01T10:00:00Z"), ZoneOffset.UTC);
+
+    @Mock
+    private OnboardingEventRepository onboardingEventRepository;
+
+    @Mock
+    private EnrollmentStateProvider enrollmentStateProvider;
+
+    @Mock
+    private ObjectProvider<StateMachineService> stateMachineServiceProvider;
+
+    @Mock
+    private StateMachineService stateMachineService;
+
+    @Mock
+    private IdentityVerificationConfig identityVerificationConfig;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private OnboardingEventQueue tested;
+
+    @BeforeEach
+    void setUp() {
+        tested = new OnboardingEventQueue(onboardingEventRepository, enrollmentStateProvider,
+                stateMachineServiceProvider, identityVerificationConfig, transactionManager, Runnable::run, CLOCK);
+    }
+
+    @Test
+    void testEnqueueNextState_disabled() {
+        when(identityVerificationConfig.isEventQueueEnabled()).thenReturn(false);
+
+        tested.enqueueNextState(createIdentityVerification());
+
+        verifyNoInteractions(onboardingEventRepository);
+    }
+
+    @Test
+    void testEnqueueNextState_userInteractionRequired() throws Exception {
+        final IdentityVerificationEntity identityVerification = createIdentityVerification();
+        when(identityVerificationConfig.isEventQueueEnabled()).thenReturn(true);
+        when(enrollmentStateProvider.findByPhaseAndStatus(identityVerification.getPhase(), identityVerification.getStatus()))
+                .thenReturn(OnboardingState.OTP_VERIFICATION_PENDING);
+
+        tested.enqueueNextState(identityVerification);
+
+        verifyNoInteractions(onboardingEventRepository);
+    }
+
+    @Test
+    void testEnqueueNextState_dispatched() throws Exception {
+        final IdentityVerificationEntity identityVerification = createIdentityVerification();
+        when(identityVerificationConfig.isEventQueueEnabled()).thenReturn(true);
+        when(enrollmentStateProvider.findByPhaseAndStatus(identityVerification.getPhase(), identityVerification.getStatus()))
+                .thenReturn(OnboardingState.CLIENT_EVALUATION_ACCEPTED);
+        final OnboardingEventEntity event = createEvent();
+        when(onboardingEventRepository.save(any())).thenReturn(event);
+        when(onboardingEventRepository.findById(event.getId())).thenReturn(Optional.of(event));
+        when(onboardingEventRepository.claim(event.getId())).thenReturn(1);
+        when(stateMachineServiceProvider.getIfAvailable()).thenReturn(stateMachineService);
+
+        tested.enqueueNextState(identityVerification);
+
+        verify(stateMachineService).processNextStateEventWithLock(any(), eq("p1"), eq("iv1"), any());
+    }
+
+    @Test
+    void testDispatch_alreadyClaimed() throws Exception {
+        final OnboardingEventEntity event = createEvent();
+        when(onboardingEventRepository.findById(event.getId())).thenReturn(Optional.of(event));
+        when(onboardingEventRepository.claim(event.getId())).thenReturn(0);
+        when(stateMachineServiceProvider.getIfAvailable()).thenReturn(stateMachineService);
+
+        assertFalse(tested.dispatch(event.getId()));
+
+        verifyNoInteractions(stateMachineService);
+    }
+
+    @Test
+    void testDispatch_stateAlreadyMoved() throws Exception {
+        final OnboardingEventEntity event = createEvent();
+        when(onboardingEventRepository.findById(event.getId())).thenReturn(Optional.of(event));
+        when(onboardingEventRepository.claim(event.getId())).thenReturn(1);
+        when(stateMachineService.processNextStateEventWithLock(any(), eq("p1"), eq("iv1"), any())).thenReturn(false);
+        when(stateMachineServiceProvider.getIfAvailable()).thenReturn(stateMachineService);
+
+        assertFalse(tested.dispatch(event.getId()));
+    }
+
+    @Test
+    void testDispatch_processed() throws Exception {
+        final OnboardingEventEntity event = createEvent();
+        when(onboardingEventRepository.findById(event.getId())).thenReturn(Optional.of(event));
+        when(onboardingEventRepository.claim(event.getId())).thenReturn(1);
+        when(stateMachineService.processNextStateEventWithLock(any(), eq("p1"), eq("iv1"), argThat(expectedState ->
+                expectedState.test(OnboardingState.DOCUMENT_VERIFICATION_ACCEPTED) && !expectedState.test(OnboardingState.OTP_VERIFICATION_PENDING))))
+                .thenReturn(true);
+        when(stateMachineServiceProvider.getIfAvailable()).thenReturn(stateMachineService);
+
+        assertTrue(tested.dispatch(event.getId()));
+    }
+
+    private static IdentityVerificationEntity createIdentityVerification() {
+        final IdentityVerificationEntity identityVerification = new IdentityVerificationEntity();
+        identityVerification.setId("iv1");
+        identityVerification.setProcessId("p1");
+        identityVerification.setActivationId("a1");
+        identityVerification.setUserId("u1");
+        identityVerification.setPhase(IdentityVerificationPhase.CLIENT_EVALUATION);
+        identityVerification.setStatus(IdentityVerificationStatus.ACCEPTED);
+        return identityVerification;
+    }
+
+    private static OnboardingEventEntity createEvent() {
+        final OnboardingEventEntity event = new OnboardingEventEntity();
+        event.setId(1L);
+        event.setIdentityVerificationId("iv1");
+        event.setProcessId("p1");
+        event.setActivationId("a1");
+        event.setUserId("u1");
+        event.setEvent(OnboardingEvent.EVENT_NEXT_STATE.name());
+        return event;
+    }
+}
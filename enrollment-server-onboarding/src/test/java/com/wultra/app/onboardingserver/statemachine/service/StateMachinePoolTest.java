@@ -0,0 +1,69 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.onboardingserver.statemachine.service;
+
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationPhase;
+import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
+import com.wultra.app.onboardingserver.EnrollmentServerTestApplication;
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.statemachine.consts.ExtendedStateVariable;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingEvent;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link StateMachinePool}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@SpringBootTest(classes = EnrollmentServerTestApplication.class)
+@ActiveProfiles("test")
+class StateMachinePoolTest {
+
+    @Autowired
+    private StateMachinePool tested;
+
+    @Test
+    void testAcquire_reusesReleasedMachine() {
+        final IdentityVerificationEntity identityVerification = new IdentityVerificationEntity();
+        identityVerification.setPhase(IdentityVerificationPhase.DOCUMENT_UPLOAD);
+        identityVerification.setStatus(IdentityVerificationStatus.IN_PROGRESS);
+
+        final StateMachine<OnboardingState, OnboardingEvent> first = tested.acquire(OnboardingState.DOCUMENT_UPLOAD_IN_PROGRESS, identityVerification);
+        assertEquals(OnboardingState.DOCUMENT_UPLOAD_IN_PROGRESS, first.getState().getId());
+        assertSame(identityVerification, first.getExtendedState().get(ExtendedStateVariable.IDENTITY_VERIFICATION, IdentityVerificationEntity.class));
+        first.setStateMachineError(new IllegalStateException("test"));
+        tested.release(first);
+
+        final StateMachine<OnboardingState, OnboardingEvent> second = tested.acquire(OnboardingState.INITIAL, null);
+        try {
+            assertSame(first, second);
+            assertEquals(OnboardingState.INITIAL, second.getState().getId());
+            assertFalse(second.hasStateMachineError());
+            assertTrue(second.getExtendedState().getVariables().isEmpty());
+        } finally {
+            tested.release(second);
+        }
+    }
+}
@@ -18,15 +18,22 @@
 package com.wultra.app.onboardingserver.statemachine.service;
 
 import com.wultra.app.enrollmentserver.model.enumeration.IdentityVerificationStatus;
+import com.wultra.app.enrollmentserver.model.integration.OwnerId;
 import com.wultra.app.onboardingserver.EnrollmentServerTestApplication;
 import com.wultra.app.onboardingserver.common.database.IdentityVerificationRepository;
+import com.wultra.app.onboardingserver.common.database.entity.IdentityVerificationEntity;
+import com.wultra.app.onboardingserver.statemachine.enums.OnboardingState;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test for {@link StateMachineService}
@@ -51,6 +58,38 @@ class StateMachineServiceTest {
         assertEquals(IdentityVerificationStatus.VERIFICATION_PENDING, repository.findById("v1").get().getStatus());
     }
 
+    @Test
+    @Sql
+    void testChangeMachineStatesInBatch_partitioned() {
+        // process ID 'p4' ends with the hexadecimal digit 4, so it belongs to the partition 0 of 2
+        tested.changeMachineStatesInBatch(1, 2);
+        assertEquals(IdentityVerificationStatus.IN_PROGRESS, repository.findById("v4").get().getStatus());
+
+        tested.changeMachineStatesInBatch(0, 2);
+        assertEquals(IdentityVerificationStatus.VERIFICATION_PENDING, repository.findById("v4").get().getStatus());
+    }
+
+    @Test
+    @Sql("StateMachineServiceTest.testChangeMachineStatesInBatch.sql")
+    void testProcessNextStateEventWithLock() throws Exception {
+        final OwnerId ownerId = new OwnerId();
+        ownerId.setActivationId("a1");
+        ownerId.setUserId("u1");
+
+        assertFalse(tested.processNextStateEventWithLock(ownerId, "p1", "v1", state -> false));
+        assertEquals(IdentityVerificationStatus.IN_PROGRESS, repository.findById("v1").get().getStatus());
+
+        assertTrue(tested.processNextStateEventWithLock(ownerId, "p1", "v1", state -> state == OnboardingState.DOCUMENT_UPLOAD_IN_PROGRESS));
+        assertEquals(IdentityVerificationStatus.VERIFICATION_PENDING, repository.findById("v1").get().getStatus());
+    }
+
+    @Test
+    void testPartitionSuffixes() {
+        assertEquals(List.of("0", "4", "8", "c", "C"), StateMachineService.partitionSuffixes(0, 4));
+        assertEquals(List.of("3", "7", "b", "B", "f", "F"), StateMachineService.partitionSuffixes(3, 4));
+        assertEquals(List.of("f", "F"), StateMachineService.partitionSuffixes(15, 16));
+    }
+
     @Test
     @Sql
     void testChangeMachineStatesInBatch_submitting() {
@@ -67,4 +106,17 @@ class StateMachineServiceTest {
         assertEquals(IdentityVerificationStatus.IN_PROGRESS, repository.findById("v3").get().getStatus());
     }
 
+    @Test
+    @Sql
+    void testFindIdentityVerificationsToChangeState_keyset() {
+        final Date now = new Date();
+
+        final List<IdentityVerificationEntity> firstPage = repository.findIdentityVerificationsToChangeState("keyset", false, List.of(""), new Date(0), "", now, Limit.of(2));
+        assertEquals(List.of("v5", "v6"), firstPage.stream().map(IdentityVerificationEntity::getId).toList());
+
+        final IdentityVerificationEntity last = firstPage.get(1);
+        final List<IdentityVerificationEntity> secondPage = repository.findIdentityVerificationsToChangeState("keyset", false, List.of(""), last.getTimestampLastUpdated(), last.getId(), now, Limit.of(2));
+        assertEquals(List.of("v7"), secondPage.stream().map(IdentityVerificationEntity::getId).toList());
+    }
+
 }
@@ -19,29 +19,32 @@ package com.wultra.app.onboardingserver.task.cleaning;
 
 import com.wultra.app.enrollmentserver.model.enumeration.*;
 import com.wultra.app.onboardingserver.EnrollmentServerTestApplication;
+import com.wultra.app.onboardingserver.common.database.OnboardingOtpRepository;
 import com.wultra.app.onboardingserver.common.database.entity.*;
 import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
 
 import static com.wultra.app.enrollmentserver.model.enumeration.ErrorOrigin.PROCESS_LIMIT_CHECK;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * Test for {@link CleaningService}.
  *
  * @author Lubos Racansky, lubos.racansky@wultra.com
  */
-@SpringBootTest(classes = EnrollmentServerTestApplication.class)
+@SpringBootTest(classes = EnrollmentServerTestApplication.class, properties = "enrollment-server-onboarding.cleaning.batch-size=2")
 @ActiveProfiles("test")
 @Transactional
 class CleaningServiceTest {
@@ -49,6 +52,9 @@ class CleaningServiceTest {
     @Autowired
     private CleaningService tested;
 
+    @SpyBean
+    private OnboardingOtpRepository onboardingOtpRepository;
+
     @Autowired
     private EntityManager entityManager;
 
@@ -136,6 +142,29 @@ class CleaningServiceTest {
         assertEquals(ErrorOrigin.OTP_VERIFICATION, onboardingOtp.getErrorOrigin());
     }
 
+    @Test
+    @Sql
+    void testTerminateExpiredOtpCodes_multipleChunks() {
+        final String id1 = "00000000-0000-0000-0000-000000000001";
+        final String id2 = "00000000-0000-0000-0000-000000000002";
+        final String id3 = "00000000-0000-0000-0000-000000000003";
+        final String id4 = "00000000-0000-0000-0000-000000000004";
+        final String id5 = "00000000-0000-0000-0000-000000000005";
+
+        tested.terminateExpiredOtpCodes();
+
+        assertStatus(id1, OtpStatus.FAILED);
+        assertStatus(id2, OtpStatus.FAILED);
+        assertStatus(id3, OtpStatus.ACTIVE);
+        assertStatus(id4, OtpStatus.FAILED);
+        assertStatus(id5, OtpStatus.FAILED);
+
+        // two full chunks and an empty one terminating the loop, each following the last ID of the previous chunk
+        final ArgumentCaptor<String> lastIdCaptor = ArgumentCaptor.forClass(String.class);
+        verify(onboardingOtpRepository, times(3)).streamExpiredIds(any(), lastIdCaptor.capture());
+        assertEquals(List.of("", id2, id5), lastIdCaptor.getAllValues());
+    }
+
     @Test
     @Sql
     void testTerminateExpiredProcessVerifications() {
@@ -232,30 +261,6 @@ class CleaningServiceTest {
         assertEquals(PROCESS_LIMIT_CHECK, documentVerification.getErrorOrigin());
     }
 
-    @Test
-    void testPartition() {
-        final List<String> source = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
-
-        final Collection<List<String>> result = CleaningService.ListUtils.partition(source, 3);
-
-        assertEquals(3, result.size());
-
-        final Iterator<List<String>> iterator = result.iterator();
-        assertEquals(List.of("a", "b", "c"), iterator.next());
-        assertEquals(List.of("d", "e", "f"), iterator.next());
-        assertEquals(List.of("g", "h"), iterator.next());
-    }
-
-    @Test
-    void testPartition_tooSmall() {
-        final List<String> source = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h");
-
-        final Collection<List<String>> result = CleaningService.ListUtils.partition(source, 10);
-
-        assertEquals(1, result.size());
-        assertEquals(List.of("a", "b", "c", "d", "e", "f", "g", "h"), result.iterator().next());
-    }
-
     private void assertStatus(final String id, final DocumentStatus status) {
         final DocumentVerificationEntity documentVerification = fetchDocumentVerification(id);
         assertEquals(status, documentVerification.getStatus(), "status of " + id);
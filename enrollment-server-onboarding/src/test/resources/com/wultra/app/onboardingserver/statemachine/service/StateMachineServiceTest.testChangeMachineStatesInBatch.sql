@@ -1,3 +1,6 @@
+INSERT INTO es_onboarding_process(id, identification_data, status, activation_id, error_score, custom_data, timestamp_created) VALUES
+    ('p1', '{}', 'VERIFICATION_IN_PROGRESS', 'a1', 0, '{}', now());
+
 INSERT INTO es_identity_verification(id, activation_id, user_id, process_id, status, phase, timestamp_created, timestamp_last_updated) VALUES
     ('v1', 'a1', 'u1', 'p1', 'IN_PROGRESS', 'DOCUMENT_UPLOAD', now(), now());
 
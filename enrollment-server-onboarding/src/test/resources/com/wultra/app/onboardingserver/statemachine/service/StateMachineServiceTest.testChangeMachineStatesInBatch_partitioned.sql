@@ -0,0 +1,9 @@
+INSERT INTO es_onboarding_process(id, identification_data, status, activation_id, error_score, custom_data, timestamp_created) VALUES
+    ('p4', '{}', 'VERIFICATION_IN_PROGRESS', 'a4', 0, '{}', now());
+
+INSERT INTO es_identity_verification(id, activation_id, user_id, process_id, status, phase, timestamp_created, timestamp_last_updated) VALUES
+    ('v4', 'a4', 'u4', 'p4', 'IN_PROGRESS', 'DOCUMENT_UPLOAD', now(), now());
+
+-- document already submitted to 'mock' provider
+INSERT INTO es_document_verification(id, activation_id, identity_verification_id, type, provider_name, status, filename, used_for_verification, timestamp_created, timestamp_last_updated) VALUES
+    ('doc4', 'a4', 'v4', 'ID_CARD', 'mock', 'VERIFICATION_PENDING', 'f4', true, now(), now());
@@ -0,0 +1,11 @@
+INSERT INTO es_identity_verification(id, activation_id, user_id, process_id, status, phase, timestamp_created, timestamp_last_updated) VALUES
+    ('v5', 'a5', 'u5', 'p5', 'VERIFICATION_PENDING', 'DOCUMENT_UPLOAD', now() - interval '3' minute, now() - interval '2' minute),
+    ('v6', 'a6', 'u6', 'p6', 'VERIFICATION_PENDING', 'DOCUMENT_UPLOAD', now() - interval '3' minute, now() - interval '2' minute),
+    ('v7', 'a7', 'u7', 'p7', 'VERIFICATION_PENDING', 'DOCUMENT_UPLOAD', now() - interval '3' minute, now() - interval '1' minute),
+    ('v8', 'a8', 'u8', 'p8', 'IN_PROGRESS', 'OTP_VERIFICATION', now() - interval '3' minute, now() - interval '1' minute); -- not eligible state
+
+INSERT INTO es_document_verification(id, activation_id, identity_verification_id, type, provider_name, status, filename, used_for_verification, timestamp_created, timestamp_last_updated) VALUES
+    ('doc5', 'a5', 'v5', 'ID_CARD', 'keyset', 'VERIFICATION_PENDING', 'f5', true, now(), now()),
+    ('doc6', 'a6', 'v6', 'ID_CARD', 'keyset', 'VERIFICATION_PENDING', 'f6', true, now(), now()),
+    ('doc7', 'a7', 'v7', 'ID_CARD', 'keyset', 'VERIFICATION_PENDING', 'f7', true, now(), now()),
+    ('doc8', 'a8', 'v8', 'ID_CARD', 'keyset', 'VERIFICATION_PENDING', 'f8', true, now(), now());
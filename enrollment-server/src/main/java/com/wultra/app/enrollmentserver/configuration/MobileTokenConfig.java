@@ -0,0 +1,142 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration of mobile token features.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Configuration
+@ConfigurationProperties(prefix = "enrollment-server.mtoken")
+@Getter
+@Setter
+public class MobileTokenConfig {
+
+    /**
+     * Parallel conversion of operation lists.
+     */
+    private ParallelConversion parallelConversion = new ParallelConversion();
+
+    /**
+     * Short-living cache of operation details.
+     */
+    private OperationDetailCache operationDetailCache = new OperationDetailCache();
+
+    /**
+     * Coalescing of concurrent identical operation list requests.
+     */
+    private OperationListCoalescing operationListCoalescing = new OperationListCoalescing();
+
+    /**
+     * Asynchronous processing of mobile token requests.
+     */
+    private Async async = new Async();
+
+    @Getter
+    @Setter
+    public static class ParallelConversion {
+
+        /**
+         * Whether operations of a large list are converted in parallel.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Minimal count of operations in a list to be converted in parallel.
+         */
+        private int threshold = 20;
+
+        /**
+         * Count of threads converting operations.
+         */
+        private int poolSize = 4;
+
+        /**
+         * Capacity of the queue of operations waiting for conversion. When full, the calling thread converts the operation itself.
+         */
+        private int queueCapacity = 500;
+    }
+
+    @Getter
+    @Setter
+    public static class OperationDetailCache {
+
+        /**
+         * Whether pending operation details obtained from PowerAuth server are reused by subsequent calls of the same node.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Time to live of a cached operation detail.
+         */
+        private Duration ttl = Duration.ofSeconds(3);
+
+        /**
+         * Maximal count of cached operation details.
+         */
+        private int maxSize = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class OperationListCoalescing {
+
+        /**
+         * Whether concurrent identical operation list requests share a single call to PowerAuth server.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long a completed operation list is reused by subsequent identical requests. Zero shares in-flight calls only.
+         */
+        private Duration resultTtl = Duration.ZERO;
+
+        /**
+         * Count of retained operation lists above which the expired ones are purged.
+         */
+        private int maxSize = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Async {
+
+        /**
+         * Whether mobile token endpoints release the servlet thread while waiting for PowerAuth server.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximal count of mobile token requests processed concurrently.
+         */
+        private int poolSize = 50;
+
+        /**
+         * Capacity of the queue of requests waiting for processing. When full, the servlet thread processes the request itself.
+         */
+        private int queueCapacity = 1_000;
+    }
+}
@@ -20,6 +20,7 @@ package com.wultra.app.enrollmentserver.configuration;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wultra.app.enrollmentserver.interceptor.InitialDispatchInterceptor;
 import io.getlime.security.powerauth.rest.api.spring.annotation.support.PowerAuthAnnotationInterceptor;
 import io.getlime.security.powerauth.rest.api.spring.annotation.support.PowerAuthEncryptionArgumentResolver;
 import io.getlime.security.powerauth.rest.api.spring.annotation.support.PowerAuthWebArgumentResolver;
@@ -69,7 +70,8 @@ public class WebApplicationConfig implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
-        registry.addInterceptor(powerAuthInterceptor());
+        // asynchronous mobile token endpoints are dispatched twice, the signature must be verified only once
+        registry.addInterceptor(new InitialDispatchInterceptor(powerAuthInterceptor()));
     }
 
     @Override
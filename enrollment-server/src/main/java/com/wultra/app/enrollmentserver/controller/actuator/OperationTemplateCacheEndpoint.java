@@ -0,0 +1,70 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.controller.actuator;
+
+import com.wultra.app.enrollmentserver.impl.service.OperationTemplateCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint for administration of the operation template cache.
+ * <p>
+ * Not exposed by default, use {@code management.endpoints.web.exposure.include=operationtemplates} to expose it.
+ * Note that the reload affects the node handling the request only.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@ConditionalOnProperty(value = "enrollment-server.mtoken.operation-template-cache.enabled", havingValue = "true")
+@Endpoint(id = "operationtemplates")
+@Slf4j
+public class OperationTemplateCacheEndpoint {
+
+    private final OperationTemplateCache operationTemplateCache;
+
+    @Autowired
+    public OperationTemplateCacheEndpoint(final OperationTemplateCache operationTemplateCache) {
+        this.operationTemplateCache = operationTemplateCache;
+    }
+
+    /**
+     * Return statistics of the operation template cache.
+     *
+     * @return Cache statistics.
+     */
+    @ReadOperation
+    public OperationTemplateCache.Statistics statistics() {
+        return operationTemplateCache.statistics();
+    }
+
+    /**
+     * Reload the operation template cache from the database.
+     *
+     * @return Cache statistics after the reload.
+     */
+    @WriteOperation
+    public OperationTemplateCache.Statistics reload() {
+        logger.info("Reloading operation template cache on request");
+        return operationTemplateCache.reload();
+    }
+}
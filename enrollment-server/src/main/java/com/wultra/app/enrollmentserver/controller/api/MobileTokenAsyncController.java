@@ -0,0 +1,292 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.controller.api;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.impl.service.MobileTokenService;
+import com.wultra.core.http.common.request.RequestContext;
+import com.wultra.core.http.common.request.RequestContextConverter;
+import com.wultra.security.powerauth.lib.mtoken.model.entity.Operation;
+import com.wultra.security.powerauth.lib.mtoken.model.request.OperationApproveRequest;
+import com.wultra.security.powerauth.lib.mtoken.model.request.OperationDetailRequest;
+import com.wultra.security.powerauth.lib.mtoken.model.request.OperationRejectRequest;
+import com.wultra.security.powerauth.lib.mtoken.model.response.OperationListResponse;
+import io.getlime.core.rest.model.base.request.ObjectRequest;
+import io.getlime.core.rest.model.base.response.ObjectResponse;
+import io.getlime.core.rest.model.base.response.Response;
+import io.getlime.security.powerauth.crypto.lib.enums.PowerAuthSignatureTypes;
+import io.getlime.security.powerauth.rest.api.spring.annotation.PowerAuth;
+import io.getlime.security.powerauth.rest.api.spring.annotation.PowerAuthToken;
+import io.getlime.security.powerauth.rest.api.spring.authentication.PowerAuthApiAuthentication;
+import io.swagger.v3.oas.annotations.Parameter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.context.i18n.SimpleTimeZoneAwareLocaleContext;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Controller that publishes the mobile token services asynchronously.
+ * <p>
+ * The servlet thread is released while waiting for PowerAuth Server, the request is processed by a dedicated bounded executor.
+ * The request handling itself is the same as of {@link MobileTokenController}, see {@link MobileTokenConfig.Async}.
+ * Timeout of the requests is driven by {@code spring.mvc.async.request-timeout}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ConditionalOnExpression("""
+        ${enrollment-server.mtoken.enabled:true} and ${enrollment-server.mtoken.async.enabled:false}
+        """)
+@RestController
+@RequestMapping("api/auth/token/app")
+@Slf4j
+public class MobileTokenAsyncController implements DisposableBean {
+
+    private final MobileTokenController delegate;
+
+    private final ThreadPoolTaskExecutor executor;
+
+    /**
+     * Default constructor with autowired dependencies.
+     *
+     * @param mobileTokenService Mobile token service.
+     * @param mobileTokenConfig Mobile token configuration.
+     * @param virtualThreads Whether to run the requests on virtual threads.
+     */
+    @Autowired
+    public MobileTokenAsyncController(
+            MobileTokenService mobileTokenService,
+            MobileTokenConfig mobileTokenConfig,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.delegate = new MobileTokenController(mobileTokenService);
+        this.executor = createExecutor(mobileTokenConfig.getAsync(), virtualThreads);
+    }
+
+    /**
+     * Get the list of pending operations.
+     *
+     * @param auth Authentication object.
+     * @param locale Locale.
+     * @return List of pending operations.
+     */
+    @PostMapping("/operation/list")
+    @PowerAuthToken(signatureType = {
+            PowerAuthSignatureTypes.POSSESSION,
+            PowerAuthSignatureTypes.POSSESSION_BIOMETRY,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY
+    })
+    public CompletableFuture<ObjectResponse<OperationListResponse>> operationList(@Parameter(hidden = true) PowerAuthApiAuthentication auth, @Parameter(hidden = true) Locale locale) {
+        return submit(() -> delegate.operationList(auth, locale));
+    }
+
+    /**
+     * Get the detail of an operation.
+     *
+     * @param request Request with operation ID.
+     * @param auth Authentication object.
+     * @param locale Locale.
+     * @return Operation detail.
+     */
+    @PostMapping("/operation/detail")
+    @PowerAuthToken(signatureType = {
+            PowerAuthSignatureTypes.POSSESSION,
+            PowerAuthSignatureTypes.POSSESSION_BIOMETRY,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY
+    })
+    public CompletableFuture<ObjectResponse<Operation>> getOperationDetail(@RequestBody ObjectRequest<OperationDetailRequest> request,
+                                                                           @Parameter(hidden = true) PowerAuthApiAuthentication auth,
+                                                                           @Parameter(hidden = true) Locale locale) {
+        return submit(() -> delegate.getOperationDetail(request, auth, locale));
+    }
+
+    /**
+     * Claim operation for a user.
+     *
+     * @param request Request with operation ID.
+     * @param auth Authentication object.
+     * @param locale Locale.
+     * @return Operation detail.
+     */
+    @PostMapping("/operation/detail/claim")
+    @PowerAuthToken(signatureType = {
+            PowerAuthSignatureTypes.POSSESSION,
+            PowerAuthSignatureTypes.POSSESSION_BIOMETRY,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE_BIOMETRY
+    })
+    public CompletableFuture<ObjectResponse<Operation>> claimOperation(@RequestBody ObjectRequest<OperationDetailRequest> request,
+                                                                       @Parameter(hidden = true) PowerAuthApiAuthentication auth,
+                                                                       @Parameter(hidden = true) Locale locale) {
+        return submit(() -> delegate.claimOperation(request, auth, locale));
+    }
+
+    /**
+     * Get the list of all operations.
+     *
+     * @param auth Authentication object.
+     * @param locale Locale.
+     * @return List of all operations.
+     */
+    @PostMapping("/operation/history")
+    @PowerAuth(resourceId = "/operation/history", signatureType = {
+            PowerAuthSignatureTypes.POSSESSION_BIOMETRY,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE
+    })
+    public CompletableFuture<ObjectResponse<OperationListResponse>> operationListAll(@Parameter(hidden = true) PowerAuthApiAuthentication auth, @Parameter(hidden = true) Locale locale) {
+        return submit(() -> delegate.operationListAll(auth, locale));
+    }
+
+    /**
+     * Authorize operation.
+     *
+     * @param request Request for operation approval.
+     * @param auth Authentication object.
+     * @param servletRequest HttpServletRequest instance.
+     * @return Simple response object.
+     */
+    @PostMapping("/operation/authorize")
+    @PowerAuth(resourceId = "/operation/authorize", signatureType = {
+            PowerAuthSignatureTypes.POSSESSION,
+            PowerAuthSignatureTypes.POSSESSION_KNOWLEDGE,
+            PowerAuthSignatureTypes.POSSESSION_BIOMETRY
+    })
+    public CompletableFuture<Response> operationApprove(
+            @RequestBody ObjectRequest<OperationApproveRequest> request,
+            @Parameter(hidden = true) PowerAuthApiAuthentication auth,
+            HttpServletRequest servletRequest) {
+        // the servlet request is read on the servlet thread, the worker gets the extracted values only
+        final RequestContext requestContext = RequestContextConverter.convert(servletRequest);
+        return submit(() -> delegate.operationApprove(request, auth, requestContext));
+    }
+
+    /**
+     * Operation reject.
+     *
+     * @param request Operation reject request.
+     * @param auth Authentication object.
+     * @param servletRequest HttpServletRequest instance.
+     * @return Simple response object.
+     */
+    @PostMapping("/operation/cancel")
+    @PowerAuth(resourceId = "/operation/cancel", signatureType = {
+            PowerAuthSignatureTypes.POSSESSION
+    })
+    public CompletableFuture<Response> operationReject(
+            @RequestBody ObjectRequest<OperationRejectRequest> request,
+            @Parameter(hidden = true) PowerAuthApiAuthentication auth,
+            HttpServletRequest servletRequest) {
+        // the servlet request is read on the servlet thread, the worker gets the extracted values only
+        final RequestContext requestContext = RequestContextConverter.convert(servletRequest);
+        return submit(() -> delegate.operationReject(request, auth, requestContext));
+    }
+
+    /**
+     * Process the request by the executor. Exceptions are propagated to the exception handlers as in the synchronous case.
+     */
+    private <T> CompletableFuture<T> submit(final RequestHandler<T> handler) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(handler.handle());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private static ThreadPoolTaskExecutor createExecutor(final MobileTokenConfig.Async config, final boolean virtualThreads) {
+        logger.info("Asynchronous mobile token endpoints enabled, pool size: {}, queue capacity: {}", config.getPoolSize(), config.getQueueCapacity());
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(config.getPoolSize());
+        executor.setMaxPoolSize(config.getPoolSize());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(config.getQueueCapacity());
+        executor.setThreadNamePrefix("mtoken-async-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.setTaskDecorator(new RequestContextTaskDecorator());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @FunctionalInterface
+    interface RequestHandler<T> {
+        T handle() throws Exception;
+    }
+
+    /**
+     * Propagate the locale and the MDC values, such as the correlation ID, of the servlet thread to the executor thread.
+     * The servlet request attributes are not propagated, they are completed as soon as the initial dispatch returns.
+     * The values needed by the handler, e.g. the authentication, are captured by the task itself.
+     * The task may be executed by the servlet thread itself when the queue is full, its context is restored then.
+     */
+    static class RequestContextTaskDecorator implements TaskDecorator {
+
+        @Override
+        public Runnable decorate(final Runnable runnable) {
+            // the locale context of the servlet may resolve the locale lazily from the request, the resolved values are copied
+            final LocaleContext localeContext = new SimpleTimeZoneAwareLocaleContext(LocaleContextHolder.getLocale(), LocaleContextHolder.getTimeZone());
+            final Map<String, String> mdc = MDC.getCopyOfContextMap();
+            return () -> {
+                final LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+                final Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+                LocaleContextHolder.setLocaleContext(localeContext);
+                setMdc(mdc);
+                try {
+                    runnable.run();
+                } finally {
+                    LocaleContextHolder.setLocaleContext(previousLocaleContext);
+                    setMdc(previousMdc);
+                }
+            };
+        }
+
+        private static void setMdc(final Map<String, String> mdc) {
+            if (mdc == null) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(mdc);
+            }
+        }
+    }
+}
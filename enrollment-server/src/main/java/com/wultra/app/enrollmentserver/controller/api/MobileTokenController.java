@@ -44,7 +44,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -56,14 +56,14 @@ import java.util.Locale;
 
 /**
  * Controller that publishes the default mobile token services.
+ * <p>
+ * The services are published asynchronously by {@link MobileTokenAsyncController} instead when enabled.
  *
  * @author Petr Dvorak, petr@wultra.com
  */
-@ConditionalOnProperty(
-        value = "enrollment-server.mtoken.enabled",
-        havingValue = "true",
-        matchIfMissing = true
-)
+@ConditionalOnExpression("""
+        ${enrollment-server.mtoken.enabled:true} and !${enrollment-server.mtoken.async.enabled:false}
+        """)
 @RestController
 @RequestMapping("api/auth/token/app")
 public class MobileTokenController {
@@ -243,6 +243,22 @@ public class MobileTokenController {
             @RequestBody ObjectRequest<OperationApproveRequest> request,
             @Parameter(hidden = true) PowerAuthApiAuthentication auth,
             HttpServletRequest servletRequest) throws MobileTokenException {
+        return operationApprove(request, auth, RequestContextConverter.convert(servletRequest));
+    }
+
+    /**
+     * Authorize operation with the request context already extracted from the servlet request.
+     *
+     * @param request Request object.
+     * @param auth Authentication object.
+     * @param requestContext Request context.
+     * @return Simple response object.
+     * @throws MobileTokenException In the case error mobile token service occurs.
+     */
+    Response operationApprove(
+            final ObjectRequest<OperationApproveRequest> request,
+            final PowerAuthApiAuthentication auth,
+            final RequestContext requestContext) throws MobileTokenException {
         try {
 
             final OperationApproveRequest requestObject = request.getRequestObject();
@@ -258,8 +274,6 @@ public class MobileTokenController {
                 throw new MobileTokenAuthException();
             }
 
-            final RequestContext requestContext = RequestContextConverter.convert(servletRequest);
-
             if (auth != null && auth.getUserId() != null) {
                 final String activationId = auth.getActivationContext().getActivationId();
                 final String userId = auth.getUserId();
@@ -321,6 +335,22 @@ public class MobileTokenController {
             @RequestBody ObjectRequest<OperationRejectRequest> request,
             @Parameter(hidden = true) PowerAuthApiAuthentication auth,
             HttpServletRequest servletRequest) throws MobileTokenException {
+        return operationReject(request, auth, RequestContextConverter.convert(servletRequest));
+    }
+
+    /**
+     * Reject operation with the request context already extracted from the servlet request.
+     *
+     * @param request Request object.
+     * @param auth Authentication object.
+     * @param requestContext Request context.
+     * @return Simple response object.
+     * @throws MobileTokenException In the case error mobile token service occurs.
+     */
+    Response operationReject(
+            final ObjectRequest<OperationRejectRequest> request,
+            final PowerAuthApiAuthentication auth,
+            final RequestContext requestContext) throws MobileTokenException {
         try {
 
             final OperationRejectRequest requestObject = request.getRequestObject();
@@ -328,8 +358,6 @@ public class MobileTokenController {
                 throw new MobileTokenAuthException();
             }
 
-            final RequestContext requestContext = RequestContextConverter.convert(servletRequest);
-
             if (auth != null && auth.getUserId() != null) {
                 final String activationId = auth.getActivationContext().getActivationId();
                 final String applicationId = auth.getApplicationId();
@@ -22,6 +22,8 @@ import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -52,4 +54,21 @@ public interface OperationTemplateRepository extends CrudRepository<OperationTem
      */
     Optional<OperationTemplateEntity> findFirstByPlaceholder(String placeholder);
 
+    /**
+     * Find all operation templates of the given operation types, regardless the language.
+     * <p>
+     * Intended for bulk lookup, language fallback is expected to be resolved by the caller.
+     *
+     * @param placeholders operation types
+     * @return operation templates ordered by ID
+     */
+    List<OperationTemplateEntity> findAllByPlaceholderInOrderById(Collection<String> placeholders);
+
+    /**
+     * Find all operation templates.
+     *
+     * @return operation templates ordered by ID
+     */
+    List<OperationTemplateEntity> findAllByOrderById();
+
 }
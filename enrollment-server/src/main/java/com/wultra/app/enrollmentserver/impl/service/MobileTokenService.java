@@ -23,6 +23,7 @@ import com.wultra.app.enrollmentserver.errorhandling.MobileTokenAuthException;
 import com.wultra.app.enrollmentserver.errorhandling.MobileTokenConfigurationException;
 import com.wultra.app.enrollmentserver.errorhandling.MobileTokenException;
 import com.wultra.app.enrollmentserver.impl.service.converter.MobileTokenConverter;
+import com.wultra.app.enrollmentserver.impl.service.converter.OperationListConverter;
 import com.wultra.core.http.common.request.RequestContext;
 import com.wultra.security.powerauth.client.PowerAuthClient;
 import com.wultra.security.powerauth.client.model.enumeration.SignatureType;
@@ -41,10 +42,12 @@ import io.getlime.security.powerauth.rest.api.spring.service.HttpCustomizationSe
 import jakarta.validation.constraints.NotNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -67,30 +70,40 @@ public class MobileTokenService {
 
     private final PowerAuthClient powerAuthClient;
     private final MobileTokenConverter mobileTokenConverter;
+    private final OperationListConverter operationListConverter;
     private final OperationTemplateService operationTemplateService;
     private final HttpCustomizationService httpCustomizationService;
+    private final OperationDetailCache operationDetailCache;
+    private final OperationListCoalescer operationListCoalescer;
 
     /**
      * Default constructor with autowired dependencies.
      *
      * @param powerAuthClient PowerAuth Client.
      * @param mobileTokenConverter Converter for mobile token objects.
+     * @param operationListConverter Converter for operation lists.
      * @param operationTemplateService Operation template service.
      * @param httpCustomizationService HTTP customization service.
+     * @param operationDetailCache Cache of operation details.
+     * @param operationListCoalescer Coalescer of operation list requests.
      */
     @Autowired
-    public MobileTokenService(PowerAuthClient powerAuthClient, MobileTokenConverter mobileTokenConverter, OperationTemplateService operationTemplateService, HttpCustomizationService httpCustomizationService) {
+    public MobileTokenService(PowerAuthClient powerAuthClient, MobileTokenConverter mobileTokenConverter, OperationListConverter operationListConverter, OperationTemplateService operationTemplateService, HttpCustomizationService httpCustomizationService, OperationDetailCache operationDetailCache, OperationListCoalescer operationListCoalescer) {
         this.powerAuthClient = powerAuthClient;
         this.mobileTokenConverter = mobileTokenConverter;
+        this.operationListConverter = operationListConverter;
         this.operationTemplateService = operationTemplateService;
         this.httpCustomizationService = httpCustomizationService;
+        this.operationDetailCache = operationDetailCache;
+        this.operationListCoalescer = operationListCoalescer;
     }
 
     /**
      * Retrieves a list of operations for a specified user. This method can return
      * either all operations or only those that are pending, based on the 'pendingOnly' flag.
      * It processes each operation detail, converts them into a consistent format, and
-     * filters out operations without a corresponding template.
+     * filters out operations without a corresponding template. Templates of all operation types
+     * are resolved in bulk. Concurrent identical requests may share a single call to PowerAuth Server.
      *
      * @param userId User ID for which the operation list is requested.
      * @param applicationId Application ID associated with the operations.
@@ -108,6 +121,18 @@ public class MobileTokenService {
             String activationId,
             boolean pendingOnly) throws PowerAuthClientException, MobileTokenConfigurationException {
 
+        final OperationListCoalescer.Key key = new OperationListCoalescer.Key(
+                userId, applicationId, activationId, language, LocaleContextHolder.getLocale().toLanguageTag(), pendingOnly);
+        return operationListCoalescer.load(key, () -> loadOperationList(userId, applicationId, language, activationId, pendingOnly));
+    }
+
+    private OperationListResponse loadOperationList(
+            final String userId,
+            final String applicationId,
+            final String language,
+            final String activationId,
+            final boolean pendingOnly) throws PowerAuthClientException, MobileTokenConfigurationException {
+
         final OperationListForUserRequest request = new OperationListForUserRequest();
         request.setUserId(userId);
         request.setApplications(List.of(applicationId));
@@ -121,16 +146,14 @@ public class MobileTokenService {
                 powerAuthClient.operationPendingList(request, queryParams, httpHeaders) :
                 powerAuthClient.operationList(request, queryParams, httpHeaders);
 
+        final List<String> operationTypes = operations.stream()
+                .map(OperationDetailResponse::getOperationType)
+                .distinct()
+                .toList();
+        final Map<String, OperationTemplateEntity> operationTemplates = operationTemplateService.findTemplates(operationTypes, language);
+
         final OperationListResponse responseObject = new OperationListResponse();
-        for (OperationDetailResponse operationDetail: operations) {
-            final Optional<OperationTemplateEntity> operationTemplate = operationTemplateService.findTemplate(operationDetail.getOperationType(), language);
-            if (operationTemplate.isEmpty()) {
-                logger.warn("No template found for operationType={}, skipping the entry.", operationDetail.getOperationType());
-                continue;
-            }
-            final Operation operation = mobileTokenConverter.convert(operationDetail, operationTemplate.get());
-            responseObject.add(operation);
-        }
+        responseObject.addAll(operationListConverter.convert(operations, operationTemplates));
         return responseObject;
     }
 
@@ -168,11 +191,16 @@ public class MobileTokenService {
             approveRequest.getAdditionalData().put(PROXIMITY_OTP, request.getProximityCheckOtp());
         }
 
-        final OperationUserActionResponse approveResponse = powerAuthClient.operationApprove(
-                approveRequest,
-                httpCustomizationService.getQueryParams(),
-                httpCustomizationService.getHttpHeaders()
-        );
+        final OperationUserActionResponse approveResponse;
+        try {
+            approveResponse = powerAuthClient.operationApprove(
+                    approveRequest,
+                    httpCustomizationService.getQueryParams(),
+                    httpCustomizationService.getHttpHeaders()
+            );
+        } finally {
+            operationDetailCache.evict(request.getOperationId());
+        }
 
         final UserActionResult result = approveResponse.getResult();
         if (result == UserActionResult.APPROVED) {
@@ -199,11 +227,16 @@ public class MobileTokenService {
         request.getAdditionalData().put(ATTR_IP_ADDRESS, requestContext.getIpAddress());
         request.getAdditionalData().put(ATTR_USER_AGENT, requestContext.getUserAgent());
 
-        final OperationUserActionResponse failApprovalResponse = powerAuthClient.failApprovalOperation(
-                request,
-                httpCustomizationService.getQueryParams(),
-                httpCustomizationService.getHttpHeaders()
-        );
+        final OperationUserActionResponse failApprovalResponse;
+        try {
+            failApprovalResponse = powerAuthClient.failApprovalOperation(
+                    request,
+                    httpCustomizationService.getQueryParams(),
+                    httpCustomizationService.getHttpHeaders()
+            );
+        } finally {
+            operationDetailCache.evict(operationId);
+        }
 
         final OperationDetailResponse operation = failApprovalResponse.getOperation();
         handleStatus(operation);
@@ -249,11 +282,16 @@ public class MobileTokenService {
         rejectRequest.getAdditionalData().put(ATTR_USER_AGENT, requestContext.getUserAgent());
         rejectRequest.getAdditionalData().put(ATTR_REJECT_REASON, rejectReason);
 
-        final OperationUserActionResponse rejectResponse = powerAuthClient.operationReject(
-                rejectRequest,
-                httpCustomizationService.getQueryParams(),
-                httpCustomizationService.getHttpHeaders()
-        );
+        final OperationUserActionResponse rejectResponse;
+        try {
+            rejectResponse = powerAuthClient.operationReject(
+                    rejectRequest,
+                    httpCustomizationService.getQueryParams(),
+                    httpCustomizationService.getHttpHeaders()
+            );
+        } finally {
+            operationDetailCache.evict(operationId);
+        }
 
         final UserActionResult result = rejectResponse.getResult();
         if (result == UserActionResult.REJECTED) {
@@ -305,7 +343,7 @@ public class MobileTokenService {
     // Private methods
 
     /**
-     * Get operation detail by calling PowerAuth Server.
+     * Get operation detail by calling PowerAuth Server or from the short-living cache.
      *
      * @param operationId Operation ID.
      * @return Operation detail.
@@ -313,19 +351,12 @@ public class MobileTokenService {
      * @throws MobileTokenException When the operation is in incorrect state.
      */
     private OperationDetailResponse getOperationDetailInternal(String operationId) throws PowerAuthClientException, MobileTokenException {
-        final OperationDetailRequest operationDetailRequest = new OperationDetailRequest();
-        operationDetailRequest.setOperationId(operationId);
-        final OperationDetailResponse operationDetail = powerAuthClient.operationDetail(
-                operationDetailRequest,
-                httpCustomizationService.getQueryParams(),
-                httpCustomizationService.getHttpHeaders()
-        );
-        handleStatus(operationDetail);
-        return operationDetail;
+        return claimOperationInternal(operationId, null);
     }
 
     /**
-     * Get operation detail by calling PowerAuth Server.
+     * Get operation detail by calling PowerAuth Server or from the short-living cache.
+     * The cached detail may be used for a claim only when the operation has been already claimed by the same user.
      *
      * @param operationId Operation ID.
      * @param userId Optional user ID for operation claim.
@@ -334,6 +365,12 @@ public class MobileTokenService {
      * @throws MobileTokenException When the operation is in incorrect state.
      */
     private OperationDetailResponse claimOperationInternal(String operationId, String userId) throws PowerAuthClientException, MobileTokenException {
+        final Optional<OperationDetailResponse> cachedOperationDetail = operationDetailCache.find(operationId)
+                .filter(it -> userId == null || userId.equals(it.getUserId()));
+        if (cachedOperationDetail.isPresent()) {
+            return cachedOperationDetail.get();
+        }
+
         final OperationDetailRequest operationDetailRequest = new OperationDetailRequest();
         operationDetailRequest.setOperationId(operationId);
         operationDetailRequest.setUserId(userId);
@@ -342,6 +379,7 @@ public class MobileTokenService {
                 httpCustomizationService.getQueryParams(),
                 httpCustomizationService.getHttpHeaders()
         );
+        operationDetailCache.put(operationDetail);
         handleStatus(operationDetail);
         return operationDetail;
     }
@@ -0,0 +1,144 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.security.powerauth.client.model.enumeration.OperationStatus;
+import com.wultra.security.powerauth.client.model.response.OperationDetailResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-living per-node cache of operation details obtained from PowerAuth Server.
+ * <p>
+ * A typical mobile token flow reads the same operation several times within a few seconds (detail, claim, approval pre-check).
+ * Only pending operations are cached, because any other status terminates the flow anyway.
+ * PowerAuth Server stays the source of truth, the cache is just shortcut for read-only pre-checks;
+ * the entry is evicted once the operation is approved, rejected, or its approval fails.
+ * The cache is disabled by default, see {@link MobileTokenConfig.OperationDetailCache}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+public class OperationDetailCache {
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    private final Duration ttl;
+
+    private final int maxSize;
+
+    private final Clock clock;
+
+    @Autowired
+    public OperationDetailCache(final MobileTokenConfig mobileTokenConfig) {
+        this(mobileTokenConfig, Clock.systemUTC());
+    }
+
+    OperationDetailCache(final MobileTokenConfig mobileTokenConfig, final Clock clock) {
+        final MobileTokenConfig.OperationDetailCache config = mobileTokenConfig.getOperationDetailCache();
+        this.enabled = config.isEnabled();
+        this.ttl = config.getTtl();
+        this.maxSize = config.getMaxSize();
+        this.clock = clock;
+        if (enabled) {
+            logger.info("Operation detail cache enabled, TTL: {}, max size: {}", ttl, maxSize);
+        }
+    }
+
+    /**
+     * Find a fresh cached operation detail.
+     *
+     * @param operationId Operation ID.
+     * @return Cached operation detail or empty if not cached or stale.
+     */
+    public Optional<OperationDetailResponse> find(final String operationId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        final Entry entry = cache.get(operationId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        final Instant now = clock.instant();
+        if (entry.isStale(now)) {
+            cache.remove(operationId, entry);
+            return Optional.empty();
+        }
+        logger.debug("Using cached detail of operation ID: {}", operationId);
+        return Optional.of(entry.operationDetail());
+    }
+
+    /**
+     * Cache the given operation detail if it is pending, otherwise evict it.
+     *
+     * @param operationDetail Operation detail obtained from PowerAuth Server.
+     */
+    public void put(final OperationDetailResponse operationDetail) {
+        if (!enabled) {
+            return;
+        }
+        final String operationId = operationDetail.getId();
+        if (operationDetail.getStatus() != OperationStatus.PENDING) {
+            cache.remove(operationId);
+            return;
+        }
+
+        final Instant now = clock.instant();
+        Instant validUntil = now.plus(ttl);
+        if (operationDetail.getTimestampExpires() != null && operationDetail.getTimestampExpires().toInstant().isBefore(validUntil)) {
+            validUntil = operationDetail.getTimestampExpires().toInstant();
+        }
+        if (cache.size() >= maxSize) {
+            cache.values().removeIf(it -> it.isStale(now));
+            if (cache.size() >= maxSize) {
+                logger.debug("Clearing operation detail cache, the limit {} reached", maxSize);
+                cache.clear();
+            }
+        }
+        cache.put(operationId, new Entry(operationDetail, validUntil));
+    }
+
+    /**
+     * Evict the operation detail, typically because the operation status has been changed.
+     *
+     * @param operationId Operation ID.
+     */
+    public void evict(final String operationId) {
+        if (enabled) {
+            cache.remove(operationId);
+        }
+    }
+
+    private record Entry(OperationDetailResponse operationDetail, Instant validUntil) {
+        boolean isStale(final Instant now) {
+            return !now.isBefore(validUntil);
+        }
+    }
+}
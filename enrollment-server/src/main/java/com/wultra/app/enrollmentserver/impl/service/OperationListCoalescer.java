@@ -0,0 +1,181 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.errorhandling.MobileTokenConfigurationException;
+import com.wultra.security.powerauth.client.model.error.PowerAuthClientException;
+import com.wultra.security.powerauth.lib.mtoken.model.response.OperationListResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalescer of concurrent identical operation list requests.
+ * <p>
+ * Mobile clients poll the operation list aggressively and a user with several devices often sends identical requests at once.
+ * The first request loads the list from PowerAuth Server, the concurrent ones wait for its result instead of calling the server again.
+ * Optionally, the completed list is reused for a short time, see {@link MobileTokenConfig.OperationListCoalescing}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+public class OperationListCoalescer {
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final boolean enabled;
+
+    private final Duration resultTtl;
+
+    private final int maxSize;
+
+    private final Clock clock;
+
+    @Autowired
+    public OperationListCoalescer(final MobileTokenConfig mobileTokenConfig) {
+        this(mobileTokenConfig, Clock.systemUTC());
+    }
+
+    OperationListCoalescer(final MobileTokenConfig mobileTokenConfig, final Clock clock) {
+        final MobileTokenConfig.OperationListCoalescing config = mobileTokenConfig.getOperationListCoalescing();
+        this.enabled = config.isEnabled();
+        this.resultTtl = config.getResultTtl();
+        this.maxSize = config.getMaxSize();
+        this.clock = clock;
+        if (enabled) {
+            logger.info("Operation list coalescing enabled, result TTL: {}", resultTtl);
+        }
+    }
+
+    /**
+     * Load the operation list or join an identical request already in progress.
+     *
+     * @param key Identification of the request.
+     * @param loader Loader of the operation list.
+     * @return Operation list.
+     * @throws PowerAuthClientException If there's an issue with the PowerAuth service call.
+     * @throws MobileTokenConfigurationException For any system configuration issues.
+     */
+    public OperationListResponse load(final Key key, final Loader loader) throws PowerAuthClientException, MobileTokenConfigurationException {
+        if (!enabled) {
+            return loader.load();
+        }
+
+        while (true) {
+            final Entry existing = entries.get(key);
+            if (existing != null) {
+                if (existing.isValid(clock.instant())) {
+                    logger.debug("Joining operation list request, {}", key);
+                    return join(existing.future);
+                }
+                entries.remove(key, existing);
+            }
+
+            final Entry created = new Entry();
+            if (entries.putIfAbsent(key, created) == null) {
+                return loadAndComplete(key, created, loader);
+            }
+        }
+    }
+
+    private OperationListResponse loadAndComplete(final Key key, final Entry entry, final Loader loader) throws PowerAuthClientException, MobileTokenConfigurationException {
+        try {
+            final OperationListResponse result = loader.load();
+            if (resultTtl.isZero() || resultTtl.isNegative()) {
+                entries.remove(key, entry);
+            } else {
+                entry.validUntil = clock.instant().plus(resultTtl);
+                purgeExpired();
+            }
+            entry.future.complete(result);
+            return result;
+        } catch (PowerAuthClientException | MobileTokenConfigurationException | RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void purgeExpired() {
+        if (entries.size() > maxSize) {
+            final Instant now = clock.instant();
+            entries.values().removeIf(it -> !it.isValid(now));
+        }
+    }
+
+    private static OperationListResponse join(final CompletableFuture<OperationListResponse> future) throws PowerAuthClientException, MobileTokenConfigurationException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof final PowerAuthClientException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof final MobileTokenConfigurationException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof final RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Identification of an operation list request.
+     *
+     * @param userId User ID.
+     * @param applicationId Application ID.
+     * @param activationId Activation ID.
+     * @param language Language of the operation templates.
+     * @param languageTag Language tag of the full request locale, the amounts are formatted by the locale.
+     * @param pendingOnly Whether only pending operations are requested.
+     */
+    public record Key(String userId, String applicationId, String activationId, String language, String languageTag, boolean pendingOnly) {
+    }
+
+    /**
+     * Loader of the operation list.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        OperationListResponse load() throws PowerAuthClientException, MobileTokenConfigurationException;
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<OperationListResponse> future = new CompletableFuture<>();
+
+        /**
+         * End of the result validity, {@code null} while the request is in progress.
+         */
+        private volatile Instant validUntil;
+
+        boolean isValid(final Instant now) {
+            final Instant until = validUntil;
+            return until == null || now.isBefore(until);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.database.OperationTemplateRepository;
+import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.constraints.NotNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory cache of operation templates.
+ * <p>
+ * All templates are loaded at once into an immutable snapshot which is periodically replaced.
+ * Lookups by (operation type, language) including the applied fallback and negative results are memoized
+ * until the next reload, so the database is not touched on the mobile token hot path.
+ * The languages come from the clients, so the memoized lookups are cleared when their count reaches the limit.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@ConditionalOnProperty(value = "enrollment-server.mtoken.operation-template-cache.enabled", havingValue = "true")
+@Slf4j
+public class OperationTemplateCache {
+
+    private static final String METRIC_LOOKUP = "enrollment.operation.template.cache.lookup";
+    private static final String METRIC_SIZE = "enrollment.operation.template.cache.size";
+
+    private final OperationTemplateRepository operationTemplateRepository;
+
+    /**
+     * Maximal count of memoized lookups of a snapshot.
+     */
+    private final int maxLookups;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter reloadCounter;
+
+    /**
+     * Guards reloads, a lock instead of {@code synchronized} does not pin a virtual thread during the database call.
+     */
+    private final Lock reloadLock = new ReentrantLock();
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public OperationTemplateCache(
+            final OperationTemplateRepository operationTemplateRepository,
+            final MeterRegistry meterRegistry,
+            @Value("${enrollment-server.mtoken.operation-template-cache.max-lookups:10000}") final int maxLookups) {
+
+        this.operationTemplateRepository = operationTemplateRepository;
+        this.maxLookups = maxLookups;
+        this.hitCounter = Counter.builder(METRIC_LOOKUP)
+                .description("Operation template cache lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder(METRIC_LOOKUP)
+                .description("Operation template cache lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.reloadCounter = Counter.builder("enrollment.operation.template.cache.reload")
+                .description("Operation template cache reloads")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_SIZE, this, it -> it.snapshot == null ? 0 : it.snapshot.templateCount())
+                .description("Number of cached operation templates")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Find the operation template for the given type and language.
+     * <p>
+     * Falling back to EN locale and later on to any found language. Negative results are cached too.
+     *
+     * @param operationType Operation type.
+     * @param language Template language.
+     * @return Lookup result, never {@code null}.
+     */
+    public OperationTemplateLookup find(@NotNull String operationType, @NotNull String language) {
+        final Snapshot current = getSnapshot();
+        final CacheKey key = new CacheKey(operationType, language);
+        final OperationTemplateLookup cached = current.lookups().get(key);
+        if (cached != null) {
+            hitCounter.increment();
+            return cached;
+        }
+
+        missCounter.increment();
+        final OperationTemplateLookup lookup = OperationTemplateLookup.resolve(current.templates().get(operationType), language);
+        logger.debug("Resolved operationType={}, language={} with fallback={}", operationType, language, lookup.fallback());
+        if (current.lookups().size() >= maxLookups) {
+            logger.debug("Clearing operation template lookups, the limit {} reached", maxLookups);
+            current.lookups().clear();
+        }
+        final OperationTemplateLookup previous = current.lookups().putIfAbsent(key, lookup);
+        return previous != null ? previous : lookup;
+    }
+
+    /**
+     * Periodically refresh the cache to pick up template changes.
+     */
+    @Scheduled(
+            fixedDelayString = "${enrollment-server.mtoken.operation-template-cache.refresh-interval:PT1M}",
+            initialDelayString = "${enrollment-server.mtoken.operation-template-cache.refresh-interval:PT1M}")
+    public void refresh() {
+        logger.debug("Refreshing operation template cache");
+        reload();
+    }
+
+    /**
+     * Reload all operation templates from the database, replacing the current snapshot and resolved lookups.
+     *
+     * @return Cache statistics after the reload.
+     */
+    public Statistics reload() {
+        reloadLock.lock();
+        try {
+            doReload();
+        } finally {
+            reloadLock.unlock();
+        }
+        return statistics();
+    }
+
+    private void doReload() {
+        final Map<String, List<OperationTemplateEntity>> templates = new HashMap<>();
+        int count = 0;
+        for (OperationTemplateEntity template : operationTemplateRepository.findAllByOrderById()) {
+            templates.computeIfAbsent(template.getPlaceholder(), key -> new ArrayList<>()).add(template);
+            count++;
+        }
+        templates.replaceAll((key, value) -> List.copyOf(value));
+
+        snapshot = new Snapshot(Map.copyOf(templates), new ConcurrentHashMap<>(), count, Instant.now());
+        reloadCounter.increment();
+        logger.debug("Operation template cache reloaded with {} templates of {} operation types", count, templates.size());
+    }
+
+    /**
+     * Return statistics of the current cache state.
+     *
+     * @return Cache statistics.
+     */
+    public Statistics statistics() {
+        final Snapshot current = snapshot;
+        if (current == null) {
+            return new Statistics(0, 0, 0, null, hitCounter.count(), missCounter.count());
+        }
+        return new Statistics(
+                current.templateCount(),
+                current.templates().size(),
+                current.lookups().size(),
+                current.loaded(),
+                hitCounter.count(),
+                missCounter.count());
+    }
+
+    private Snapshot getSnapshot() {
+        final Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        reloadLock.lock();
+        try {
+            if (snapshot == null) {
+                doReload();
+            }
+            return snapshot;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    /**
+     * Operation template cache statistics.
+     *
+     * @param templates Number of cached templates.
+     * @param operationTypes Number of distinct operation types.
+     * @param resolvedLookups Number of resolved (operation type, language) lookups, including negative ones.
+     * @param loaded Timestamp of the last reload.
+     * @param hits Total count of cache hits.
+     * @param misses Total count of cache misses.
+     */
+    public record Statistics(int templates, int operationTypes, int resolvedLookups, Instant loaded, double hits, double misses) {
+    }
+
+    private record CacheKey(String operationType, String language) {
+    }
+
+    private record Snapshot(
+            Map<String, List<OperationTemplateEntity>> templates,
+            ConcurrentMap<CacheKey, OperationTemplateLookup> lookups,
+            int templateCount,
+            Instant loaded) {
+    }
+}
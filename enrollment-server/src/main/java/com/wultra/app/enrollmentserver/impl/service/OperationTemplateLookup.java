@@ -0,0 +1,98 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Result of an operation template lookup including the applied language fallback.
+ *
+ * @param template Found template or {@code null} if not found.
+ * @param fallback Applied fallback.
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+public record OperationTemplateLookup(OperationTemplateEntity template, Fallback fallback) {
+
+    static final String DEFAULT_LANGUAGE = "en";
+
+    private static final OperationTemplateLookup NOT_FOUND = new OperationTemplateLookup(null, Fallback.NOT_FOUND);
+
+    /**
+     * Fallback used to find the template.
+     */
+    public enum Fallback {
+
+        /**
+         * Template found in the requested language.
+         */
+        NONE,
+
+        /**
+         * Template found in the default EN language.
+         */
+        DEFAULT_LANGUAGE,
+
+        /**
+         * Template found in any language.
+         */
+        ANY_LANGUAGE,
+
+        /**
+         * Template not found at all.
+         */
+        NOT_FOUND
+    }
+
+    /**
+     * Return the found template.
+     *
+     * @return Found template or empty.
+     */
+    public Optional<OperationTemplateEntity> findTemplate() {
+        return Optional.ofNullable(template);
+    }
+
+    /**
+     * Resolve the template from candidates of the same operation type.
+     * <p>
+     * Falling back to EN locale and later on to any found language.
+     *
+     * @param candidates Template candidates of the same operation type ordered by ID.
+     * @param language Requested language.
+     * @return Lookup result.
+     */
+    static OperationTemplateLookup resolve(final List<OperationTemplateEntity> candidates, final String language) {
+        if (candidates == null || candidates.isEmpty()) {
+            return NOT_FOUND;
+        }
+        return findByLanguage(candidates, language)
+                .map(it -> new OperationTemplateLookup(it, Fallback.NONE))
+                .or(() -> findByLanguage(candidates, DEFAULT_LANGUAGE)
+                        .map(it -> new OperationTemplateLookup(it, Fallback.DEFAULT_LANGUAGE)))
+                .orElseGet(() -> new OperationTemplateLookup(candidates.get(0), Fallback.ANY_LANGUAGE));
+    }
+
+    private static Optional<OperationTemplateEntity> findByLanguage(final List<OperationTemplateEntity> candidates, final String language) {
+        return candidates.stream()
+                .filter(it -> language.equals(it.getLanguage()))
+                .findFirst();
+    }
+}
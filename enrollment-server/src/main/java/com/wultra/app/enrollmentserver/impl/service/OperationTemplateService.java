@@ -25,10 +25,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.util.*;
 
 /**
  * Service responsible for working with operation templates.
+ * <p>
+ * When {@link OperationTemplateCache} is enabled, templates are resolved from the cache, otherwise from the database.
  *
  * @author Petr Dvorak, petr@wultra.com
  */
@@ -36,13 +38,16 @@ import java.util.Optional;
 @Slf4j
 public class OperationTemplateService {
 
-    private static final String DEFAULT_LANGUAGE = "en";
+    private static final String DEFAULT_LANGUAGE = OperationTemplateLookup.DEFAULT_LANGUAGE;
 
     private final OperationTemplateRepository operationTemplateRepository;
 
+    private final Optional<OperationTemplateCache> operationTemplateCache;
+
     @Autowired
-    public OperationTemplateService(OperationTemplateRepository operationTemplateRepository) {
+    public OperationTemplateService(OperationTemplateRepository operationTemplateRepository, Optional<OperationTemplateCache> operationTemplateCache) {
         this.operationTemplateRepository = operationTemplateRepository;
+        this.operationTemplateCache = operationTemplateCache;
     }
 
     /**
@@ -55,10 +60,49 @@ public class OperationTemplateService {
      * @return Found operation template or empty.
      */
     public Optional<OperationTemplateEntity> findTemplate(@NotNull String operationType, @NotNull String language) {
+        if (operationTemplateCache.isPresent()) {
+            return operationTemplateCache.get().find(operationType, language).findTemplate();
+        }
         return operationTemplateRepository.findFirstByLanguageAndPlaceholder(language, operationType).or(() ->
                 findTemplateFallback(operationType, language));
     }
 
+    /**
+     * Find the operation templates for the given types and language using at most a single database query.
+     * <p>
+     * The same fallback as in {@link #findTemplate(String, String)} is applied in memory: requested language,
+     * EN locale and later on any found language.
+     *
+     * @param operationTypes Operation types.
+     * @param language Template language.
+     * @return Found operation templates mapped by operation type. Types without any template are not present.
+     * @see #findTemplate(String, String)
+     */
+    public Map<String, OperationTemplateEntity> findTemplates(@NotNull Collection<String> operationTypes, @NotNull String language) {
+        if (operationTypes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        final Set<String> distinctTypes = new HashSet<>(operationTypes);
+        final Map<String, OperationTemplateEntity> result = new HashMap<>();
+        if (operationTemplateCache.isPresent()) {
+            final OperationTemplateCache cache = operationTemplateCache.get();
+            distinctTypes.forEach(operationType ->
+                    cache.find(operationType, language).findTemplate().ifPresent(template -> result.put(operationType, template)));
+            return result;
+        }
+
+        final Map<String, List<OperationTemplateEntity>> templatesByType = new HashMap<>();
+        for (OperationTemplateEntity template : operationTemplateRepository.findAllByPlaceholderInOrderById(distinctTypes)) {
+            templatesByType.computeIfAbsent(template.getPlaceholder(), key -> new ArrayList<>()).add(template);
+        }
+
+        templatesByType.forEach((operationType, templates) ->
+                OperationTemplateLookup.resolve(templates, language).findTemplate().ifPresent(template -> result.put(operationType, template)));
+        logger.debug("Resolved {} of {} operation types for language={}", result.size(), distinctTypes.size(), language);
+        return result;
+    }
+
     private Optional<OperationTemplateEntity> findTemplateFallback(final String operationType, final String language) {
         if (!DEFAULT_LANGUAGE.equals(language)) {
             logger.debug("Trying fallback to EN locale for operationType={}", operationType);
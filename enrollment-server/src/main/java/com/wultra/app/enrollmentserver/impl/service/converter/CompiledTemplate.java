@@ -0,0 +1,206 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service.converter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.text.StringSubstitutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Template text parsed once into literal segments and parameter slots.
+ * <p>
+ * Rendering produces the same output as {@link StringSubstitutor} with default settings and JSON escaped parameter values,
+ * i.e. {@code ${name}} and {@code ${name:-default}} are substituted, {@code $${name}} is an escaped variable,
+ * and unknown variables are kept as they are. Constructs which would need recursive substitution
+ * (nested variables, parameter values containing variables) fall back to {@link StringSubstitutor}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Slf4j
+final class CompiledTemplate {
+
+    private static final String PREFIX = "${";
+    private static final char SUFFIX = '}';
+    private static final char ESCAPE = '$';
+    private static final String VALUE_DELIMITER = ":-";
+
+    private final String source;
+
+    /**
+     * Either {@link String} literal or {@link Slot}.
+     */
+    private final Object[] segments;
+
+    private final int literalLength;
+
+    /**
+     * Whether the source contains constructs not supported by the compiled form.
+     */
+    private final boolean fallback;
+
+    private CompiledTemplate(final String source, final Object[] segments, final int literalLength, final boolean fallback) {
+        this.source = source;
+        this.segments = segments;
+        this.literalLength = literalLength;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Parse the given template text.
+     *
+     * @param source Template text.
+     * @return Compiled template.
+     */
+    static CompiledTemplate compile(final String source) {
+        final List<Object> segments = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        boolean fallback = false;
+
+        final int length = source.length();
+        int pos = 0;
+        while (pos < length) {
+            if (!source.startsWith(PREFIX, pos)) {
+                literal.append(source.charAt(pos++));
+                continue;
+            }
+
+            final int end = source.indexOf(SUFFIX, pos + PREFIX.length());
+            if (end < 0) {
+                // not terminated variable, the rest is literal
+                literal.append(source, pos, length);
+                break;
+            }
+
+            if (!literal.isEmpty() && literal.charAt(literal.length() - 1) == ESCAPE) {
+                // escaped variable, drop the escape character and keep the prefix as literal
+                literal.setLength(literal.length() - 1);
+                literal.append(PREFIX);
+                pos += PREFIX.length();
+                continue;
+            }
+
+            final String raw = source.substring(pos, end + 1);
+            final String expression = source.substring(pos + PREFIX.length(), end);
+            if (expression.contains(PREFIX)) {
+                fallback = true;
+            }
+            final Slot slot = createSlot(expression, raw);
+            if (slot.defaultValue() != null && requiresRecursion(slot.defaultValue())) {
+                fallback = true;
+            }
+
+            if (!literal.isEmpty()) {
+                literalLength += literal.length();
+                segments.add(literal.toString());
+                literal.setLength(0);
+            }
+            segments.add(slot);
+            pos = end + 1;
+        }
+
+        if (!literal.isEmpty()) {
+            literalLength += literal.length();
+            segments.add(literal.toString());
+        }
+
+        return new CompiledTemplate(source, segments.toArray(), literalLength, fallback);
+    }
+
+    /**
+     * Return whether the template contains no variables, so the rendered text is always the source text.
+     *
+     * @return {@code true} if there is nothing to substitute.
+     */
+    boolean isConstant() {
+        return !fallback && segments.length <= 1 && (segments.length == 0 || segments[0] instanceof String);
+    }
+
+    /**
+     * Render the template with the given parameters. Parameter values are JSON escaped.
+     *
+     * @param parameters Parameters, {@code null} values are treated as missing.
+     * @return Rendered text.
+     */
+    String render(final Map<String, String> parameters) {
+        if (fallback) {
+            return renderFallback(parameters);
+        }
+
+        final StringBuilder result = new StringBuilder(literalLength + 16 * segments.length);
+        for (Object segment : segments) {
+            if (segment instanceof final Slot slot) {
+                final String value = parameters.get(slot.name());
+                if (value != null) {
+                    final String escaped = StringEscapeUtils.escapeJson(value);
+                    if (requiresRecursion(escaped)) {
+                        return renderFallback(parameters);
+                    }
+                    result.append(escaped);
+                } else if (slot.defaultValue() != null) {
+                    result.append(slot.defaultValue());
+                } else {
+                    result.append(slot.raw());
+                }
+            } else {
+                result.append((String) segment);
+            }
+        }
+        return result.toString();
+    }
+
+    private String renderFallback(final Map<String, String> parameters) {
+        logger.debug("Falling back to StringSubstitutor for template: '{}'", source);
+        final Map<String, String> escapedParameters = parameters.entrySet().stream()
+                .filter(entry -> entry.getValue() != null)
+                .collect(toMap(Map.Entry::getKey, it -> StringEscapeUtils.escapeJson(it.getValue())));
+        return new StringSubstitutor(escapedParameters).replace(source);
+    }
+
+    /**
+     * StringSubstitutor substitutes variables in values recursively and a trailing escape character
+     * of a value would escape an adjacent variable.
+     */
+    private static boolean requiresRecursion(final String value) {
+        return value.contains(PREFIX) || (!value.isEmpty() && value.charAt(value.length() - 1) == ESCAPE);
+    }
+
+    private static Slot createSlot(final String expression, final String raw) {
+        final int delimiter = expression.indexOf(VALUE_DELIMITER);
+        if (delimiter < 0) {
+            return new Slot(expression, null, raw);
+        }
+        return new Slot(expression.substring(0, delimiter), expression.substring(delimiter + VALUE_DELIMITER.length()), raw);
+    }
+
+    /**
+     * Parameter slot.
+     *
+     * @param name Parameter name.
+     * @param defaultValue Default value or {@code null}.
+     * @param raw Original text of the variable, used when the parameter is missing.
+     */
+    private record Slot(String name, String defaultValue, String raw) {
+    }
+}
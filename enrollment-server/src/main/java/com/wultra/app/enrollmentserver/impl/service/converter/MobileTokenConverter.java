@@ -28,8 +28,6 @@ import com.wultra.security.powerauth.client.model.response.OperationDetailRespon
 import com.wultra.security.powerauth.lib.mtoken.model.entity.*;
 import com.wultra.security.powerauth.lib.mtoken.model.entity.attributes.*;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.text.StringEscapeUtils;
-import org.apache.commons.text.StringSubstitutor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
@@ -39,8 +37,6 @@ import org.springframework.util.StringUtils;
 import java.math.BigDecimal;
 import java.util.*;
 
-import static java.util.stream.Collectors.toMap;
-
 /**
  * Converter related to mobile token services
  *
@@ -54,8 +50,19 @@ public class MobileTokenConverter {
     private static final String RISK_FLAG_BLOCK_APPROVAL_ON_CALL = "C";
     private static final String RISK_FLAG_FRAUD_WARNING = "F";
 
+    private static final int TEMPLATE_CACHE_MAX_SIZE = 1_000;
+
     private final ObjectMapper objectMapper;
 
+    private final TemplateContentCache<CompiledTemplate> compiledTemplates = new TemplateContentCache<>("compiled templates", TEMPLATE_CACHE_MAX_SIZE);
+
+    private final TemplateContentCache<List<OperationTemplateParam>> templateParams = new TemplateContentCache<>("template params", TEMPLATE_CACHE_MAX_SIZE);
+
+    /**
+     * UI extensions of templates without parameters. Instances are shared, only shallow copies may be modified.
+     */
+    private final TemplateContentCache<UiExtensions> uiExtensionsSkeletons = new TemplateContentCache<>("ui extensions", TEMPLATE_CACHE_MAX_SIZE);
+
     @Autowired
     public MobileTokenConverter(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
@@ -91,9 +98,9 @@ public class MobileTokenConverter {
     public Operation convert(OperationDetailResponse operationDetail, OperationTemplateEntity operationTemplate) throws MobileTokenConfigurationException {
         try {
             final Map<String, String> parameters = operationDetail.getParameters();
-            final StringSubstitutor sub = createStringSubstitutor(parameters);
-            final UiExtensions uiExtensions = convertUiExtension(operationDetail, operationTemplate, sub);
-            final FormData formData = prepareFormData(operationTemplate, parameters, sub);
+            final TemplateRenderer renderer = createTemplateRenderer(parameters);
+            final UiExtensions uiExtensions = convertUiExtension(operationDetail, operationTemplate, renderer);
+            final FormData formData = prepareFormData(operationTemplate, parameters, renderer);
 
             final Operation operation = new Operation();
             operation.setId(operationDetail.getId());
@@ -117,12 +124,12 @@ public class MobileTokenConverter {
     private FormData prepareFormData(
             final OperationTemplateEntity operationTemplate,
             final Map<String, String> parameters,
-            final StringSubstitutor sub) throws JsonProcessingException {
+            final TemplateRenderer renderer) throws JsonProcessingException {
 
         final FormData formData = new FormData();
-        if (sub != null) {
-            formData.setTitle(sub.replace(operationTemplate.getTitle()));
-            formData.setMessage(sub.replace(operationTemplate.getMessage()));
+        if (renderer != null) {
+            formData.setTitle(renderer.render(operationTemplate.getTitle()));
+            formData.setMessage(renderer.render(operationTemplate.getMessage()));
         } else {
             formData.setTitle(operationTemplate.getTitle());
             formData.setMessage(operationTemplate.getMessage());
@@ -130,38 +137,48 @@ public class MobileTokenConverter {
 
         final String attributes = operationTemplate.getAttributes();
         if (attributes != null) {
-            final OperationTemplateParam[] operationTemplateParams = objectMapper.readValue(attributes, OperationTemplateParam[].class);
-            if (operationTemplateParams != null) {
-                final List<Attribute> formDataAttributes = formData.getAttributes();
-                for (OperationTemplateParam templateParam : operationTemplateParams) {
-                    buildAttribute(templateParam, parameters)
-                            .ifPresent(formDataAttributes::add);
-                }
+            final List<OperationTemplateParam> operationTemplateParams = templateParams.get(attributes, this::parseTemplateParams);
+            final List<Attribute> formDataAttributes = formData.getAttributes();
+            for (OperationTemplateParam templateParam : operationTemplateParams) {
+                buildAttribute(templateParam, parameters)
+                        .ifPresent(formDataAttributes::add);
             }
         }
         return formData;
     }
 
-    private static StringSubstitutor createStringSubstitutor(final Map<String, String> parameters) {
+    private List<OperationTemplateParam> parseTemplateParams(final String attributes) throws JsonProcessingException {
+        final OperationTemplateParam[] operationTemplateParams = objectMapper.readValue(attributes, OperationTemplateParam[].class);
+        return operationTemplateParams == null ? Collections.emptyList() : List.of(operationTemplateParams);
+    }
+
+    private TemplateRenderer createTemplateRenderer(final Map<String, String> parameters) {
         if (CollectionUtils.isEmpty(parameters)) {
             return null;
         } else {
-            final Map<String, String> escapedParameters = parameters.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .collect(toMap(Map.Entry::getKey, it -> StringEscapeUtils.escapeJson(it.getValue())));
-            return new StringSubstitutor(escapedParameters);
+            return source -> source == null ? null : compileTemplate(source).render(parameters);
         }
     }
 
+    private CompiledTemplate compileTemplate(final String source) {
+        return compiledTemplates.get(source, CompiledTemplate::compile);
+    }
+
     private UiExtensions convertUiExtension(
             final OperationDetailResponse operationDetail,
             final OperationTemplateEntity operationTemplate,
-            final StringSubstitutor substitutor) throws JsonProcessingException {
+            final TemplateRenderer renderer) throws JsonProcessingException {
 
         if (StringUtils.hasText(operationTemplate.getUi())) {
-            final String uiJsonString = substitutor == null ? operationTemplate.getUi() : substitutor.replace(operationTemplate.getUi());
+            final String ui = operationTemplate.getUi();
+            if (renderer == null || compileTemplate(ui).isConstant()) {
+                logger.debug("Using cached ui of OperationTemplate ID: {}", operationTemplate.getId());
+                final UiExtensions skeleton = uiExtensionsSkeletons.get(ui, it -> objectMapper.readValue(it, UiExtensions.class));
+                return adjustUiExtensions(copyOf(skeleton), operationDetail);
+            }
+            final String uiJsonString = renderer.render(ui);
             logger.debug("Deserializing ui: '{}' of OperationTemplate ID: {} to UiExtensions", uiJsonString, operationTemplate.getId());
-            return deserializeUiExtensions(uiJsonString, operationDetail);
+            return adjustUiExtensions(objectMapper.readValue(uiJsonString, UiExtensions.class), operationDetail);
         } else if (StringUtils.hasText(operationDetail.getRiskFlags())) {
             final String riskFlags = operationDetail.getRiskFlags();
             logger.debug("Converting riskFlags: '{}' of OperationDetail ID: {} to UiExtensions", riskFlags, operationDetail.getId());
@@ -184,8 +201,19 @@ public class MobileTokenConverter {
         }
     }
 
-    private UiExtensions deserializeUiExtensions(final String uiJsonString, final OperationDetailResponse operationDetail) throws JsonProcessingException {
-        final UiExtensions uiExtensions = objectMapper.readValue(uiJsonString, UiExtensions.class);
+    /**
+     * Create a shallow copy of the given UI extensions. Nested objects are shared and must not be modified.
+     */
+    private static UiExtensions copyOf(final UiExtensions source) {
+        final UiExtensions target = new UiExtensions();
+        target.setFlipButtons(source.getFlipButtons());
+        target.setBlockApprovalOnCall(source.getBlockApprovalOnCall());
+        target.setPreApprovalScreen(source.getPreApprovalScreen());
+        target.setPostApprovalScreen(source.getPostApprovalScreen());
+        return target;
+    }
+
+    private static UiExtensions adjustUiExtensions(final UiExtensions uiExtensions, final OperationDetailResponse operationDetail) {
         if (uiExtensions.getPreApprovalScreen() != null
                 && uiExtensions.getPreApprovalScreen().getType() == PreApprovalScreen.ScreenType.QR_SCAN
                 && operationDetail.getProximityOtp() == null) {
@@ -410,4 +438,12 @@ public class MobileTokenConverter {
     }
 
     private record AmountFormatted(BigDecimal amountRaw, String amountFormatted, String valueFormatted) {}
+
+    /**
+     * Renderer of template texts with operation parameters.
+     */
+    @FunctionalInterface
+    private interface TemplateRenderer {
+        String render(String source);
+    }
 }
@@ -26,9 +26,15 @@ import java.math.RoundingMode;
 import java.text.NumberFormat;
 import java.util.Currency;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Convert currency and amount.
+ * <p>
+ * Resolved currency symbols, fraction digits and configured number formats are cached per (locale, currency code),
+ * including codes without currency mapping. Cached number formats serve as templates and are cloned for each use,
+ * because {@link NumberFormat} is not thread-safe.
  *
  * @author Lubos Racansky, lubos.racansky@wultra.com
  */
@@ -40,6 +46,9 @@ class MonetaryConverter {
     private static final char NON_BREAKING_SPACE = '\u00a0';
     private static final String CURRENCY_PLACEHOLDER = "¤";
     private static final RoundingMode ROUNDING_MODE = RoundingMode.DOWN;
+    private static final int CACHE_MAX_SIZE = 1_000;
+
+    private static final Map<FormatKey, Formats> FORMATS = new ConcurrentHashMap<>();
 
     private MonetaryConverter() {
         // hidden constructor
@@ -54,15 +63,8 @@ class MonetaryConverter {
      * @return localized currency or original code if there is no mapping available
      */
     static String formatCurrency(final String code, final Locale locale) {
-        try {
-            // TODO (racansky, 2023-02-16) we should rely on javax.money.CurrencyUnit instead of java.util.Currency, but there is no support for display name yet
-            // https://github.com/JavaMoney/jsr354-api/issues/58
-            return Currency.getInstance(code).getSymbol(locale);
-        } catch (final IllegalArgumentException e) {
-            logger.debug("No currency mapping for code={}, locale={}", code, locale);
-            logger.trace("No currency mapping for code={}, locale={}", code, locale, e);
-            return code;
-        }
+        final String currencySymbol = getFormats(code, locale).currencySymbol();
+        return currencySymbol != null ? currencySymbol : code;
     }
 
     /**
@@ -75,8 +77,7 @@ class MonetaryConverter {
      * @return formatted amount
      */
     static String formatAmount(final Number amount, final String code, final Locale locale) {
-        final NumberFormat numberFormat = NumberFormat.getInstance(locale);
-        customizeNumberFormat(numberFormat, code);
+        final NumberFormat numberFormat = (NumberFormat) getFormats(code, locale).amountFormat().clone();
         return numberFormat.format(amount);
     }
 
@@ -89,21 +90,53 @@ class MonetaryConverter {
      * @return formatted amount with localized currency or original code if there is no mapping available
      */
     static String formatValue(final Number amount, final String code, final Locale locale) {
-        final NumberFormat numberFormat = NumberFormat.getCurrencyInstance(locale);
-        customizeNumberFormat(numberFormat, code);
-
-        try {
-            final String currencySymbol = Currency.getInstance(code).getSymbol(locale);
-            return numberFormat.format(amount).replace(CURRENCY_PLACEHOLDER, currencySymbol);
-        } catch (IllegalArgumentException e) {
-            logger.debug("No currency mapping for code={}, most probably not FIAT", code);
-            logger.trace("No currency mapping for code={}", code, e);
+        final Formats formats = getFormats(code, locale);
+        final String currencySymbol = formats.currencySymbol();
+        if (currencySymbol == null) {
             return formatAmount(amount, code, locale) + NON_BREAKING_SPACE + code;
         }
+        final NumberFormat numberFormat = (NumberFormat) formats.valueFormat().clone();
+        return numberFormat.format(amount).replace(CURRENCY_PLACEHOLDER, currencySymbol);
+    }
+
+    private static Formats getFormats(final String code, final Locale locale) {
+        final FormatKey key = new FormatKey(code, locale);
+        final Formats formats = FORMATS.get(key);
+        if (formats != null) {
+            return formats;
+        }
+        if (FORMATS.size() >= CACHE_MAX_SIZE) {
+            logger.debug("Clearing cache of number formats, the limit {} reached", CACHE_MAX_SIZE);
+            FORMATS.clear();
+        }
+        return FORMATS.computeIfAbsent(key, it -> createFormats(code, locale));
     }
 
-    private static void customizeNumberFormat(final NumberFormat numberFormat, final String code) {
+    private static Formats createFormats(final String code, final Locale locale) {
         final int fractionDigits = getFractionDigits(code);
+
+        final NumberFormat amountFormat = NumberFormat.getInstance(locale);
+        customizeNumberFormat(amountFormat, fractionDigits);
+
+        final NumberFormat valueFormat = NumberFormat.getCurrencyInstance(locale);
+        customizeNumberFormat(valueFormat, fractionDigits);
+
+        return new Formats(getCurrencySymbol(code, locale), amountFormat, valueFormat);
+    }
+
+    private static String getCurrencySymbol(final String code, final Locale locale) {
+        try {
+            // TODO (racansky, 2023-02-16) we should rely on javax.money.CurrencyUnit instead of java.util.Currency, but there is no support for display name yet
+            // https://github.com/JavaMoney/jsr354-api/issues/58
+            return Currency.getInstance(code).getSymbol(locale);
+        } catch (final IllegalArgumentException e) {
+            logger.debug("No currency mapping for code={}, locale={}", code, locale);
+            logger.trace("No currency mapping for code={}, locale={}", code, locale, e);
+            return null;
+        }
+    }
+
+    private static void customizeNumberFormat(final NumberFormat numberFormat, final int fractionDigits) {
         numberFormat.setMinimumFractionDigits(fractionDigits);
         numberFormat.setMaximumFractionDigits(MAXIMAL_FRACTION_DIGITS);
         numberFormat.setRoundingMode(ROUNDING_MODE);
@@ -119,4 +152,17 @@ class MonetaryConverter {
             return DEFAULT_MINIMAL_FRACTION_DIGITS;
         }
     }
+
+    private record FormatKey(String code, Locale locale) {
+    }
+
+    /**
+     * Cached formats for the given currency and locale.
+     *
+     * @param currencySymbol Localized currency symbol or {@code null} if there is no currency mapping.
+     * @param amountFormat Template of the amount format, must be cloned before use.
+     * @param valueFormat Template of the value format, must be cloned before use.
+     */
+    private record Formats(String currencySymbol, NumberFormat amountFormat, NumberFormat valueFormat) {
+    }
 }
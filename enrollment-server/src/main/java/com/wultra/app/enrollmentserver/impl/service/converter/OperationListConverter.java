@@ -0,0 +1,162 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service.converter;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+import com.wultra.app.enrollmentserver.errorhandling.MobileTokenConfigurationException;
+import com.wultra.security.powerauth.client.model.response.OperationDetailResponse;
+import com.wultra.security.powerauth.lib.mtoken.model.entity.Operation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Converter of operation lists.
+ * <p>
+ * Large lists may be converted in parallel by a dedicated bounded executor, see {@link MobileTokenConfig.ParallelConversion}.
+ * The order of operations is kept in any case.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Component
+@Slf4j
+public class OperationListConverter implements DisposableBean {
+
+    private final MobileTokenConverter mobileTokenConverter;
+
+    private final int parallelThreshold;
+
+    /**
+     * Executor for parallel conversion or {@code null} if disabled.
+     */
+    private final ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public OperationListConverter(
+            final MobileTokenConverter mobileTokenConverter,
+            final MobileTokenConfig mobileTokenConfig,
+            @Value("${spring.threads.virtual.enabled:false}") final boolean virtualThreads) {
+
+        this.mobileTokenConverter = mobileTokenConverter;
+        final MobileTokenConfig.ParallelConversion config = mobileTokenConfig.getParallelConversion();
+        this.parallelThreshold = config.getThreshold();
+        this.executor = config.isEnabled() ? createExecutor(config, virtualThreads) : null;
+    }
+
+    /**
+     * Convert the given operations with their templates. Operations without template are skipped.
+     *
+     * @param operations Operation details obtained from PowerAuth Server.
+     * @param operationTemplates Operation templates mapped by operation type.
+     * @return Converted operations in the same order.
+     * @throws MobileTokenConfigurationException In case there is an error in configuration data.
+     */
+    public List<Operation> convert(final List<OperationDetailResponse> operations, final Map<String, OperationTemplateEntity> operationTemplates) throws MobileTokenConfigurationException {
+        final List<OperationDetailResponse> convertible = new ArrayList<>(operations.size());
+        for (OperationDetailResponse operationDetail : operations) {
+            if (operationTemplates.containsKey(operationDetail.getOperationType())) {
+                convertible.add(operationDetail);
+            } else {
+                logger.warn("No template found for operationType={}, skipping the entry.", operationDetail.getOperationType());
+            }
+        }
+
+        if (executor == null || convertible.size() < parallelThreshold) {
+            final List<Operation> result = new ArrayList<>(convertible.size());
+            for (OperationDetailResponse operationDetail : convertible) {
+                result.add(mobileTokenConverter.convert(operationDetail, operationTemplates.get(operationDetail.getOperationType())));
+            }
+            return result;
+        }
+        return convertInParallel(convertible, operationTemplates);
+    }
+
+    private List<Operation> convertInParallel(final List<OperationDetailResponse> operations, final Map<String, OperationTemplateEntity> operationTemplates) throws MobileTokenConfigurationException {
+        logger.debug("Converting {} operations in parallel", operations.size());
+        // converter relies on locale of the current request
+        final LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        final List<CompletableFuture<Operation>> futures = new ArrayList<>(operations.size());
+        for (OperationDetailResponse operationDetail : operations) {
+            final OperationTemplateEntity operationTemplate = operationTemplates.get(operationDetail.getOperationType());
+            futures.add(CompletableFuture.supplyAsync(() -> convert(operationDetail, operationTemplate, localeContext), executor));
+        }
+
+        final List<Operation> result = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<Operation> future : futures) {
+                result.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(it -> it.cancel(false));
+            if (e.getCause() instanceof final MobileTokenConfigurationException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof final RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private Operation convert(final OperationDetailResponse operationDetail, final OperationTemplateEntity operationTemplate, final LocaleContext localeContext) {
+        // the task may be executed by the calling thread when the queue is full, restore its context
+        final LocaleContext previousLocaleContext = LocaleContextHolder.getLocaleContext();
+        LocaleContextHolder.setLocaleContext(localeContext);
+        try {
+            return mobileTokenConverter.convert(operationDetail, operationTemplate);
+        } catch (MobileTokenConfigurationException e) {
+            throw new CompletionException(e);
+        } finally {
+            LocaleContextHolder.setLocaleContext(previousLocaleContext);
+        }
+    }
+
+    private static ThreadPoolTaskExecutor createExecutor(final MobileTokenConfig.ParallelConversion config, final boolean virtualThreads) {
+        logger.info("Parallel conversion of operation lists enabled, threshold: {}, pool size: {}", config.getThreshold(), config.getPoolSize());
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(config.getPoolSize());
+        executor.setMaxPoolSize(config.getPoolSize());
+        executor.setQueueCapacity(config.getQueueCapacity());
+        executor.setThreadNamePrefix("mtoken-conversion-");
+        executor.setVirtualThreads(virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE));
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
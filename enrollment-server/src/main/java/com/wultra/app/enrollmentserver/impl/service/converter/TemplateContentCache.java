@@ -0,0 +1,88 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service.converter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of values derived from operation template texts.
+ * <p>
+ * The cache is keyed by the template text itself, so a change of the template row results in a new entry
+ * and the old one is never hit again. The cache is cleared when its size limit is reached.
+ *
+ * @param <V> Type of the derived value.
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@Slf4j
+final class TemplateContentCache<V> {
+
+    private final Map<String, V> cache = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final int maxSize;
+
+    /**
+     * Create a new cache.
+     *
+     * @param name Cache name for logging purposes.
+     * @param maxSize Maximal number of entries.
+     */
+    TemplateContentCache(final String name, final int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cached value or derive a new one from the given template text.
+     *
+     * @param source Template text.
+     * @param loader Function deriving the value.
+     * @param <E> Type of exception thrown by the loader.
+     * @return Value derived from the template text.
+     * @throws E In case the value could not be derived.
+     */
+    <E extends Exception> V get(final String source, final Loader<V, E> loader) throws E {
+        final V cached = cache.get(source);
+        if (cached != null) {
+            return cached;
+        }
+
+        final V value = loader.load(source);
+        if (cache.size() >= maxSize) {
+            logger.debug("Clearing cache of {}, the limit {} reached", name, maxSize);
+            cache.clear();
+        }
+        final V previous = cache.putIfAbsent(source, value);
+        return previous != null ? previous : value;
+    }
+
+    /**
+     * Function deriving the cached value from the template text.
+     *
+     * @param <V> Type of the derived value.
+     * @param <E> Type of exception thrown by the loader.
+     */
+    @FunctionalInterface
+    interface Loader<V, E extends Exception> {
+        V load(String source) throws E;
+    }
+}
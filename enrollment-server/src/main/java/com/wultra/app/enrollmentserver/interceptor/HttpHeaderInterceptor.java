@@ -23,14 +23,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.lang.NonNull;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 /**
  * HTTP header interceptor for logging of correlation headers using MDC.
+ * <p>
+ * When the handler is processed asynchronously, {@code afterCompletion} is not called on the servlet thread
+ * of the initial dispatch, so the MDC is cleared once the concurrent handling is started.
  *
  * @author Roman Strobl, roman.strobl@wultra.com
  */
-public class HttpHeaderInterceptor implements HandlerInterceptor {
+public class HttpHeaderInterceptor implements AsyncHandlerInterceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpHeaderInterceptor.class);
 
@@ -58,6 +61,11 @@ public class HttpHeaderInterceptor implements HandlerInterceptor {
         MDC.remove(correlationHeaderName);
     }
 
+    @Override
+    public void afterConcurrentHandlingStarted(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler) {
+        MDC.remove(correlationHeaderName);
+    }
+
     private String getCorrelationId(HttpServletRequest request) {
         final String headerValue = request.getHeader(correlationHeaderName);
         if (headerValue == null) {
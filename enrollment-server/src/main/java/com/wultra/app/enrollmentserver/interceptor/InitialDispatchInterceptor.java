@@ -0,0 +1,66 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.interceptor;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+/**
+ * Interceptor invoking {@link HandlerInterceptor#preHandle(HttpServletRequest, HttpServletResponse, Object)}
+ * of the delegate only for the initial dispatch of a request.
+ * <p>
+ * When a handler completes asynchronously, the request is dispatched once again to deliver the result.
+ * The request has been already authenticated by then and the signature must not be verified for the second time.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+public class InitialDispatchInterceptor implements AsyncHandlerInterceptor {
+
+    private final HandlerInterceptor delegate;
+
+    /**
+     * Interceptor constructor.
+     * @param delegate Interceptor to delegate to.
+     */
+    public InitialDispatchInterceptor(HandlerInterceptor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean preHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler) throws Exception {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            return true;
+        }
+        return delegate.preHandle(request, response, handler);
+    }
+
+    @Override
+    public void postHandle(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler, ModelAndView modelAndView) throws Exception {
+        delegate.postHandle(request, response, handler, modelAndView);
+    }
+
+    @Override
+    public void afterCompletion(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull Object handler, Exception ex) throws Exception {
+        delegate.afterCompletion(request, response, handler, ex);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.controller.api;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.errorhandling.MobileTokenAuthException;
+import com.wultra.app.enrollmentserver.impl.service.MobileTokenService;
+import com.wultra.security.powerauth.lib.mtoken.model.response.OperationListResponse;
+import io.getlime.core.rest.model.base.response.ObjectResponse;
+import io.getlime.security.powerauth.rest.api.spring.authentication.PowerAuthApiAuthentication;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link MobileTokenAsyncController}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class MobileTokenAsyncControllerTest {
+
+    @Mock
+    private MobileTokenService mobileTokenService;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private PowerAuthApiAuthentication auth;
+
+    private MobileTokenAsyncController tested;
+
+    @BeforeEach
+    void setUp() {
+        tested = new MobileTokenAsyncController(mobileTokenService, new MobileTokenConfig(), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tested.destroy();
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    void testOperationList() throws Exception {
+        final OperationListResponse operations = new OperationListResponse();
+        final AtomicReference<Locale> serviceLocale = new AtomicReference<>();
+        when(auth.getUserId()).thenReturn("user1");
+        when(auth.getApplicationId()).thenReturn("app1");
+        when(auth.getActivationContext().getActivationId()).thenReturn("activation1");
+        when(mobileTokenService.operationListForUser("user1", "app1", "cs", "activation1", true)).thenAnswer(invocation -> {
+            serviceLocale.set(LocaleContextHolder.getLocale());
+            return operations;
+        });
+        LocaleContextHolder.setLocale(new Locale("cs"));
+
+        final ObjectResponse<OperationListResponse> result = tested.operationList(auth, new Locale("cs")).get(5, TimeUnit.SECONDS);
+
+        assertSame(operations, result.getResponseObject());
+        assertEquals("cs", serviceLocale.get().getLanguage());
+    }
+
+    @Test
+    void testOperationList_exceptionPropagated() {
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> tested.operationList(null, Locale.ENGLISH).get(5, TimeUnit.SECONDS));
+
+        assertInstanceOf(MobileTokenAuthException.class, exception.getCause());
+    }
+}
@@ -20,25 +20,28 @@ package com.wultra.app.enrollmentserver.impl.service;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
 import com.wultra.app.enrollmentserver.database.OperationTemplateRepository;
 import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
 import com.wultra.app.enrollmentserver.impl.service.converter.MobileTokenConverter;
+import com.wultra.app.enrollmentserver.impl.service.converter.OperationListConverter;
 import com.wultra.security.powerauth.client.PowerAuthClient;
 import com.wultra.security.powerauth.client.model.request.OperationListForUserRequest;
 import com.wultra.security.powerauth.client.model.response.OperationDetailResponse;
 import com.wultra.security.powerauth.lib.mtoken.model.entity.Operation;
 import com.wultra.security.powerauth.lib.mtoken.model.response.OperationListResponse;
 import io.getlime.security.powerauth.rest.api.spring.service.HttpCustomizationService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 /**
  * Test for {@link MobileTokenService}.
@@ -61,7 +64,6 @@ class MobileTokenServiceTest {
     @Mock
     private HttpCustomizationService httpCustomizationService;
 
-    @InjectMocks
     private MobileTokenService tested;
 
     @Mock
@@ -69,6 +71,13 @@ class MobileTokenServiceTest {
 
     private static final int OPERATION_LIST_LIMIT = 100;
 
+    @BeforeEach
+    void setUp() {
+        final OperationListConverter operationListConverter = new OperationListConverter(mobileTokenConverter, new MobileTokenConfig(), false);
+        final OperationDetailCache operationDetailCache = new OperationDetailCache(new MobileTokenConfig());
+        tested = new MobileTokenService(powerAuthClient, mobileTokenConverter, operationListConverter, operationTemplateService, httpCustomizationService, operationDetailCache, new OperationListCoalescer(new MobileTokenConfig()));
+    }
+
     @Test
     void testOperationListForUser() throws Exception {
         final String userId = "test-user";
@@ -100,7 +109,7 @@ class MobileTokenServiceTest {
         operationTemplate.setLanguage(language);
         operationTemplate.setPlaceholder(operationType);
         operationTemplate.setId(1L);
-        when(operationTemplateService.findTemplate(operationType, language)).thenReturn(Optional.of(operationTemplate));
+        when(operationTemplateService.findTemplates(List.of(operationType), language)).thenReturn(Map.of(operationType, operationTemplate));
 
         final Operation operation = new Operation();
         operation.setName(operationType);
@@ -145,7 +154,7 @@ class MobileTokenServiceTest {
         operationTemplate.setLanguage(language);
         operationTemplate.setPlaceholder(operationType);
         operationTemplate.setId(1L);
-        when(operationTemplateService.findTemplate(operationType, language)).thenReturn(Optional.of(operationTemplate));
+        when(operationTemplateService.findTemplates(List.of(operationType), language)).thenReturn(Map.of(operationType, operationTemplate));
 
         final Operation operation = new Operation();
         operation.setName(operationType);
@@ -191,7 +200,7 @@ class MobileTokenServiceTest {
         operationTemplate.setPlaceholder(operationType);
         operationTemplate.setId(1L);
 
-        when(operationTemplateService.findTemplate(operationType, language)).thenReturn(Optional.empty());
+        when(operationTemplateService.findTemplates(List.of(operationType), language)).thenReturn(Collections.emptyMap());
 
 
         final OperationListResponse operationListResponse = tested.operationListForUser(userId, applicationId, language, activationId, false);
@@ -0,0 +1,139 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.security.powerauth.client.model.enumeration.OperationStatus;
+import com.wultra.security.powerauth.client.model.response.OperationDetailResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link OperationDetailCache}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class OperationDetailCacheTest {
+
+    private static final Instant NOW = Instant.parse("2024-03-01T10:15:30Z");
+
+    @Mock
+    private Clock clock;
+
+    private OperationDetailCache tested;
+
+    @BeforeEach
+    void setUp() {
+        final MobileTokenConfig config = new MobileTokenConfig();
+        config.getOperationDetailCache().setEnabled(true);
+        config.getOperationDetailCache().setTtl(Duration.ofSeconds(3));
+        config.getOperationDetailCache().setMaxSize(2);
+        tested = new OperationDetailCache(config, clock);
+    }
+
+    @Test
+    void testFind_pendingWithinTtl() {
+        when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(2));
+        final OperationDetailResponse operationDetail = createOperationDetail("op1", OperationStatus.PENDING);
+
+        tested.put(operationDetail);
+
+        assertSame(operationDetail, tested.find("op1").orElseThrow());
+    }
+
+    @Test
+    void testFind_afterTtl() {
+        when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(3));
+
+        tested.put(createOperationDetail("op1", OperationStatus.PENDING));
+
+        assertTrue(tested.find("op1").isEmpty());
+    }
+
+    @Test
+    void testFind_afterOperationExpiration() {
+        when(clock.instant()).thenReturn(NOW, NOW.plusSeconds(1));
+        final OperationDetailResponse operationDetail = createOperationDetail("op1", OperationStatus.PENDING);
+        operationDetail.setTimestampExpires(Date.from(NOW.plusSeconds(1)));
+
+        tested.put(operationDetail);
+
+        assertTrue(tested.find("op1").isEmpty());
+    }
+
+    @Test
+    void testPut_notPendingEvicts() {
+        when(clock.instant()).thenReturn(NOW);
+        tested.put(createOperationDetail("op1", OperationStatus.PENDING));
+
+        tested.put(createOperationDetail("op1", OperationStatus.APPROVED));
+
+        assertTrue(tested.find("op1").isEmpty());
+    }
+
+    @Test
+    void testEvict() {
+        when(clock.instant()).thenReturn(NOW);
+        tested.put(createOperationDetail("op1", OperationStatus.PENDING));
+
+        tested.evict("op1");
+
+        assertTrue(tested.find("op1").isEmpty());
+    }
+
+    @Test
+    void testPut_maxSizeReached() {
+        when(clock.instant()).thenReturn(NOW);
+        tested.put(createOperationDetail("op1", OperationStatus.PENDING));
+        tested.put(createOperationDetail("op2", OperationStatus.PENDING));
+
+        tested.put(createOperationDetail("op3", OperationStatus.PENDING));
+
+        assertTrue(tested.find("op1").isEmpty());
+        assertTrue(tested.find("op2").isEmpty());
+        assertTrue(tested.find("op3").isPresent());
+    }
+
+    @Test
+    void testFind_disabled() {
+        final OperationDetailCache disabled = new OperationDetailCache(new MobileTokenConfig(), clock);
+
+        disabled.put(createOperationDetail("op1", OperationStatus.PENDING));
+
+        assertTrue(disabled.find("op1").isEmpty());
+    }
+
+    private static OperationDetailResponse createOperationDetail(final String id, final OperationStatus status) {
+        final OperationDetailResponse operationDetail = new OperationDetailResponse();
+        operationDetail.setId(id);
+        operationDetail.setStatus(status);
+        return operationDetail;
+    }
+}
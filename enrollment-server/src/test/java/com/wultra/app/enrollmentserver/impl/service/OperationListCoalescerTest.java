@@ -0,0 +1,189 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.errorhandling.MobileTokenConfigurationException;
+import com.wultra.security.powerauth.lib.mtoken.model.response.OperationListResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test for {@link OperationListCoalescer}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class OperationListCoalescerTest {
+
+    private static final OperationListCoalescer.Key KEY = new OperationListCoalescer.Key("user1", "app1", "activation1", "en", "en-US", true);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testLoad_concurrentRequestsShareSingleCall() throws Exception {
+        final OperationListCoalescer tested = new OperationListCoalescer(createConfig(Duration.ZERO));
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final OperationListResponse expected = new OperationListResponse();
+
+        final Future<OperationListResponse> leader = executor.submit(() -> tested.load(KEY, () -> {
+            calls.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return expected;
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        final Future<OperationListResponse> follower = executor.submit(() -> tested.load(KEY, () -> {
+            calls.incrementAndGet();
+            return new OperationListResponse();
+        }));
+        // give the follower a chance to join the in-flight request
+        Thread.sleep(200);
+        release.countDown();
+
+        assertSame(expected, leader.get(5, TimeUnit.SECONDS));
+        assertSame(expected, follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+
+        tested.load(KEY, () -> {
+            calls.incrementAndGet();
+            return new OperationListResponse();
+        });
+        assertEquals(2, calls.get(), "Completed result must not be reused with zero TTL");
+    }
+
+    @Test
+    void testLoad_resultReusedWithinTtl() throws Exception {
+        final MutableClock clock = new MutableClock(Instant.parse("2024-03-01T10:15:30Z"));
+        final OperationListCoalescer tested = new OperationListCoalescer(createConfig(Duration.ofMillis(500)), clock);
+        final AtomicInteger calls = new AtomicInteger();
+        final OperationListCoalescer.Loader loader = () -> {
+            calls.incrementAndGet();
+            return new OperationListResponse();
+        };
+
+        final OperationListResponse first = tested.load(KEY, loader);
+        clock.instant = clock.instant.plusMillis(499);
+        assertSame(first, tested.load(KEY, loader));
+        assertEquals(1, calls.get());
+
+        clock.instant = clock.instant.plusMillis(1);
+        assertNotSame(first, tested.load(KEY, loader));
+        assertEquals(2, calls.get());
+
+        tested.load(new OperationListCoalescer.Key("user1", "app1", "activation1", "en", "en-US", false), loader);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testLoad_differentLocaleNotShared() throws Exception {
+        final OperationListCoalescer tested = new OperationListCoalescer(createConfig(Duration.ofMinutes(1)));
+
+        final OperationListResponse first = tested.load(KEY, OperationListResponse::new);
+
+        assertNotSame(first, tested.load(new OperationListCoalescer.Key("user1", "app1", "activation1", "en", "en-GB", true), OperationListResponse::new));
+    }
+
+    @Test
+    void testLoad_exceptionNotCached() throws Exception {
+        final OperationListCoalescer tested = new OperationListCoalescer(createConfig(Duration.ofMinutes(1)));
+
+        assertThrows(MobileTokenConfigurationException.class, () -> tested.load(KEY, () -> {
+            throw new MobileTokenConfigurationException("ERR_CONFIG", "Invalid JSON structure for the configuration");
+        }));
+
+        final OperationListResponse expected = new OperationListResponse();
+        assertSame(expected, tested.load(KEY, () -> expected));
+    }
+
+    @Test
+    void testLoad_disabled() throws Exception {
+        final OperationListCoalescer tested = new OperationListCoalescer(new MobileTokenConfig());
+        final AtomicInteger calls = new AtomicInteger();
+        final OperationListCoalescer.Loader loader = () -> {
+            calls.incrementAndGet();
+            return new OperationListResponse();
+        };
+
+        tested.load(KEY, loader);
+        tested.load(KEY, loader);
+
+        assertEquals(2, calls.get());
+    }
+
+    private static MobileTokenConfig createConfig(final Duration resultTtl) {
+        final MobileTokenConfig config = new MobileTokenConfig();
+        config.getOperationListCoalescing().setEnabled(true);
+        config.getOperationListCoalescing().setResultTtl(resultTtl);
+        return config;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(final Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
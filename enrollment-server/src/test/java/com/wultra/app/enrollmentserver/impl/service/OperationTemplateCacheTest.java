@@ -0,0 +1,134 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service;
+
+import com.wultra.app.enrollmentserver.database.OperationTemplateRepository;
+import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for {@link OperationTemplateCache}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class OperationTemplateCacheTest {
+
+    @Mock
+    private OperationTemplateRepository dao;
+
+    private OperationTemplateCache tested;
+
+    @BeforeEach
+    void setUp() {
+        tested = new OperationTemplateCache(dao, new SimpleMeterRegistry(), 3);
+    }
+
+    @Test
+    void testFind_fallbacks() {
+        final OperationTemplateEntity loginCs = createTemplate(1L, "login", "cs");
+        final OperationTemplateEntity paymentEn = createTemplate(2L, "payment", "en");
+        final OperationTemplateEntity transferDe = createTemplate(3L, "transfer", "de");
+        when(dao.findAllByOrderById()).thenReturn(List.of(loginCs, paymentEn, transferDe));
+
+        final OperationTemplateLookup login = tested.find("login", "cs");
+        assertSame(loginCs, login.template());
+        assertEquals(OperationTemplateLookup.Fallback.NONE, login.fallback());
+
+        final OperationTemplateLookup payment = tested.find("payment", "cs");
+        assertSame(paymentEn, payment.template());
+        assertEquals(OperationTemplateLookup.Fallback.DEFAULT_LANGUAGE, payment.fallback());
+
+        final OperationTemplateLookup transfer = tested.find("transfer", "cs");
+        assertSame(transferDe, transfer.template());
+        assertEquals(OperationTemplateLookup.Fallback.ANY_LANGUAGE, transfer.fallback());
+
+        final OperationTemplateLookup unknown = tested.find("unknown", "cs");
+        assertTrue(unknown.findTemplate().isEmpty());
+        assertEquals(OperationTemplateLookup.Fallback.NOT_FOUND, unknown.fallback());
+
+        verify(dao, times(1)).findAllByOrderById();
+    }
+
+    @Test
+    void testFind_hitAndMiss() {
+        when(dao.findAllByOrderById()).thenReturn(List.of(createTemplate(1L, "login", "en")));
+
+        tested.find("login", "cs");
+        tested.find("login", "cs");
+        tested.find("unknown", "cs");
+        tested.find("unknown", "cs");
+
+        final OperationTemplateCache.Statistics statistics = tested.statistics();
+        assertEquals(1, statistics.templates());
+        assertEquals(2, statistics.resolvedLookups());
+        assertEquals(2, statistics.hits());
+        assertEquals(2, statistics.misses());
+    }
+
+    @Test
+    void testFind_lookupsLimit() {
+        when(dao.findAllByOrderById()).thenReturn(List.of(createTemplate(1L, "login", "en")));
+
+        tested.find("login", "cs");
+        tested.find("login", "de");
+        tested.find("login", "fr");
+        assertEquals(3, tested.statistics().resolvedLookups());
+
+        tested.find("login", "sk");
+        assertEquals(1, tested.statistics().resolvedLookups());
+
+        verify(dao, times(1)).findAllByOrderById();
+    }
+
+    @Test
+    void testReload() {
+        final OperationTemplateEntity loginEn = createTemplate(1L, "login", "en");
+        final OperationTemplateEntity loginCs = createTemplate(2L, "login", "cs");
+        when(dao.findAllByOrderById())
+                .thenReturn(List.of(loginEn))
+                .thenReturn(List.of(loginEn, loginCs));
+
+        assertSame(loginEn, tested.find("login", "cs").template());
+
+        final OperationTemplateCache.Statistics statistics = tested.reload();
+        assertEquals(2, statistics.templates());
+        assertEquals(0, statistics.resolvedLookups());
+
+        assertSame(loginCs, tested.find("login", "cs").template());
+        verify(dao, times(2)).findAllByOrderById();
+    }
+
+    private static OperationTemplateEntity createTemplate(final Long id, final String placeholder, final String language) {
+        final OperationTemplateEntity entity = new OperationTemplateEntity();
+        entity.setId(id);
+        entity.setPlaceholder(placeholder);
+        entity.setLanguage(language);
+        return entity;
+    }
+}
@@ -19,12 +19,14 @@ package com.wultra.app.enrollmentserver.impl.service;
 
 import com.wultra.app.enrollmentserver.database.OperationTemplateRepository;
 import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,9 +43,13 @@ class OperationTemplateServiceTest {
     @Mock
     private OperationTemplateRepository dao;
 
-    @InjectMocks
     private OperationTemplateService tested;
 
+    @BeforeEach
+    void setUp() {
+        tested = new OperationTemplateService(dao, Optional.empty());
+    }
+
     @Test
     void testFindTemplate_givenLanguage() {
         final OperationTemplateEntity entity = new OperationTemplateEntity();
@@ -115,4 +121,43 @@ class OperationTemplateServiceTest {
 
         assertFalse(result.isPresent());
     }
+
+    @Test
+    void testFindTemplates_fallbackChain() {
+        final OperationTemplateEntity loginCs = createTemplate(1L, "login", "cs");
+        final OperationTemplateEntity loginEn = createTemplate(2L, "login", "en");
+        final OperationTemplateEntity paymentDe = createTemplate(3L, "payment", "de");
+        final OperationTemplateEntity paymentEn = createTemplate(4L, "payment", "en");
+        final OperationTemplateEntity transferDe = createTemplate(5L, "transfer", "de");
+        final OperationTemplateEntity transferSk = createTemplate(6L, "transfer", "sk");
+        when(dao.findAllByPlaceholderInOrderById(anyCollection()))
+                .thenReturn(List.of(loginCs, loginEn, paymentDe, paymentEn, transferDe, transferSk));
+
+        final Map<String, OperationTemplateEntity> result = tested.findTemplates(List.of("login", "payment", "transfer", "unknown", "login"), "cs");
+
+        assertEquals(3, result.size());
+        assertSame(loginCs, result.get("login"));
+        assertSame(paymentEn, result.get("payment"));
+        assertSame(transferDe, result.get("transfer"));
+        assertFalse(result.containsKey("unknown"));
+
+        verify(dao, times(1)).findAllByPlaceholderInOrderById(anyCollection());
+        verifyNoMoreInteractions(dao);
+    }
+
+    @Test
+    void testFindTemplates_empty() {
+        final Map<String, OperationTemplateEntity> result = tested.findTemplates(List.of(), "cs");
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(dao);
+    }
+
+    private static OperationTemplateEntity createTemplate(final Long id, final String placeholder, final String language) {
+        final OperationTemplateEntity entity = new OperationTemplateEntity();
+        entity.setId(id);
+        entity.setPlaceholder(placeholder);
+        entity.setLanguage(language);
+        return entity;
+    }
 }
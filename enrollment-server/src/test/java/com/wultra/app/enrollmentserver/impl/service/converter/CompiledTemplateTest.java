@@ -0,0 +1,81 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service.converter;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.commons.text.StringSubstitutor;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test for {@link CompiledTemplate}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class CompiledTemplateTest {
+
+    private static final Map<String, String> PARAMETERS = createParameters();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "Plain text",
+            "Payment of ${amount} ${currency}",
+            "${amount}${currency}",
+            "Unknown ${unknown} stays",
+            "Null ${nullValue} stays",
+            "Default ${unknown:-value} and ${amount:-value}",
+            "Escaped $${amount} and $$${amount}",
+            "Not terminated ${amount",
+            "Empty ${} variable",
+            "Dangerous ${quote} and ${newLine}",
+            "Recursive ${recursive}",
+            "Trailing escape ${dollar}${amount}",
+            "Nested ${a${amount}}",
+            "{\"redirectUrl\": \"${url}\", \"countdown\": 5}"
+    })
+    void testRender_sameAsStringSubstitutor(final String template) {
+        assertEquals(substitute(template), CompiledTemplate.compile(template).render(PARAMETERS));
+    }
+
+    private static String substitute(final String template) {
+        final Map<String, String> escapedParameters = PARAMETERS.entrySet().stream()
+                .filter(entry -> entry.getValue() != null)
+                .collect(toMap(Map.Entry::getKey, it -> StringEscapeUtils.escapeJson(it.getValue())));
+        return new StringSubstitutor(escapedParameters).replace(template);
+    }
+
+    private static Map<String, String> createParameters() {
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put("amount", "100.00");
+        parameters.put("currency", "EUR");
+        parameters.put("nullValue", null);
+        parameters.put("quote", "\"");
+        parameters.put("newLine", "a\nb");
+        parameters.put("recursive", "${amount}");
+        parameters.put("dollar", "US$");
+        parameters.put("url", "https://www.example.com");
+        return parameters;
+    }
+}
@@ -737,6 +737,66 @@ class MobileTokenConverterTest {
         assertNull(ui.getPreApprovalScreen());
     }
 
+    @Test
+    void testConvertUiPreapprovalScanQrSuppressed_cachedUiNotModified() throws Exception {
+        final OperationTemplateEntity operationTemplate = new OperationTemplateEntity();
+        operationTemplate.setUi("""
+                {
+                  "preApprovalScreen": {
+                    "type": "QR_SCAN",
+                    "heading": "Scan the QR code!",
+                    "message": "You may become a victim of an attack."
+                  }
+                }""");
+
+        final Operation suppressed = tested.convert(createOperationDetailResponse(), operationTemplate);
+        assertNull(suppressed.getUi().getPreApprovalScreen());
+
+        final OperationDetailResponse operationDetail = createOperationDetailResponse();
+        operationDetail.setProximityOtp("1234");
+        final Operation result = tested.convert(operationDetail, operationTemplate);
+
+        assertNotNull(result.getUi().getPreApprovalScreen());
+        assertEquals(PreApprovalScreen.ScreenType.QR_SCAN, result.getUi().getPreApprovalScreen().getType());
+    }
+
+    @Test
+    void testConvertAttributes_templateChanged() throws Exception {
+        final OperationDetailResponse operationDetail = createOperationDetailResponse();
+        operationDetail.setParameters(Map.of("iban", "CZ123", "name", "Alice"));
+
+        final OperationTemplateEntity operationTemplate = new OperationTemplateEntity();
+        operationTemplate.setAttributes("""
+                [
+                  {
+                    "id": "operation.account",
+                    "type": "KEY_VALUE",
+                    "text": "To Account",
+                    "params": {
+                      "value": "iban"
+                    }
+                  }
+                ]""");
+
+        final Operation result = tested.convert(operationDetail, operationTemplate);
+        assertEquals(List.of(new KeyValueAttribute("operation.account", "To Account", "CZ123")), result.getFormData().getAttributes());
+
+        operationTemplate.setAttributes("""
+                [
+                  {
+                    "id": "operation.name",
+                    "type": "KEY_VALUE",
+                    "text": "Name",
+                    "params": {
+                      "value": "name"
+                    }
+                  }
+                ]""");
+
+        final Operation resultChanged = tested.convert(operationDetail, operationTemplate);
+        assertEquals(List.of(new KeyValueAttribute("operation.name", "Name", "Alice")), resultChanged.getFormData().getAttributes());
+    }
+
     @Test
     void testCreateStringSubstitutorWithNullValue() throws MobileTokenConfigurationException {
         final OperationDetailResponse operationDetail = createOperationDetailResponse();
@@ -18,10 +18,19 @@
 package com.wultra.app.enrollmentserver.impl.service.converter;
 
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
 
+import javax.money.Monetary;
+import javax.money.MonetaryException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.List;
 import java.util.Locale;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -101,4 +110,69 @@ class MonetaryConverterTest {
         final String result = MonetaryConverter.formatValue(new BigDecimal(amount), code, new Locale(locale));
         assertEquals(expected, result);
     }
+
+    @ParameterizedTest
+    @MethodSource("currenciesAndLocales")
+    void testFormat_sameAsUncached(final String code, final Locale locale) {
+        final List<BigDecimal> amounts = Stream.of("0", "1", "1710.1", "-1710.9867", "1234567.891", "0.567567567567567567567")
+                .map(BigDecimal::new)
+                .toList();
+
+        // the second round is served from the cache
+        for (int round = 0; round < 2; round++) {
+            assertEquals(formatCurrencyUncached(code, locale), MonetaryConverter.formatCurrency(code, locale));
+            for (BigDecimal amount : amounts) {
+                assertEquals(formatAmountUncached(amount, code, locale), MonetaryConverter.formatAmount(amount, code, locale));
+                assertEquals(formatValueUncached(amount, code, locale), MonetaryConverter.formatValue(amount, code, locale));
+            }
+        }
+    }
+
+    private static Stream<Arguments> currenciesAndLocales() {
+        final List<String> codes = List.of("CZK", "USD", "EUR", "JPY", "BHD", "CHF", "GBP", "BTC", "ETH", "...", "UNKNOWN");
+        final List<Locale> locales = List.of(
+                Locale.ENGLISH, Locale.US, new Locale("cs"), new Locale("cs", "CZ"), Locale.GERMANY, new Locale("de", "CH"),
+                Locale.JAPAN, new Locale("ar", "SA"), new Locale("hi", "IN"), Locale.ROOT);
+        return codes.stream()
+                .flatMap(code -> locales.stream().map(locale -> Arguments.of(code, locale)));
+    }
+
+    // the original implementation creating the formats for each call
+
+    private static String formatCurrencyUncached(final String code, final Locale locale) {
+        try {
+            return Currency.getInstance(code).getSymbol(locale);
+        } catch (IllegalArgumentException e) {
+            return code;
+        }
+    }
+
+    private static String formatAmountUncached(final Number amount, final String code, final Locale locale) {
+        final NumberFormat numberFormat = NumberFormat.getInstance(locale);
+        customizeNumberFormat(numberFormat, code);
+        return numberFormat.format(amount);
+    }
+
+    private static String formatValueUncached(final Number amount, final String code, final Locale locale) {
+        final NumberFormat numberFormat = NumberFormat.getCurrencyInstance(locale);
+        customizeNumberFormat(numberFormat, code);
+        try {
+            final String currencySymbol = Currency.getInstance(code).getSymbol(locale);
+            return numberFormat.format(amount).replace("¤", currencySymbol);
+        } catch (IllegalArgumentException e) {
+            return formatAmountUncached(amount, code, locale) + '\u00a0' + code;
+        }
+    }
+
+    private static void customizeNumberFormat(final NumberFormat numberFormat, final String code) {
+        int fractionDigits;
+        try {
+            fractionDigits = Monetary.getCurrency(code).getDefaultFractionDigits();
+        } catch (MonetaryException e) {
+            fractionDigits = 0;
+        }
+        numberFormat.setMinimumFractionDigits(fractionDigits);
+        numberFormat.setMaximumFractionDigits(18);
+        numberFormat.setRoundingMode(RoundingMode.DOWN);
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.impl.service.converter;
+
+import com.wultra.app.enrollmentserver.configuration.MobileTokenConfig;
+import com.wultra.app.enrollmentserver.database.entity.OperationTemplateEntity;
+import com.wultra.app.enrollmentserver.errorhandling.MobileTokenConfigurationException;
+import com.wultra.security.powerauth.client.model.response.OperationDetailResponse;
+import com.wultra.security.powerauth.lib.mtoken.model.entity.Operation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link OperationListConverter}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+@ExtendWith(MockitoExtension.class)
+class OperationListConverterTest {
+
+    @Mock
+    private MobileTokenConverter mobileTokenConverter;
+
+    private OperationListConverter tested;
+
+    @BeforeEach
+    void setUp() {
+        final MobileTokenConfig config = new MobileTokenConfig();
+        config.getParallelConversion().setEnabled(true);
+        config.getParallelConversion().setThreshold(5);
+        config.getParallelConversion().setPoolSize(3);
+        config.getParallelConversion().setQueueCapacity(2);
+        tested = new OperationListConverter(mobileTokenConverter, config, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tested.destroy();
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    void testConvert_parallelKeepsOrderAndLocale() throws Exception {
+        LocaleContextHolder.setLocale(new Locale("cs"));
+        when(mobileTokenConverter.convert(any(), any())).thenAnswer(invocation -> {
+            final OperationDetailResponse operationDetail = invocation.getArgument(0);
+            final Operation operation = new Operation();
+            operation.setId(operationDetail.getId());
+            operation.setName(LocaleContextHolder.getLocale().getLanguage());
+            return operation;
+        });
+
+        final List<OperationDetailResponse> operations = createOperations(50, "login");
+        operations.add(10, createOperation("unknown", "unknown"));
+
+        final List<Operation> result = tested.convert(operations, Map.of("login", new OperationTemplateEntity()));
+
+        assertEquals(50, result.size());
+        assertEquals(IntStream.range(0, 50).mapToObj(String::valueOf).toList(), result.stream().map(Operation::getId).toList());
+        assertTrue(result.stream().allMatch(it -> "cs".equals(it.getName())));
+        assertEquals("cs", LocaleContextHolder.getLocale().getLanguage());
+    }
+
+    @Test
+    void testConvert_parallelPropagatesException() throws Exception {
+        when(mobileTokenConverter.convert(any(), any()))
+                .thenThrow(new MobileTokenConfigurationException("ERR_CONFIG", "Invalid JSON structure for the configuration"));
+
+        final List<OperationDetailResponse> operations = createOperations(10, "login");
+        final Map<String, OperationTemplateEntity> templates = Map.of("login", new OperationTemplateEntity());
+
+        assertThrows(MobileTokenConfigurationException.class, () -> tested.convert(operations, templates));
+    }
+
+    private static List<OperationDetailResponse> createOperations(final int count, final String operationType) {
+        final List<OperationDetailResponse> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            operations.add(createOperation(String.valueOf(i), operationType));
+        }
+        return operations;
+    }
+
+    private static OperationDetailResponse createOperation(final String id, final String operationType) {
+        final OperationDetailResponse operationDetail = new OperationDetailResponse();
+        operationDetail.setId(id);
+        operationDetail.setOperationType(operationType);
+        return operationDetail;
+    }
+}
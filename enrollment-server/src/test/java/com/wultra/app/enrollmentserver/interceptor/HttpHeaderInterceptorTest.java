@@ -0,0 +1,57 @@
+/*
+ * PowerAuth Enrollment Server
+ * Copyright (C) 2024 Wultra s.r.o.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wultra.app.enrollmentserver.interceptor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test for {@link HttpHeaderInterceptor}.
+ *
+ * @author Lubos Racansky, lubos.racansky@wultra.com
+ */
+class HttpHeaderInterceptorTest {
+
+    private static final String CORRELATION_HEADER_NAME = "X-Correlation-ID";
+
+    private final HttpHeaderInterceptor tested = new HttpHeaderInterceptor(CORRELATION_HEADER_NAME, "[a-zA-Z0-9\\-]{8,1024}");
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void testAfterConcurrentHandlingStarted() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(CORRELATION_HEADER_NAME, "correlation-1");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        tested.preHandle(request, response, new Object());
+        assertEquals("correlation-1", MDC.get(CORRELATION_HEADER_NAME));
+
+        tested.afterConcurrentHandlingStarted(request, response, new Object());
+        assertNull(MDC.get(CORRELATION_HEADER_NAME));
+    }
+}